@@ -0,0 +1,35 @@
+package com.ompt.Ompt.Controller;
+
+import com.ompt.Ompt.DTO.AdherenceStatsDTO;
+import com.ompt.Ompt.model.AdherenceScope;
+import com.ompt.Ompt.security.CurrentUser;
+import com.ompt.Ompt.security.JwtPrincipal;
+import com.ompt.Ompt.service.AdherenceService;
+import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/admin/adherence")
+@AllArgsConstructor
+public class AdminAdherenceController {
+
+    private final AdherenceService adherenceService;
+
+    @GetMapping
+    public ResponseEntity<AdherenceStatsDTO> getHospitalAdherence(
+            @RequestParam(required = false) String bucket,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @CurrentUser JwtPrincipal admin
+    ) {
+        return ResponseEntity.ok(adherenceService.stats(
+                AdherenceScope.HOSPITAL, admin.hospitalId(), bucket, from, to));
+    }
+}
@@ -4,15 +4,16 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.ompt.Ompt.DTO.DoctorRegisterRequestDTO;
 import com.ompt.Ompt.DTO.DoctorResponseDTO;
 import com.ompt.Ompt.model.User;
-import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.security.CurrentUser;
 import com.ompt.Ompt.service.AdminDoctorService;
 import com.ompt.Ompt.service.DoctorProfileService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -23,25 +24,36 @@ public class AdminDoctorController {
 
     private final AdminDoctorService adminDoctorService;
     private final DoctorProfileService doctorProfileService;
-    private final UserRepository userRepository;
 
     @PostMapping
     public ResponseEntity<DoctorResponseDTO> registerDoctor(
             @Valid @RequestBody DoctorRegisterRequestDTO request,
-            Authentication authentication
+            @CurrentUser User admin
     ) {
-        DoctorResponseDTO response = adminDoctorService.registerDoctor(request, authentication);
+        DoctorResponseDTO response = adminDoctorService.registerDoctor(request, admin);
 
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
     @GetMapping
-    public ResponseEntity<List<JsonNode>> listDoctors(Authentication authentication) {
-        User admin = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new IllegalStateException("Admin not found"));
+    public ResponseEntity<List<JsonNode>> listDoctors(@CurrentUser User admin) {
         return ResponseEntity.ok(doctorProfileService.listProfilesByHospital(admin.getHospital()));
     }
 
+    @GetMapping("/{doctorId}")
+    public ResponseEntity<JsonNode> getDoctorProfile(
+            @PathVariable Long doctorId,
+            @CurrentUser User admin,
+            WebRequest request
+    ) {
+        User doctor = doctorProfileService.hospitalDoctor(admin, doctorId);
+        String etag = doctorProfileService.profileETag(doctor);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(doctorProfileService.getOrCreateProfile(doctor));
+    }
+
     @GetMapping("/template")
     public ResponseEntity<JsonNode> getTemplate() {
         return ResponseEntity.ok(doctorProfileService.getTemplate());
@@ -50,10 +62,8 @@ public class AdminDoctorController {
     @PostMapping("/profile")
     public ResponseEntity<JsonNode> createDoctorProfile(
             @RequestBody JsonNode profileJson,
-            Authentication authentication
+            @CurrentUser User admin
     ) {
-        User admin = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new IllegalStateException("Admin not found"));
         JsonNode response = doctorProfileService.createDoctorFromProfile(admin, profileJson);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
@@ -62,11 +72,10 @@ public class AdminDoctorController {
     public ResponseEntity<JsonNode> updateDoctorProfile(
             @PathVariable Long doctorId,
             @RequestBody JsonNode profileJson,
-            Authentication authentication
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @CurrentUser User admin
     ) {
-        User admin = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new IllegalStateException("Admin not found"));
-        JsonNode response = doctorProfileService.updateProfile(admin, doctorId, profileJson);
+        JsonNode response = doctorProfileService.updateProfile(admin, doctorId, profileJson, ifMatch);
         return ResponseEntity.ok(response);
     }
 }
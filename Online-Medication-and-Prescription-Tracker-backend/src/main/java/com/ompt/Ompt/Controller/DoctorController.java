@@ -1,41 +1,61 @@
 package com.ompt.Ompt.Controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.ompt.Ompt.DTO.AdherenceStatsDTO;
+import com.ompt.Ompt.model.AdherenceScope;
 import com.ompt.Ompt.model.User;
-import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.security.CurrentUser;
+import com.ompt.Ompt.security.JwtPrincipal;
+import com.ompt.Ompt.service.AdherenceService;
 import com.ompt.Ompt.service.DoctorProfileService;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.context.request.WebRequest;
+
+import java.time.LocalDate;
 
 @RestController
 @RequestMapping("/api/doctor")
 @AllArgsConstructor
 public class DoctorController {
 
-    private final UserRepository userRepository;
     private final DoctorProfileService doctorProfileService;
+    private final AdherenceService adherenceService;
 
     @GetMapping("/profile")
-    public ResponseEntity<JsonNode> getProfile(Authentication authentication) {
-        User doctor = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
-        return ResponseEntity.ok(doctorProfileService.getOwnProfile(doctor));
+    public ResponseEntity<JsonNode> getProfile(@CurrentUser User doctor, WebRequest request) {
+        String etag = doctorProfileService.profileETag(doctor);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(doctorProfileService.getOwnProfile(doctor));
     }
 
     @PutMapping("/profile")
     public ResponseEntity<JsonNode> updateProfile(
             @RequestBody JsonNode profileJson,
-            Authentication authentication
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @CurrentUser User doctor
+    ) {
+        return ResponseEntity.ok(doctorProfileService.updateOwnProfile(doctor, profileJson, ifMatch));
+    }
+
+    @GetMapping("/adherence")
+    public ResponseEntity<AdherenceStatsDTO> getAdherence(
+            @RequestParam(required = false) String bucket,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @CurrentUser JwtPrincipal doctor
     ) {
-        User doctor = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
-        return ResponseEntity.ok(doctorProfileService.updateOwnProfile(doctor, profileJson));
+        return ResponseEntity.ok(adherenceService.stats(AdherenceScope.DOCTOR, doctor.id(), bucket, from, to));
     }
 }
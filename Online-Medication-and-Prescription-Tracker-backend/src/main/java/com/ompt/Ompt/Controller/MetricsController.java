@@ -0,0 +1,28 @@
+package com.ompt.Ompt.Controller;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import lombok.AllArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/api/ops/metrics")
+@AllArgsConstructor
+public class MetricsController {
+
+    private final List<MetricsSource> sources;
+
+    @GetMapping
+    public Map<String, Map<String, Object>> metrics() {
+        Map<String, Map<String, Object>> result = new TreeMap<>();
+        for (MetricsSource source : sources) {
+            result.put(source.metricsName(), source.metrics());
+        }
+        return result;
+    }
+}
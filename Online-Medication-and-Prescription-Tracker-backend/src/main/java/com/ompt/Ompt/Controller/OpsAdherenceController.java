@@ -0,0 +1,24 @@
+package com.ompt.Ompt.Controller;
+
+import com.ompt.Ompt.service.AdherenceService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/ops/hospitals/{hospitalId}/adherence")
+@AllArgsConstructor
+public class OpsAdherenceController {
+
+    private final AdherenceService adherenceService;
+
+    @PostMapping("/rebuild")
+    public ResponseEntity<Map<String, Integer>> rebuildTotals(@PathVariable Long hospitalId) {
+        return ResponseEntity.ok(Map.of("counters", adherenceService.rebuildHospitalTotals(hospitalId)));
+    }
+}
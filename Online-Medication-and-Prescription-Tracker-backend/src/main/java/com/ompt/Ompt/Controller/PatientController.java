@@ -1,21 +1,35 @@
 package com.ompt.Ompt.Controller;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.ompt.Ompt.DTO.AdherenceStatsDTO;
 import com.ompt.Ompt.DTO.AssignMedicineRequestDTO;
+import com.ompt.Ompt.DTO.BulkAssignMedicineRequestDTO;
+import com.ompt.Ompt.DTO.BulkMedicineAssignmentResponseDTO;
 import com.ompt.Ompt.DTO.DeliveryUpdateDTO;
 import com.ompt.Ompt.DTO.DoctorRatingRequestDTO;
 import com.ompt.Ompt.DTO.MedicineStatusUpdateDTO;
+import com.ompt.Ompt.DTO.PatientSearchHitDTO;
+import com.ompt.Ompt.DTO.ReminderNoticeDTO;
 import com.ompt.Ompt.model.Role;
 import com.ompt.Ompt.model.User;
-import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.reminder.InAppReminderNotifier;
+import com.ompt.Ompt.search.PatientSearchIndex;
+import com.ompt.Ompt.security.CurrentUser;
+import com.ompt.Ompt.security.JwtPrincipal;
 import com.ompt.Ompt.service.PatientRecordService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDate;
 import java.util.List;
 
 @RestController
@@ -23,65 +37,186 @@ import java.util.List;
 @AllArgsConstructor
 public class PatientController {
 
+    private static final String JSON_PATCH = "application/json-patch+json";
+    private static final String MERGE_PATCH = "application/merge-patch+json";
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+
     private final PatientRecordService patientRecordService;
-    private final UserRepository userRepository;
+    private final InAppReminderNotifier inAppReminderNotifier;
+    private final PatientSearchIndex patientSearchIndex;
 
     @GetMapping
-    public ResponseEntity<List<JsonNode>> listPatients(Authentication authentication) {
-        User user = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
-
+    public ResponseEntity<List<?>> listPatients(
+            @CurrentUser User user,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request
+    ) {
+        if ((cursor != null || limit != null) && (user.getRole() == Role.ADMIN || user.getRole() == Role.DOCTOR)) {
+            PatientRecordService.DocumentPage page = user.getRole() == Role.ADMIN
+                    ? patientRecordService.pageByHospital(user.getHospital().getId(), cursor, limit)
+                    : patientRecordService.pageByDoctor(user, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR, page.nextCursor());
+            }
+            return response.body(page.items());
+        }
         if (user.getRole() == Role.ADMIN) {
-            return ResponseEntity.ok(patientRecordService.listByHospital(user.getHospital().getId()));
+            Long hospitalId = user.getHospital().getId();
+            String etag = patientRecordService.listETagByHospital(hospitalId);
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+            return ResponseEntity.ok().eTag(etag).body(patientRecordService.listByHospital(hospitalId));
         }
         if (user.getRole() == Role.DOCTOR) {
-            return ResponseEntity.ok(patientRecordService.listByDoctor(user));
+            String etag = patientRecordService.listETagByDoctor(user);
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+            return ResponseEntity.ok().eTag(etag).body(patientRecordService.listByDoctor(user));
+        }
+
+        String etag = patientRecordService.recordETag(user);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
         }
+        return ResponseEntity.ok().eTag(etag).body(List.of(patientRecordService.getOrCreateRecord(user)));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamPatients(@CurrentUser JwtPrincipal user) {
+        StreamingResponseBody body;
+        if (user.hasRole(Role.ADMIN)) {
+            Long hospitalId = user.hospitalId();
+            body = out -> patientRecordService.streamByHospital(hospitalId, out);
+        } else if (user.hasRole(Role.DOCTOR)) {
+            Long doctorId = user.id();
+            body = out -> patientRecordService.streamByDoctor(doctorId, out);
+        } else {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admins and doctors can stream patient lists");
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
 
-        return ResponseEntity.ok(List.of(patientRecordService.getOrCreateRecord(user)));
+    @GetMapping("/search")
+    public ResponseEntity<List<PatientSearchHitDTO>> searchPatients(
+            @CurrentUser JwtPrincipal user,
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return ResponseEntity.ok(patientSearchIndex.search(user, q, limit));
     }
 
     @GetMapping("/me")
-    public ResponseEntity<JsonNode> getMyRecord(Authentication authentication) {
-        User user = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
-        return ResponseEntity.ok(patientRecordService.getOrCreateRecord(user));
+    public ResponseEntity<JsonNode> getMyRecord(@CurrentUser User user, WebRequest request) {
+        String etag = patientRecordService.recordETag(user);
+        if (etag != null && request.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).body(patientRecordService.getOrCreateRecord(user));
+    }
+
+    @GetMapping("/me/reminders")
+    public ResponseEntity<List<ReminderNoticeDTO>> getMyReminders(@CurrentUser JwtPrincipal user) {
+        return ResponseEntity.ok(inAppReminderNotifier.recent(user.id()));
+    }
+
+    @GetMapping("/{patientId}/adherence")
+    public ResponseEntity<AdherenceStatsDTO> getAdherence(
+            @PathVariable Long patientId,
+            @RequestParam(required = false) String bucket,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @CurrentUser User user
+    ) {
+        return ResponseEntity.ok(patientRecordService.patientAdherence(user, patientId, bucket, from, to));
     }
 
     @PutMapping("/{patientId}")
     public ResponseEntity<JsonNode> updatePatientProfile(
             @PathVariable Long patientId,
             @RequestBody JsonNode payload,
-            Authentication authentication
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @CurrentUser User user
     ) {
-        User user = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
+        if (!user.getId().equals(patientId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Cannot update another patient");
+        }
 
+        PatientRecordService.DocumentWrite updated = patientRecordService.updatePatientRecord(user, payload, ifMatch);
+        return ResponseEntity.ok().eTag(updated.etag()).body(updated.document());
+    }
+
+    @PatchMapping(value = "/{patientId}", consumes = {JSON_PATCH, MERGE_PATCH})
+    public ResponseEntity<JsonNode> patchPatientProfile(
+            @PathVariable Long patientId,
+            @RequestBody JsonNode patch,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @CurrentUser User user
+    ) {
         if (!user.getId().equals(patientId)) {
-            throw new ResponseStatusException(org.springframework.http.HttpStatus.FORBIDDEN, "Cannot update another patient");
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Cannot update another patient");
         }
 
-        return ResponseEntity.ok(patientRecordService.updatePatientRecord(user, payload));
+        boolean mergePatch = MediaType.valueOf(MERGE_PATCH).includes(contentType);
+        PatientRecordService.DocumentWrite updated = patientRecordService.patchPatientRecord(user, patch, mergePatch, ifMatch);
+        if (prefer != null && prefer.contains("return=minimal")) {
+            return ResponseEntity.noContent().eTag(updated.etag()).build();
+        }
+        return ResponseEntity.ok().eTag(updated.etag()).body(updated.document());
     }
 
     @PostMapping("/{patientId}/medicines")
     public ResponseEntity<JsonNode> assignMedicine(
             @PathVariable Long patientId,
             @Valid @RequestBody AssignMedicineRequestDTO request,
-            Authentication authentication
+            @CurrentUser User doctor
     ) {
-        User doctor = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
         return ResponseEntity.ok(patientRecordService.assignMedicine(doctor, patientId, request));
     }
 
+    @PostMapping("/{patientId}/medicines/batch")
+    public ResponseEntity<BulkMedicineAssignmentResponseDTO> assignMedicines(
+            @PathVariable Long patientId,
+            @Valid @RequestBody BulkAssignMedicineRequestDTO request,
+            @CurrentUser User doctor
+    ) {
+        return ResponseEntity.ok(patientRecordService.assignMedicines(doctor, patientId, request.getMedicines()));
+    }
+
+    @PostMapping("/{patientId}/medicines/{medicineId}/complete")
+    public ResponseEntity<JsonNode> completeMedicine(
+            @PathVariable Long patientId,
+            @PathVariable String medicineId,
+            @CurrentUser User doctor
+    ) {
+        return ResponseEntity.ok(patientRecordService.completeMedicine(doctor, patientId, medicineId));
+    }
+
+    @GetMapping("/{patientId}/medicines/history")
+    public ResponseEntity<List<?>> getMedicineHistory(
+            @PathVariable Long patientId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @CurrentUser User user
+    ) {
+        PatientRecordService.DocumentPage page = patientRecordService.medicineHistory(user, patientId, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
     @PatchMapping("/medicines/status")
     public ResponseEntity<JsonNode> updateMedicineStatus(
             @Valid @RequestBody MedicineStatusUpdateDTO request,
-            Authentication authentication
+            @CurrentUser User patient
     ) {
-        User patient = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
         return ResponseEntity.ok(patientRecordService.updateMedicineStatus(patient, request));
     }
 
@@ -89,20 +224,16 @@ public class PatientController {
     public ResponseEntity<JsonNode> updateDeliveryStatus(
             @PathVariable String medicineId,
             @Valid @RequestBody DeliveryUpdateDTO request,
-            Authentication authentication
+            @CurrentUser User patient
     ) {
-        User patient = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
         return ResponseEntity.ok(patientRecordService.updateDeliveryStatus(patient, medicineId, request.getStatus()));
     }
 
     @PostMapping("/doctor-rating")
     public ResponseEntity<JsonNode> rateDoctor(
             @Valid @RequestBody DoctorRatingRequestDTO request,
-            Authentication authentication
+            @CurrentUser User patient
     ) {
-        User patient = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(org.springframework.http.HttpStatus.NOT_FOUND, "User not found"));
         return ResponseEntity.ok(patientRecordService.rateDoctor(patient, request));
     }
 }
@@ -1,12 +1,13 @@
 package com.ompt.Ompt.Controller;
 
 import com.ompt.Ompt.DTO.*;
+import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.security.CurrentPharmacy;
 import com.ompt.Ompt.service.PharmacyService;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -19,30 +20,30 @@ public class PharmacyController {
     private final PharmacyService pharmacyService;
 
     @GetMapping("/profile")
-    public ResponseEntity<PharmacyProfileDTO> getProfile(Authentication authentication) {
-        return ResponseEntity.ok(pharmacyService.getProfile(authentication.getName()));
+    public ResponseEntity<PharmacyProfileDTO> getProfile(@CurrentPharmacy Pharmacy pharmacy) {
+        return ResponseEntity.ok(pharmacyService.getProfile(pharmacy));
     }
 
     @PutMapping("/profile")
     public ResponseEntity<PharmacyProfileDTO> updateProfile(
             @Valid @RequestBody PharmacyProfileUpdateDTO request,
-            Authentication authentication
+            @CurrentPharmacy Pharmacy pharmacy
     ) {
-        return ResponseEntity.ok(pharmacyService.updateProfile(authentication.getName(), request));
+        return ResponseEntity.ok(pharmacyService.updateProfile(pharmacy, request));
     }
 
     @GetMapping("/inventory")
-    public ResponseEntity<List<InventoryItemResponseDTO>> listInventory(Authentication authentication) {
-        return ResponseEntity.ok(pharmacyService.listInventory(authentication.getName()));
+    public ResponseEntity<List<InventoryItemResponseDTO>> listInventory(@CurrentPharmacy Pharmacy pharmacy) {
+        return ResponseEntity.ok(pharmacyService.listInventory(pharmacy));
     }
 
     @PostMapping("/inventory")
     public ResponseEntity<InventoryItemResponseDTO> createInventoryItem(
             @Valid @RequestBody InventoryItemRequestDTO request,
-            Authentication authentication
+            @CurrentPharmacy Pharmacy pharmacy
     ) {
         InventoryItemResponseDTO response =
-                pharmacyService.createInventoryItem(authentication.getName(), request);
+                pharmacyService.createInventoryItem(pharmacy, request);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
@@ -50,34 +51,34 @@ public class PharmacyController {
     public ResponseEntity<InventoryItemResponseDTO> updateInventoryItem(
             @PathVariable Long id,
             @Valid @RequestBody InventoryItemRequestDTO request,
-            Authentication authentication
+            @CurrentPharmacy Pharmacy pharmacy
     ) {
         return ResponseEntity.ok(
-                pharmacyService.updateInventoryItem(authentication.getName(), id, request)
+                pharmacyService.updateInventoryItem(pharmacy, id, request)
         );
     }
 
     @DeleteMapping("/inventory/{id}")
     public ResponseEntity<Void> deleteInventoryItem(
             @PathVariable Long id,
-            Authentication authentication
+            @CurrentPharmacy Pharmacy pharmacy
     ) {
-        pharmacyService.deleteInventoryItem(authentication.getName(), id);
+        pharmacyService.deleteInventoryItem(pharmacy, id);
         return ResponseEntity.noContent().build();
     }
 
     @GetMapping("/deliveries")
-    public ResponseEntity<List<DeliveryResponseDTO>> listDeliveries(Authentication authentication) {
-        return ResponseEntity.ok(pharmacyService.listDeliveries(authentication.getName()));
+    public ResponseEntity<List<DeliveryResponseDTO>> listDeliveries(@CurrentPharmacy Pharmacy pharmacy) {
+        return ResponseEntity.ok(pharmacyService.listDeliveries(pharmacy));
     }
 
     @PostMapping("/deliveries")
     public ResponseEntity<DeliveryResponseDTO> createDelivery(
             @Valid @RequestBody DeliveryRequestDTO request,
-            Authentication authentication
+            @CurrentPharmacy Pharmacy pharmacy
     ) {
         DeliveryResponseDTO response =
-                pharmacyService.createDelivery(authentication.getName(), request);
+                pharmacyService.createDelivery(pharmacy, request);
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
@@ -85,10 +86,10 @@ public class PharmacyController {
     public ResponseEntity<DeliveryResponseDTO> updateDeliveryStatus(
             @PathVariable Long id,
             @Valid @RequestBody DeliveryStatusUpdateDTO request,
-            Authentication authentication
+            @CurrentPharmacy Pharmacy pharmacy
     ) {
         return ResponseEntity.ok(
-                pharmacyService.updateDeliveryStatus(authentication.getName(), id, request)
+                pharmacyService.updateDeliveryStatus(pharmacy, id, request)
         );
     }
 }
@@ -1,14 +1,14 @@
 package com.ompt.Ompt.Controller;
 
 import com.ompt.Ompt.DTO.UserProfileRequestDTO;
-import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.security.CurrentUser;
 import com.ompt.Ompt.service.UserProfileService;
 
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -16,18 +16,16 @@ import org.springframework.web.bind.annotation.*;
 @AllArgsConstructor
 public class ProfileController {
 
-    private final UserRepository userRepository;
     private final UserProfileService userProfileService;
 
     @PostMapping("/patient-profile")
     public ResponseEntity<Void> saveProfile(
             @Valid @RequestBody UserProfileRequestDTO request,
-            Authentication authentication) {
+            @CurrentUser User user) {
 
-        String email = authentication.getName();
-        userProfileService.saveProfile(email, request);
+        userProfileService.saveProfile(user, request);
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
 
-}
\ No newline at end of file
+}
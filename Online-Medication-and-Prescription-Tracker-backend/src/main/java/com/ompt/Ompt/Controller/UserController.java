@@ -2,27 +2,19 @@ package com.ompt.Ompt.Controller;
 
 import com.ompt.Ompt.DTO.UserMeDTO;
 import com.ompt.Ompt.model.User;
-import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.security.CurrentUser;
 import lombok.AllArgsConstructor;
-import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api/users")
 @AllArgsConstructor
 public class UserController {
 
-    private final UserRepository userRepository;
-
     @GetMapping("/me")
-    public UserMeDTO getMe(Authentication authentication) {
-        User user = userRepository.findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
-
+    public UserMeDTO getMe(@CurrentUser User user) {
         return new UserMeDTO(
                 user.getId(),
                 user.getName(),
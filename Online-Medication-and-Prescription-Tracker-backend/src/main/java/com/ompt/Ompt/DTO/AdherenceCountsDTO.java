@@ -0,0 +1,18 @@
+package com.ompt.Ompt.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+@Getter
+@AllArgsConstructor
+public class AdherenceCountsDTO {
+    private LocalDate start;
+    private long onTime;
+    private long late;
+    private long missed;
+    private long pending;
+    private long taken;
+    private Double adherenceRate;
+}
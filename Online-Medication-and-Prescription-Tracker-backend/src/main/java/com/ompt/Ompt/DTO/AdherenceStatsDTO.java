@@ -0,0 +1,16 @@
+package com.ompt.Ompt.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class AdherenceStatsDTO {
+    private String scope;
+    private Long scopeId;
+    private String bucket;
+    private AdherenceCountsDTO totals;
+    private List<AdherenceCountsDTO> buckets;
+}
@@ -3,6 +3,7 @@ package com.ompt.Ompt.DTO;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -30,4 +31,8 @@ public class AssignMedicineRequestDTO {
 
     @NotEmpty(message = "Schedule is required")
     private List<String> scheduleTimes;
+
+    // Length of the course in days, starting today; open-ended when absent.
+    @Positive(message = "Duration must be positive")
+    private Integer durationDays;
 }
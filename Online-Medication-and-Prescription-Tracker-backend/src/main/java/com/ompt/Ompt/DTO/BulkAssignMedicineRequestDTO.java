@@ -0,0 +1,20 @@
+package com.ompt.Ompt.DTO;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class BulkAssignMedicineRequestDTO {
+
+    @NotEmpty(message = "At least one medicine is required")
+    @Size(max = 50, message = "At most 50 medicines per prescription")
+    private List<@Valid AssignMedicineRequestDTO> medicines;
+}
@@ -0,0 +1,14 @@
+package com.ompt.Ompt.DTO;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class BulkMedicineAssignmentResponseDTO {
+    private JsonNode record;
+    private List<MedicineAssignmentResultDTO> results;
+}
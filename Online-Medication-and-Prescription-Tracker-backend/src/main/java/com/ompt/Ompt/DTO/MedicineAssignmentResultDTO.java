@@ -0,0 +1,15 @@
+package com.ompt.Ompt.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Outcome of one item of a bulk prescription; index is its position in the request.
+@Getter
+@AllArgsConstructor
+public class MedicineAssignmentResultDTO {
+    private int index;
+    private String name;
+    private String status;
+    private String medicineId;
+    private String error;
+}
@@ -0,0 +1,14 @@
+package com.ompt.Ompt.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class PatientSearchHitDTO {
+    private Long id;
+    private String name;
+    private String email;
+    private String diagnosis;
+    private Long doctorAssignedId;
+}
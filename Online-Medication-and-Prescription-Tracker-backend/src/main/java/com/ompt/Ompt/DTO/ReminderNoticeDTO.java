@@ -0,0 +1,16 @@
+package com.ompt.Ompt.DTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class ReminderNoticeDTO {
+    private String medicineId;
+    private String medicineName;
+    private String dosage;
+    private String time;
+    private LocalDateTime dueAt;
+}
@@ -0,0 +1,59 @@
+package com.ompt.Ompt.Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+// Strong validators built from row versions, so a conditional GET can be answered without
+// loading or parsing the stored document.
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(Object... parts) {
+        MessageDigest digest = sha256();
+        for (Object part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return quote(digest);
+    }
+
+    public static String ofCollection(Iterable<String> versions) {
+        MessageDigest digest = sha256();
+        for (String version : versions) {
+            digest.update(version.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return quote(digest);
+    }
+
+    // If-Match is "*" or a list of entity tags, compared strongly, so weak tags never match.
+    public static boolean matches(String ifMatch, String current) {
+        if (current == null) {
+            return false;
+        }
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || tag.equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quote(MessageDigest digest) {
+        byte[] hash = digest.digest();
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22) + "\"";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.ompt.Ompt.Util;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ompt.Ompt.exception.PatchFailedException;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+
+// RFC 6902 (JSON Patch) and RFC 7386 (JSON Merge Patch) applied to Jackson trees.
+// Both return a patched copy and leave the input document untouched.
+public final class JsonPatches {
+
+    private JsonPatches() {
+    }
+
+    // JSON equality as RFC 6902 "test" defines it: numbers compare by value, so 1, 1.0 and a long 1 are equal.
+    public static boolean equalsNumericAware(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) {
+            return a.decimalValue().compareTo(b.decimalValue()) == 0;
+        }
+        if (a.isObject() && b.isObject()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (Map.Entry<String, JsonNode> field : a.properties()) {
+                JsonNode other = b.get(field.getKey());
+                if (other == null || !equalsNumericAware(field.getValue(), other)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a.isArray() && b.isArray()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!equalsNumericAware(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a.equals(b);
+    }
+
+    public static JsonNode applyJsonPatch(JsonNode document, JsonNode patch) {
+        if (!patch.isArray()) {
+            throw badPatch("JSON Patch must be an array of operations");
+        }
+        JsonNode result = document.deepCopy();
+        for (JsonNode operation : patch) {
+            result = applyOperation(result, operation);
+        }
+        return result;
+    }
+
+    public static JsonNode applyMergePatch(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch.deepCopy();
+        }
+        ObjectNode result = target != null && target.isObject()
+                ? ((ObjectNode) target).deepCopy()
+                : ((ObjectNode) patch).objectNode();
+        for (Map.Entry<String, JsonNode> field : patch.properties()) {
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), applyMergePatch(result.get(field.getKey()), field.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private static JsonNode applyOperation(JsonNode document, JsonNode operation) {
+        String op = operation.path("op").asText("");
+        JsonPointer path = pointer(operation, "path");
+
+        switch (op) {
+            case "add" -> {
+                return add(document, path, value(operation));
+            }
+            case "remove" -> {
+                remove(document, path);
+                return document;
+            }
+            case "replace" -> {
+                return replace(document, path, value(operation));
+            }
+            case "move" -> {
+                JsonPointer from = pointer(operation, "from");
+                if (path.toString().startsWith(from + "/")) {
+                    throw conflict("Cannot move " + from + " into its own child " + path);
+                }
+                JsonNode moved = get(document, from);
+                remove(document, from);
+                return add(document, path, moved);
+            }
+            case "copy" -> {
+                return add(document, path, get(document, pointer(operation, "from")).deepCopy());
+            }
+            case "test" -> {
+                if (!equalsNumericAware(get(document, path), value(operation))) {
+                    throw conflict("Patch test failed at " + path);
+                }
+                return document;
+            }
+            default -> throw badPatch("Unsupported patch operation: " + op);
+        }
+    }
+
+    private static JsonNode add(JsonNode document, JsonPointer path, JsonNode value) {
+        if (path.matches()) {
+            return value;
+        }
+        JsonNode parent = get(document, path.head());
+        String token = path.last().getMatchingProperty();
+
+        if (parent instanceof ObjectNode object) {
+            object.set(token, value);
+        } else if (parent instanceof ArrayNode array) {
+            if ("-".equals(token)) {
+                array.add(value);
+            } else {
+                int index = index(token, array.size() + 1);
+                array.insert(index, value);
+            }
+        } else {
+            throw conflict("Cannot add at " + path);
+        }
+        return document;
+    }
+
+    private static JsonNode replace(JsonNode document, JsonPointer path, JsonNode value) {
+        if (path.matches()) {
+            return value;
+        }
+        JsonNode parent = get(document, path.head());
+        String token = path.last().getMatchingProperty();
+
+        if (parent instanceof ObjectNode object && object.has(token)) {
+            object.set(token, value);
+        } else if (parent instanceof ArrayNode array) {
+            array.set(index(token, array.size()), value);
+        } else {
+            throw conflict("No value at " + path);
+        }
+        return document;
+    }
+
+    private static void remove(JsonNode document, JsonPointer path) {
+        if (path.matches()) {
+            throw conflict("Cannot remove the whole document");
+        }
+        JsonNode parent = get(document, path.head());
+        String token = path.last().getMatchingProperty();
+
+        if (parent instanceof ObjectNode object && object.has(token)) {
+            object.remove(token);
+        } else if (parent instanceof ArrayNode array) {
+            array.remove(index(token, array.size()));
+        } else {
+            throw conflict("No value at " + path);
+        }
+    }
+
+    private static JsonNode get(JsonNode document, JsonPointer path) {
+        JsonNode node = document.at(path);
+        if (node.isMissingNode()) {
+            throw conflict("No value at " + path);
+        }
+        return node;
+    }
+
+    private static int index(String token, int limit) {
+        try {
+            int index = Integer.parseInt(token);
+            if (index >= 0 && index < limit && (token.equals("0") || !token.startsWith("0"))) {
+                return index;
+            }
+        } catch (NumberFormatException ignored) {
+            // falls through to the error below
+        }
+        throw conflict("Invalid array index: " + token);
+    }
+
+    private static JsonPointer pointer(JsonNode operation, String field) {
+        JsonNode value = operation.get(field);
+        if (value == null || !value.isTextual()) {
+            throw badPatch("Patch operation is missing \"" + field + "\"");
+        }
+        try {
+            return JsonPointer.compile(value.asText());
+        } catch (IllegalArgumentException ex) {
+            throw badPatch("Invalid JSON pointer: " + value.asText());
+        }
+    }
+
+    private static JsonNode value(JsonNode operation) {
+        if (!operation.has("value")) {
+            throw badPatch("Patch operation is missing \"value\"");
+        }
+        return operation.get("value").deepCopy();
+    }
+
+    private static PatchFailedException badPatch(String message) {
+        return new PatchFailedException(HttpStatus.BAD_REQUEST, message);
+    }
+
+    private static PatchFailedException conflict(String message) {
+        return new PatchFailedException(HttpStatus.CONFLICT, message);
+    }
+}
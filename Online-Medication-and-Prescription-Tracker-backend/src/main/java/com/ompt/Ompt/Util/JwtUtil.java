@@ -1,7 +1,10 @@
 package com.ompt.Ompt.Util;
 
+import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.model.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import java.security.Key;
@@ -16,38 +19,72 @@ public class JwtUtil {
     @Value("${jwt.expiration}")
     private long expiration;
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+    @Value("${jwt.cache.max-entries:10000}")
+    private int cacheMaxEntries;
+
+    private Key signingKey;
+    private JwtParser parser;
+    private VerifiedTokenCache verifiedTokens;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(secret.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        verifiedTokens = new VerifiedTokenCache(cacheMaxEntries);
     }
 
-    public String generateToken(String email, String role) {
+    public String generateToken(User user) {
         return Jwts.builder()
-                .setSubject(email)
-                .claim("role","Role_"+role)
+                .setSubject(user.getEmail())
+                .claim("role","Role_"+user.getRole().name())
+                .claim("uid", user.getId())
+                .claim("hospitalId", user.getHospital() != null ? user.getHospital().getId() : null)
+                .claim("tev", user.getTokenEpoch())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    public String extractEmail(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+    public String generateToken(Pharmacy pharmacy) {
+        return Jwts.builder()
+                .setSubject(pharmacy.getEmail())
+                .claim("role","Role_PHARMACY")
+                .claim("uid", pharmacy.getId())
+                .claim("pharmacyId", pharmacy.getId())
+                .claim("tev", pharmacy.getTokenEpoch())
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + expiration))
+                .signWith(signingKey, SignatureAlgorithm.HS256)
+                .compact();
     }
 
-    public boolean validateToken(String token) {
+    // Verifies the signature and expiry once and returns the claims, or null for an invalid token.
+    public Claims verify(String token) {
+        Claims cached = verifiedTokens.get(token);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            verifiedTokens.put(token, claims);
+            return claims;
         } catch (JwtException | IllegalArgumentException e) {
-            return false;
+            return null;
+        }
+    }
+
+    public String extractEmail(String token) {
+        Claims claims = verify(token);
+        if (claims == null) {
+            throw new JwtException("Invalid token");
         }
+        return claims.getSubject();
+    }
+
+    public boolean validateToken(String token) {
+        return verify(token) != null;
     }
 }
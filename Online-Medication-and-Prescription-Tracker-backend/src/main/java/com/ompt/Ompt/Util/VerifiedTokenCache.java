@@ -0,0 +1,106 @@
+package com.ompt.Ompt.Util;
+
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+
+public class VerifiedTokenCache {
+
+    private record Entry(String digest, Claims claims, long expiresAt) {
+    }
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Ordered by token expiry so expired and overflow entries are evicted from the head.
+    private final PriorityBlockingQueue<Entry> expiryQueue =
+            new PriorityBlockingQueue<>(64, Comparator.comparingLong(Entry::expiresAt));
+
+    public VerifiedTokenCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Claims get(String token) {
+        if (maxEntries <= 0) {
+            return null;
+        }
+        String digest = digest(token);
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(digest, entry);
+            return null;
+        }
+        return entry.claims();
+    }
+
+    public void put(String token, Claims claims) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Date expiration = claims.getExpiration();
+        if (expiration == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+
+        Entry entry = new Entry(digest(token), claims, expiration.getTime());
+        if (entries.putIfAbsent(entry.digest(), entry) == null) {
+            expiryQueue.add(entry);
+        }
+
+        while (entries.size() > maxEntries) {
+            Entry eldest = expiryQueue.poll();
+            if (eldest == null) {
+                break;
+            }
+            removeIfCurrent(eldest);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evictExpired(long now) {
+        Entry head;
+        while ((head = expiryQueue.peek()) != null && head.expiresAt() <= now) {
+            Entry polled = expiryQueue.poll();
+            if (polled == null) {
+                break;
+            }
+            if (polled.expiresAt() > now) {
+                // another thread took the expired head first
+                expiryQueue.add(polled);
+                break;
+            }
+            removeIfCurrent(polled);
+        }
+    }
+
+    // Queue entries may outlive their map entry (get drops an expired entry without touching the queue).
+    private void removeIfCurrent(Entry queued) {
+        entries.computeIfPresent(queued.digest(), (digest, current) -> current == queued ? null : current);
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.ompt.Ompt.config;
+
+import com.ompt.Ompt.service.AdherenceService;
+import com.ompt.Ompt.service.MedicationEventCompactor;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Seeds the adherence totals from the existing dose slots the first time the counters table is
+// empty. Runs before the data seeder, whose writes are then counted incrementally.
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@AllArgsConstructor
+public class AdherenceBackfill implements CommandLineRunner {
+
+    private final AdherenceService adherenceService;
+    private final MedicationEventCompactor compactor;
+
+    @Override
+    public void run(String... args) {
+        if (adherenceService.hasTotals()) {
+            return;
+        }
+        compactor.compact();
+        log.info("Built {} adherence counters from existing dose slots", adherenceService.rebuildTotals());
+    }
+}
@@ -249,7 +249,8 @@ public class DataSeeder implements CommandLineRunner {
                     "Tablet",
                     "After meals",
                     metforminItemId,
-                    List.of("08:00", "20:00")
+                    List.of("08:00", "20:00"),
+                    null
             );
             patientRecordService.assignMedicine(doctor, patient.getId(), metformin);
         }
@@ -262,7 +263,8 @@ public class DataSeeder implements CommandLineRunner {
                     "Tablet",
                     "Once daily",
                     amlodipineItemId,
-                    List.of("09:00")
+                    List.of("09:00"),
+                    null
             );
             patientRecordService.assignMedicine(doctor, patient.getId(), amlodipine);
         }
@@ -1,13 +1,16 @@
 package com.ompt.Ompt.exception;
 
 import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Map;
 
@@ -35,6 +38,49 @@ public class GlobalExceptionHandler {
     }
 
 
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<Map<String, String>> handlePreconditionFailed(PreconditionFailedException ex) {
+        return ResponseEntity
+                .status(HttpStatus.PRECONDITION_FAILED)
+                .body(Map.of(
+                        "error", ex.getMessage()
+                ));
+    }
+
+    // Still conflicting after the retries ran out.
+    @ExceptionHandler(ConcurrencyFailureException.class)
+    public ResponseEntity<Map<String, String>> handleConcurrentUpdate(ConcurrencyFailureException ex) {
+        return ResponseEntity
+                .status(HttpStatus.CONFLICT)
+                .body(Map.of(
+                        "error", "The record was changed by another request, please try again"
+                ));
+    }
+
+    @ExceptionHandler(PatchFailedException.class)
+    public ResponseEntity<Map<String, String>> handlePatchFailed(PatchFailedException ex) {
+        return ResponseEntity
+                .status(ex.getStatus())
+                .body(Map.of(
+                        "error", ex.getMessage()
+                ));
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<Map<String, String>> handleResponseStatus(ResponseStatusException ex) {
+        HttpStatusCode status = ex.getStatusCode();
+        String reason = ex.getReason();
+        if (reason == null) {
+            HttpStatus known = HttpStatus.resolve(status.value());
+            reason = known == null ? String.valueOf(status.value()) : known.getReasonPhrase();
+        }
+        return ResponseEntity
+                .status(status)
+                .body(Map.of(
+                        "error", reason
+                ));
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, String>> handleRuntimeException(RuntimeException ex) {
         return ResponseEntity
@@ -0,0 +1,18 @@
+package com.ompt.Ompt.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+// A JSON Patch or Merge Patch that could not be applied. Per RFC 5789: a malformed patch is 400,
+// one that does not fit the current document (missing path, failed "test") is 409, and one whose
+// result is not an acceptable document is 422.
+@Getter
+public class PatchFailedException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    public PatchFailedException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+}
@@ -0,0 +1,9 @@
+package com.ompt.Ompt.exception;
+
+// An If-Match precondition did not hold: the resource changed since the client read it.
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
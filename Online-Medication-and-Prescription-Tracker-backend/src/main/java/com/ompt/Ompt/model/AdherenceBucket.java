@@ -0,0 +1,7 @@
+package com.ompt.Ompt.model;
+
+public enum AdherenceBucket {
+    TOTAL,   // status of every dose, today's slots plus dose_history; bucketStart is always 1970-01-01
+    DAY,     // outcomes recorded on bucketStart
+    WEEK     // outcomes recorded in the ISO week starting on bucketStart
+}
@@ -0,0 +1,50 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "adherence_counters",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uk_adherence_counter",
+                columnNames = {"scope", "scopeId", "bucket", "bucketStart"}
+        )
+)
+public class AdherenceCounter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private AdherenceScope scope;
+
+    @Column(nullable = false)
+    private Long scopeId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private AdherenceBucket bucket;
+
+    @Column(nullable = false)
+    private LocalDate bucketStart;
+
+    @Column(nullable = false)
+    private long onTime;
+
+    @Column(nullable = false)
+    private long late;
+
+    @Column(nullable = false)
+    private long missed;
+
+    @Column(nullable = false)
+    private long pending;
+}
@@ -0,0 +1,7 @@
+package com.ompt.Ompt.model;
+
+public enum AdherenceScope {
+    PATIENT,   // scoped by patient user id
+    DOCTOR,    // patients currently assigned to the doctor
+    HOSPITAL   // patients registered with the hospital
+}
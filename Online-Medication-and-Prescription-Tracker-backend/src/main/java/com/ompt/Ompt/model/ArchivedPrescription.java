@@ -0,0 +1,37 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// A finished prescription moved out of the prescriptions table, kept as the medicine document the
+// client saw when it was archived. Its dose outcomes stay in dose_history.
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "prescription_archive",
+        indexes = @Index(name = "idx_prescription_archive_record", columnList = "recordId, id")
+)
+public class ArchivedPrescription {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long recordId;
+
+    @Column(nullable = false, length = 64)
+    private String medicineId;
+
+    @Column(nullable = false)
+    private LocalDateTime archivedAt;
+
+    @Lob
+    @Column(nullable = false)
+    @Convert(converter = CompressedJsonConverter.class)
+    private String documentJson;
+}
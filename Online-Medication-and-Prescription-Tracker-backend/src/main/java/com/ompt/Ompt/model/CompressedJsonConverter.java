@@ -0,0 +1,92 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Stores JSON documents in their existing text columns behind a format header. Values without a
+// header are plain JSON (rows written before compression) and are rewritten on their next save.
+@Component
+@Converter
+public class CompressedJsonConverter implements AttributeConverter<String, String> {
+
+    static final String DEFLATE_HEADER = "~d1:";
+
+    private final boolean compress;
+    private final int minChars;
+
+    public CompressedJsonConverter(
+            @Value("${documents.storage.codec:deflate}") String codec,
+            @Value("${documents.storage.min-chars:256}") int minChars
+    ) {
+        this.compress = switch (codec) {
+            case "deflate" -> true;
+            case "plain" -> false;
+            default -> throw new IllegalArgumentException("Unknown documents.storage.codec: " + codec);
+        };
+        this.minChars = minChars;
+    }
+
+    @Override
+    public String convertToDatabaseColumn(String json) {
+        if (json == null || !compress || json.length() < minChars) {
+            return json;
+        }
+        String encoded = DEFLATE_HEADER + Base64.getEncoder().encodeToString(deflate(json.getBytes(StandardCharsets.UTF_8)));
+        return encoded.length() < json.length() ? encoded : json;
+    }
+
+    @Override
+    public String convertToEntityAttribute(String stored) {
+        if (stored == null || !stored.startsWith(DEFLATE_HEADER)) {
+            return stored;
+        }
+        byte[] compressed = Base64.getDecoder().decode(stored.substring(DEFLATE_HEADER.length()));
+        return new String(inflate(compressed), StandardCharsets.UTF_8);
+    }
+
+    private byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 16);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] input) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed document");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IllegalStateException("Corrupt compressed document", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+}
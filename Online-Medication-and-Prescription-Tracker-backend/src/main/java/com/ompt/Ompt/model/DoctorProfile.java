@@ -3,6 +3,7 @@ package com.ompt.Ompt.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
 
@@ -22,11 +23,17 @@ public class DoctorProfile {
 
     @Lob
     @Column(nullable = false)
+    @Convert(converter = CompressedJsonConverter.class)
     private String profileJson;
 
     @Column(nullable = false)
     private LocalDateTime updatedAt;
 
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     @PrePersist
     @PreUpdate
     public void onSave() {
@@ -0,0 +1,43 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+// A dose slot's outcome on one past day, written by the daily rollover. Rows are never updated.
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "dose_history",
+        indexes = @Index(name = "idx_dose_history_record", columnList = "recordId, doseDate")
+)
+public class DoseHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long recordId;
+
+    @Column(nullable = false, length = 64)
+    private String medicineId;
+
+    @Column(nullable = false)
+    private LocalDate doseDate;
+
+    @Column(nullable = false, length = 20)
+    private String time;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(length = 20)
+    private String takenAt;
+
+    @Column(length = 500)
+    private String reason;
+}
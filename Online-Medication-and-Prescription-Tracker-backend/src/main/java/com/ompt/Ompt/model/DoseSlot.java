@@ -0,0 +1,53 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "dose_slots",
+        indexes = @Index(name = "idx_dose_slot_prescription", columnList = "prescription_id, time")
+)
+public class DoseSlot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "prescription_id", nullable = false)
+    private Prescription prescription;
+
+    @Column(nullable = false)
+    private int position;
+
+    @Column(nullable = false, length = 20)
+    private String time;
+
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(length = 20)
+    private String takenAt;
+
+    @Column(length = 500)
+    private String reason;
+
+    // Newest medication event already folded into this row.
+    private Long lastEventId;
+
+    // The day this status belongs to; the daily rollover moves older days to dose_history.
+    private LocalDate slotDate;
+
+    @PrePersist
+    public void onCreate() {
+        if (slotDate == null) {
+            slotDate = LocalDate.now();
+        }
+    }
+}
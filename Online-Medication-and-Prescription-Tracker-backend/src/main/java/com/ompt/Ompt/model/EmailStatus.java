@@ -0,0 +1,8 @@
+package com.ompt.Ompt.model;
+
+public enum EmailStatus {
+    PENDING,   // waiting for the next dispatch attempt
+    SENDING,   // claimed by a dispatcher thread
+    SENT,
+    DEAD       // gave up after max attempts
+}
@@ -3,6 +3,7 @@ package com.ompt.Ompt.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDate;
 
@@ -29,6 +30,12 @@ public class InventoryItem {
     @Column(nullable = false)
     private int quantity;
 
+    // Units held for pending deliveries. Only changed by the conditional updates in
+    // InventoryItemRepository, never by saving the entity, so an edit cannot overwrite a hold.
+    @ColumnDefault("0")
+    @Column(nullable = false, updatable = false)
+    private int reserved;
+
     @Column
     private Double price;
 
@@ -0,0 +1,27 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Progress of a batch job over patient records, so an interrupted run resumes where it stopped.
+@Getter
+@Setter
+@Entity
+@Table(name = "job_checkpoints")
+public class JobCheckpoint {
+
+    @Id
+    @Column(length = 64)
+    private String name;
+
+    // Highest patient record id fully processed by the current run; 0 when no run is in progress.
+    @Column(nullable = false)
+    private long lastRecordId;
+
+    private LocalDateTime runStartedAt;
+
+    private LocalDateTime runCompletedAt;
+}
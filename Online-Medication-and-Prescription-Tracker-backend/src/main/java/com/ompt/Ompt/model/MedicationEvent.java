@@ -0,0 +1,64 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Append-only history of medication changes. Pending events are folded into the prescription
+// and dose-slot rows by the compactor; rows are never updated or deleted otherwise.
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "medication_events",
+        indexes = {
+                @Index(name = "idx_medication_event_record", columnList = "recordId, id"),
+                @Index(name = "idx_medication_event_pending", columnList = "compacted, id")
+        }
+)
+public class MedicationEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long recordId;
+
+    @Column(nullable = false, length = 64)
+    private String medicineId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 30)
+    private MedicationEventType type;
+
+    @Column(length = 20)
+    private String slotTime;
+
+    @Column(length = 30)
+    private String status;
+
+    @Column(length = 20)
+    private String takenAt;
+
+    @Column(length = 500)
+    private String reason;
+
+    @Column(length = 40)
+    private String deliveredAt;
+
+    private Long actorId;
+
+    @Column(nullable = false)
+    private boolean compacted;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime occurredAt;
+
+    @PrePersist
+    public void onCreate() {
+        this.occurredAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,8 @@
+package com.ompt.Ompt.model;
+
+public enum MedicationEventType {
+    PRESCRIPTION_ADDED,
+    PRESCRIPTION_COMPLETED,  // the doctor ended the course
+    DOSE_STATUS,       // a schedule slot was marked taken, missed, etc.
+    DELIVERY_STATUS
+}
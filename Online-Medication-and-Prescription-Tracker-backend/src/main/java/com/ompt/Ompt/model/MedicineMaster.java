@@ -25,5 +25,6 @@ public class MedicineMaster {
 
     @Lob
     @Column(nullable = false)
+    @Convert(converter = CompressedJsonConverter.class)
     private String defaultScheduleJson;
 }
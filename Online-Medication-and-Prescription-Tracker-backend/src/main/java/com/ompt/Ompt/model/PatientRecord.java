@@ -3,13 +3,20 @@ package com.ompt.Ompt.model;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
 
 @Getter
 @Setter
 @Entity
-@Table(name = "patient_records")
+@Table(
+        name = "patient_records",
+        indexes = {
+                @Index(name = "idx_patient_record_updated", columnList = "updatedAt, id"),
+                @Index(name = "idx_patient_record_doctor_updated", columnList = "assigned_doctor_id, updatedAt, id")
+        }
+)
 public class PatientRecord {
 
     @Id
@@ -24,13 +31,26 @@ public class PatientRecord {
     @JoinColumn(name = "assigned_doctor_id")
     private User assignedDoctor;
 
+    // Medicines live in the prescriptions/dose_slots tables once normalized; the stored
+    // document keeps an empty "medicines" placeholder so the assembled shape is unchanged.
     @Lob
     @Column(nullable = false)
+    @Convert(converter = CompressedJsonConverter.class)
     private String dataJson;
 
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean medicinesNormalized;
+
     @Column(nullable = false)
     private LocalDateTime updatedAt;
 
+    // Bumped by every save of the entity and by touch/touchAll, so it moves whenever the served
+    // document does (medicines included); the record ETags are built from it.
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     @PrePersist
     @PreUpdate
     public void onSave() {
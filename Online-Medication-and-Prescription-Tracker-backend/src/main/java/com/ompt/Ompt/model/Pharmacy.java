@@ -28,6 +28,9 @@ public class Pharmacy {
     @Column(nullable = false)
     private String password;
 
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    private int tokenEpoch;
+
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -0,0 +1,90 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "prescriptions",
+        indexes = {
+                @Index(name = "idx_prescription_record", columnList = "record_id, position"),
+                @Index(name = "uk_prescription_medicine", columnList = "record_id, medicineId", unique = true)
+        }
+)
+public class Prescription {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "record_id", nullable = false)
+    private PatientRecord record;
+
+    // The "id" the client sees in the medicines array.
+    @Column(nullable = false, length = 64)
+    private String medicineId;
+
+    @Column(nullable = false)
+    private int position;
+
+    @Column(length = 150)
+    private String name;
+
+    @Column(length = 100)
+    private String dosage;
+
+    @Column(length = 50)
+    private String type;
+
+    @Column(length = 500)
+    private String instructions;
+
+    @Column(length = 30)
+    private String deliveryStatus;
+
+    @Column(length = 40)
+    private String prescribedAt;
+
+    @Column(length = 40)
+    private String deliveredAt;
+
+    private Long pharmacyId;
+
+    @Column(length = 150)
+    private String pharmacyName;
+
+    @Column(length = 200)
+    private String pharmacyLocation;
+
+    private Long inventoryItemId;
+
+    private Long deliveryId;
+
+    private Double price;
+
+    // Newest medication event already folded into this row.
+    private Long lastEventId;
+
+    // Last day of the course; null when it has no fixed length.
+    private LocalDate endsOn;
+
+    // Set when the doctor ends the course.
+    private LocalDateTime completedAt;
+
+    // Any medicine fields without a dedicated column, kept so the document round-trips.
+    @Lob
+    private String extraJson;
+
+    @OneToMany(mappedBy = "prescription", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position")
+    private List<DoseSlot> slots = new ArrayList<>();
+}
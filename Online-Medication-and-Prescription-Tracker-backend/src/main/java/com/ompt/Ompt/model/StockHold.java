@@ -0,0 +1,52 @@
+package com.ompt.Ompt.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Units of an inventory item set aside for one delivery until it is delivered, cancelled or the
+// hold runs out. The expiry index lets the sweeper read only the holds that are due.
+@Getter
+@Setter
+@Entity
+@Table(
+        name = "stock_holds",
+        indexes = @Index(name = "idx_stock_holds_expiry", columnList = "status, expiresAt")
+)
+public class StockHold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long inventoryItemId;
+
+    @Column(nullable = false, unique = true)
+    private Long deliveryId;
+
+    @Column(nullable = false)
+    private int quantity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private StockHoldStatus status;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime resolvedAt;
+
+    @PrePersist
+    public void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.status == null) {
+            this.status = StockHoldStatus.HELD;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.ompt.Ompt.model;
+
+public enum StockHoldStatus {
+    HELD,       // reserved on the shelf, waiting for the delivery
+    COMMITTED,  // delivered; the units left the stock
+    RELEASED,   // delivery cancelled, units back on offer
+    EXPIRED     // nobody delivered in time, units back on offer
+}
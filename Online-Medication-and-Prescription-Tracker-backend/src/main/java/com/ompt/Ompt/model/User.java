@@ -37,8 +37,14 @@ public class User {
     @Column(length = 100)
     private String resetTokenHash;
 
+    @Column(length = 32, unique = true)
+    private String resetTokenSelector;
+
     private LocalDateTime resetTokenExpiry;
 
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    private int tokenEpoch;
+
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "hospital_id", nullable = false)
     private Hospital hospital;
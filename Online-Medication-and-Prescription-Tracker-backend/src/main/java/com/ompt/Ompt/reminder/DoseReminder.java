@@ -0,0 +1,20 @@
+package com.ompt.Ompt.reminder;
+
+// One daily schedule slot of a prescription. The patient is referenced by id only; notifiers look up
+// the current contact details when the reminder fires.
+public record DoseReminder(
+        Long recordId,
+        Long patientId,
+        String medicineId,
+        String medicineName,
+        String dosage,
+        String time
+) {
+
+    public SlotKey key() {
+        return new SlotKey(recordId, medicineId, time);
+    }
+
+    public record SlotKey(Long recordId, String medicineId, String time) {
+    }
+}
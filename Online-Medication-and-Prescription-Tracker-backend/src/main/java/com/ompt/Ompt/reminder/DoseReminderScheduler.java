@@ -0,0 +1,279 @@
+package com.ompt.Ompt.reminder;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.DoseSlot;
+import com.ompt.Ompt.model.PatientRecord;
+import com.ompt.Ompt.model.Prescription;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Fires a reminder at each schedule slot's time of day. Every slot has exactly one pending timer
+// (its next occurrence) in the timing wheel; firing re-arms it for the following day, and the
+// write paths add, re-arm or skip timers after their transaction commits. Deliveries run on their
+// own thread so a slow channel never holds up the tick.
+@Slf4j
+@Component
+public class DoseReminderScheduler implements MetricsSource {
+
+    private static final DateTimeFormatter SLOT_TIME = DateTimeFormatter.ofPattern("H:mm");
+
+    private final DoseSlotRepository doseSlotRepository;
+    private final List<ReminderNotifier> notifiers;
+    private final boolean enabled;
+    private final long tickMs;
+    private final long leadMs;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final HierarchicalTimingWheel<DoseReminder> wheel;
+    private final Map<DoseReminder.SlotKey, HierarchicalTimingWheel.Timeout<DoseReminder>> timers = new HashMap<>();
+    private ScheduledExecutorService ticker;
+    private ExecutorService delivery;
+
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong maxTickLagMs = new AtomicLong();
+
+    public DoseReminderScheduler(
+            DoseSlotRepository doseSlotRepository,
+            List<ReminderNotifier> notifiers,
+            @Value("${reminders.enabled:true}") boolean enabled,
+            @Value("${reminders.channels:in-app}") Set<String> channels,
+            @Value("${reminders.tick-ms:1000}") long tickMs,
+            @Value("${reminders.wheel-size:60}") int wheelSize,
+            @Value("${reminders.lead-minutes:0}") long leadMinutes
+    ) {
+        this.doseSlotRepository = doseSlotRepository;
+        this.notifiers = notifiers.stream().filter(notifier -> channels.contains(notifier.channel())).toList();
+        this.enabled = enabled;
+        this.tickMs = tickMs;
+        this.leadMs = TimeUnit.MINUTES.toMillis(leadMinutes);
+        this.wheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate today = LocalDate.now(zone);
+        List<DoseReminder> reminders = new ArrayList<>();
+        List<DoseReminder.SlotKey> recordedToday = new ArrayList<>();
+        for (DoseSlotRepository.ReminderView view : doseSlotRepository.findAllForReminders()) {
+            DoseReminder reminder = new DoseReminder(view.getRecordId(), view.getPatientId(),
+                    view.getMedicineId(), view.getMedicineName(), view.getDosage(), view.getTime());
+            reminders.add(reminder);
+            if (today.equals(view.getSlotDate()) && !"pending".equalsIgnoreCase(view.getStatus())) {
+                recordedToday.add(reminder.key());
+            }
+        }
+        schedule(reminders);
+        // a dose already recorded today is not reminded again after a restart
+        recordedToday.forEach(this::skipToday);
+        log.info("Scheduled {} dose reminders", timers.size());
+
+        ticker = Executors.newSingleThreadScheduledExecutor(daemon("dose-reminders"));
+        delivery = Executors.newSingleThreadExecutor(daemon("dose-reminder-delivery"));
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (delivery != null) {
+            delivery.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Call inside the transaction that created the prescriptions.
+    public void prescriptionsAdded(PatientRecord record, List<Prescription> prescriptions) {
+        User patient = record.getUser();
+        List<DoseReminder> reminders = new ArrayList<>();
+        for (Prescription prescription : prescriptions) {
+            for (DoseSlot slot : prescription.getSlots()) {
+                reminders.add(new DoseReminder(record.getId(), patient.getId(),
+                        prescription.getMedicineId(), prescription.getName(), prescription.getDosage(), slot.getTime()));
+            }
+        }
+        afterCommit(() -> schedule(reminders));
+    }
+
+    // A dose was recorded: if today's reminder has not gone out yet, skip it.
+    public void doseRecorded(Long recordId, String medicineId, String time) {
+        DoseReminder.SlotKey key = new DoseReminder.SlotKey(recordId, medicineId, time);
+        afterCommit(() -> skipToday(key));
+    }
+
+    // Call inside the transaction that removed the slots.
+    public void slotsRemoved(List<DoseReminder.SlotKey> keys) {
+        afterCommit(() -> cancel(keys));
+    }
+
+    private synchronized void schedule(List<DoseReminder> reminders) {
+        long now = System.currentTimeMillis();
+        for (DoseReminder reminder : reminders) {
+            LocalTime slotTime = slotTime(reminder.time());
+            if (slotTime == null) {
+                continue;
+            }
+            long deadline = deadlineOn(LocalDate.now(zone), slotTime);
+            if (deadline <= now) {
+                deadline = deadlineOn(LocalDate.now(zone).plusDays(1), slotTime);
+            }
+            HierarchicalTimingWheel.Timeout<DoseReminder> previous = timers.put(reminder.key(), wheel.schedule(deadline, reminder));
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+    }
+
+    private synchronized void cancel(List<DoseReminder.SlotKey> keys) {
+        for (DoseReminder.SlotKey key : keys) {
+            HierarchicalTimingWheel.Timeout<DoseReminder> timeout = timers.remove(key);
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    private synchronized void skipToday(DoseReminder.SlotKey key) {
+        HierarchicalTimingWheel.Timeout<DoseReminder> timeout = timers.get(key);
+        if (timeout == null || !toDate(timeout.deadline() + leadMs).equals(LocalDate.now(zone))) {
+            return;
+        }
+        timeout.cancel();
+        timers.put(key, wheel.schedule(followingDeadline(timeout), timeout.payload()));
+        skipped.incrementAndGet();
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        Map<Long, List<DoseReminder>> due = new LinkedHashMap<>();
+        try {
+            synchronized (this) {
+                wheel.advance(now, timeout -> {
+                    due.computeIfAbsent(timeout.deadline(), deadline -> new ArrayList<>()).add(timeout.payload());
+                    // Re-arm for tomorrow straight away, so the slot never drops out of the index.
+                    timers.put(timeout.payload().key(), wheel.schedule(followingDeadline(timeout), timeout.payload()));
+                });
+            }
+        } catch (RuntimeException ex) {
+            // an exception escaping the task would cancel all further ticks
+            log.error("Dose reminder tick failed", ex);
+        }
+        due.forEach((deadline, reminders) -> {
+            maxTickLagMs.accumulateAndGet(now - deadline, Math::max);
+            LocalDateTime dueAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(deadline + leadMs), zone);
+            delivery.execute(() -> deliver(reminders, dueAt));
+        });
+    }
+
+    private void deliver(List<DoseReminder> reminders, LocalDateTime dueAt) {
+        for (ReminderNotifier notifier : notifiers) {
+            try {
+                notifier.notify(reminders, dueAt);
+            } catch (RuntimeException ex) {
+                failed.addAndGet(reminders.size());
+                log.warn("{} delivery of {} reminders due at {} failed", notifier.channel(), reminders.size(), dueAt, ex);
+            }
+        }
+        fired.addAndGet(reminders.size());
+    }
+
+    // The same wall-clock time on the day after the one the timer was due, so a DST change does not
+    // shift the reminder by an hour.
+    private long followingDeadline(HierarchicalTimingWheel.Timeout<DoseReminder> timeout) {
+        LocalDate dueOn = toDate(timeout.deadline() + leadMs);
+        return deadlineOn(dueOn.plusDays(1), slotTime(timeout.payload().time()));
+    }
+
+    private long deadlineOn(LocalDate date, LocalTime slotTime) {
+        return date.atTime(slotTime).atZone(zone).toInstant().toEpochMilli() - leadMs;
+    }
+
+    private static LocalTime slotTime(String time) {
+        try {
+            return LocalTime.parse(time.trim(), SLOT_TIME);
+        } catch (DateTimeParseException | NullPointerException ex) {
+            return null;
+        }
+    }
+
+    private LocalDate toDate(long epochMs) {
+        return Instant.ofEpochMilli(epochMs).atZone(zone).toLocalDate();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "doseReminders";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("scheduled", wheel.size());
+        }
+        metrics.put("fired", fired.get());
+        metrics.put("skipped", skipped.get());
+        metrics.put("failedDeliveries", failed.get());
+        metrics.put("maxTickLagMs", maxTickLagMs.get());
+        metrics.put("channels", notifiers.stream().map(ReminderNotifier::channel).collect(Collectors.joining(",")));
+        return metrics;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ompt.Ompt.reminder;
+
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.service.EmailService;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Component
+@AllArgsConstructor
+public class EmailReminderNotifier implements ReminderNotifier {
+
+    private final EmailService emailService;
+    private final UserRepository userRepository;
+
+    @Override
+    public String channel() {
+        return "email";
+    }
+
+    @Override
+    public void notify(List<DoseReminder> reminders, LocalDateTime dueAt) {
+        // looked up now, so a changed address or name is used from the next reminder on
+        Map<Long, User> patients = userRepository
+                .findAllById(reminders.stream().map(DoseReminder::patientId).distinct().toList())
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<EmailService.DoseReminderMail> mails = new ArrayList<>();
+        for (DoseReminder reminder : reminders) {
+            User patient = patients.get(reminder.patientId());
+            if (patient != null && patient.getEmail() != null) {
+                mails.add(new EmailService.DoseReminderMail(patient.getEmail(), patient.getName(),
+                        reminder.medicineName(), reminder.dosage(), reminder.time()));
+            }
+        }
+        if (!mails.isEmpty()) {
+            emailService.sendDoseReminders(mails);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.ompt.Ompt.reminder;
+
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel: level 0 has wheelSize buckets of tickMs each, and every further level
+// covers the whole span of the one below in a single bucket. Scheduling and cancelling are O(1);
+// a timer is only touched again when its bucket comes due and it cascades to a finer level.
+// Timers fire on the tick whose window contains their deadline, i.e. up to tickMs early.
+// Not thread-safe: callers serialise access.
+public final class HierarchicalTimingWheel<T> {
+
+    public static final class Timeout<T> {
+        private final long deadline;
+        private final T payload;
+        private HierarchicalTimingWheel<T> wheel;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(HierarchicalTimingWheel<T> wheel, long deadline, T payload) {
+            this.wheel = wheel;
+            this.deadline = deadline;
+            this.payload = payload;
+        }
+
+        public long deadline() {
+            return deadline;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        // False when the timer already fired or was cancelled.
+        public boolean cancel() {
+            if (wheel == null) {
+                return false;
+            }
+            if (bucket != null) {
+                bucket.remove(this);
+            }
+            wheel.size--;
+            wheel = null;
+            return true;
+        }
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout<T> timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        Timeout<T> poll() {
+            Timeout<T> first = head;
+            if (first != null) {
+                remove(first);
+            }
+            return first;
+        }
+    }
+
+    private final class Level {
+        private final long tick;
+        private final long interval;
+        private final Bucket<T>[] buckets;
+        private long currentTime;
+        private Level overflow;
+
+        @SuppressWarnings("unchecked")
+        Level(long tick, long startMs) {
+            this.tick = tick;
+            this.interval = tick * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+            this.currentTime = startMs - Math.floorMod(startMs, tick);
+        }
+
+        // False when the deadline falls inside the current tick of this level.
+        boolean add(Timeout<T> timeout) {
+            if (timeout.deadline < currentTime + tick) {
+                return false;
+            }
+            if (timeout.deadline < currentTime + interval) {
+                buckets[(int) Math.floorMod(timeout.deadline / tick, (long) wheelSize)].add(timeout);
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, currentTime);
+            }
+            return overflow.add(timeout);
+        }
+    }
+
+    private final int wheelSize;
+    private final Level root;
+    private final Bucket<T> due = new Bucket<>();
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMs must be positive and wheelSize at least 2");
+        }
+        this.wheelSize = wheelSize;
+        this.root = new Level(tickMs, startMs);
+    }
+
+    public Timeout<T> schedule(long deadlineMs, T payload) {
+        Timeout<T> timeout = new Timeout<>(this, deadlineMs, payload);
+        insert(timeout);
+        size++;
+        return timeout;
+    }
+
+    // Moves the clock forward one tick at a time up to nowMs, passing every timer that comes due
+    // to the consumer. Returns the number of timers fired.
+    public int advance(long nowMs, Consumer<Timeout<T>> expired) {
+        int fired = fireDue(expired);
+        while (root.currentTime + root.tick <= nowMs) {
+            long time = root.currentTime + root.tick;
+            // Move every level's clock first, so cascaded timers land relative to the new time.
+            int top = 0;
+            for (Level level = root; level != null; level = level.overflow) {
+                if (Math.floorMod(time, level.tick) != 0) {
+                    break;
+                }
+                level.currentTime = time;
+                top++;
+            }
+            for (int depth = top - 1; depth >= 0; depth--) {
+                Level level = levelAt(depth);
+                Bucket<T> bucket = level.buckets[(int) Math.floorMod(time / level.tick, (long) wheelSize)];
+                for (Timeout<T> timeout = bucket.poll(); timeout != null; timeout = bucket.poll()) {
+                    insert(timeout);
+                }
+            }
+            fired += fireDue(expired);
+        }
+        return fired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(Timeout<T> timeout) {
+        if (!root.add(timeout)) {
+            due.add(timeout);
+        }
+    }
+
+    private int fireDue(Consumer<Timeout<T>> expired) {
+        int fired = 0;
+        for (Timeout<T> timeout = due.poll(); timeout != null; timeout = due.poll()) {
+            timeout.wheel = null;
+            size--;
+            fired++;
+            expired.accept(timeout);
+        }
+        return fired;
+    }
+
+    private Level levelAt(int depth) {
+        Level level = root;
+        for (int i = 0; i < depth; i++) {
+            level = level.overflow;
+        }
+        return level;
+    }
+}
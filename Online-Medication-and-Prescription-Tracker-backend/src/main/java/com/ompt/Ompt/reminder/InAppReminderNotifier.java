@@ -0,0 +1,54 @@
+package com.ompt.Ompt.reminder;
+
+import com.ompt.Ompt.DTO.ReminderNoticeDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps the latest reminders per patient in memory for the app to poll; they do not survive a restart.
+@Component
+public class InAppReminderNotifier implements ReminderNotifier {
+
+    private final int maxPerPatient;
+    private final ConcurrentHashMap<Long, Deque<ReminderNoticeDTO>> notices = new ConcurrentHashMap<>();
+
+    public InAppReminderNotifier(@Value("${reminders.in-app.max-per-patient:10}") int maxPerPatient) {
+        this.maxPerPatient = maxPerPatient;
+    }
+
+    @Override
+    public String channel() {
+        return "in-app";
+    }
+
+    @Override
+    public void notify(List<DoseReminder> reminders, LocalDateTime dueAt) {
+        for (DoseReminder reminder : reminders) {
+            ReminderNoticeDTO notice = new ReminderNoticeDTO(
+                    reminder.medicineId(), reminder.medicineName(), reminder.dosage(), reminder.time(), dueAt);
+            Deque<ReminderNoticeDTO> queue = notices.computeIfAbsent(reminder.patientId(), id -> new ArrayDeque<>());
+            synchronized (queue) {
+                queue.addFirst(notice);
+                while (queue.size() > maxPerPatient) {
+                    queue.removeLast();
+                }
+            }
+        }
+    }
+
+    public List<ReminderNoticeDTO> recent(Long patientId) {
+        Deque<ReminderNoticeDTO> queue = notices.get(patientId);
+        if (queue == null) {
+            return List.of();
+        }
+        synchronized (queue) {
+            return new ArrayList<>(queue);
+        }
+    }
+}
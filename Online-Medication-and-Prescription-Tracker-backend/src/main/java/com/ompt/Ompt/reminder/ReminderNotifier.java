@@ -0,0 +1,13 @@
+package com.ompt.Ompt.reminder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// A delivery channel for dose reminders, enabled by listing its channel name in reminders.channels.
+public interface ReminderNotifier {
+
+    String channel();
+
+    // All reminders due at dueAt, so a channel can write them together. Runs off the ticker thread.
+    void notify(List<DoseReminder> reminders, LocalDateTime dueAt);
+}
@@ -0,0 +1,62 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.AdherenceBucket;
+import com.ompt.Ompt.model.AdherenceCounter;
+import com.ompt.Ompt.model.AdherenceScope;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface AdherenceCounterRepository extends JpaRepository<AdherenceCounter, Long> {
+
+    Optional<AdherenceCounter> findByScopeAndScopeIdAndBucketAndBucketStart(
+            AdherenceScope scope, Long scopeId, AdherenceBucket bucket, LocalDate bucketStart);
+
+    List<AdherenceCounter> findByScopeAndScopeIdAndBucketAndBucketStartBetweenOrderByBucketStartAsc(
+            AdherenceScope scope, Long scopeId, AdherenceBucket bucket, LocalDate from, LocalDate to);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from AdherenceCounter c where c.scope = :scope and c.scopeId = :scopeId and c.bucket = :bucket " +
+            "order by c.bucketStart")
+    List<AdherenceCounter> lockBucket(AdherenceScope scope, Long scopeId, AdherenceBucket bucket);
+
+    boolean existsByBucket(AdherenceBucket bucket);
+
+    // A range rather than an IN list, so the unique index is used on scopeId as well.
+    @Query("select c.scopeId from AdherenceCounter c where c.scope = :scope and c.bucket = :bucket " +
+            "and c.bucketStart = :bucketStart and c.scopeId between :fromId and :toId")
+    List<Long> findScopeIdsBetween(AdherenceScope scope, AdherenceBucket bucket, LocalDate bucketStart,
+                                   Long fromId, Long toId);
+
+    @Modifying
+    @Query("update AdherenceCounter c set c.onTime = c.onTime + :onTime, c.late = c.late + :late, " +
+            "c.missed = c.missed + :missed, c.pending = c.pending + :pending " +
+            "where c.scope = :scope and c.scopeId = :scopeId and c.bucket = :bucket and c.bucketStart = :bucketStart")
+    int increment(AdherenceScope scope, Long scopeId, AdherenceBucket bucket, LocalDate bucketStart,
+                  long onTime, long late, long missed, long pending);
+
+    // The range lets the unique index narrow the scan before the IN list is checked.
+    @Modifying
+    @Query("update AdherenceCounter c set c.onTime = c.onTime + :onTime, c.late = c.late + :late, " +
+            "c.missed = c.missed + :missed, c.pending = c.pending + :pending " +
+            "where c.scope = :scope and c.bucket = :bucket and c.bucketStart = :bucketStart " +
+            "and c.scopeId between :fromId and :toId and c.scopeId in :scopeIds")
+    int incrementAll(AdherenceScope scope, AdherenceBucket bucket, LocalDate bucketStart,
+                     Long fromId, Long toId, Collection<Long> scopeIds,
+                     long onTime, long late, long missed, long pending);
+
+    @Modifying
+    @Query("delete from AdherenceCounter c where c.bucket = :bucket")
+    int deleteByBucket(AdherenceBucket bucket);
+
+    @Modifying
+    @Query("delete from AdherenceCounter c where c.bucket = :bucket and c.scope = :scope and c.scopeId in :scopeIds")
+    int deleteByBucketAndScopeIds(AdherenceBucket bucket, AdherenceScope scope, Collection<Long> scopeIds);
+}
@@ -0,0 +1,15 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.ArchivedPrescription;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface ArchivedPrescriptionRepository extends JpaRepository<ArchivedPrescription, Long> {
+
+    // Newest first.
+    @Query("select a from ArchivedPrescription a where a.recordId = :recordId and a.id < :beforeId order by a.id desc")
+    List<ArchivedPrescription> findPageByRecordId(Long recordId, Long beforeId, Limit limit);
+}
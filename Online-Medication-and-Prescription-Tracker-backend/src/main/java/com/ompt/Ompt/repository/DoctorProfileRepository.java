@@ -3,6 +3,7 @@ package com.ompt.Ompt.repository;
 import com.ompt.Ompt.model.DoctorProfile;
 import com.ompt.Ompt.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,4 +11,12 @@ import java.util.Optional;
 public interface DoctorProfileRepository extends JpaRepository<DoctorProfile, Long> {
     Optional<DoctorProfile> findByUser(User user);
     List<DoctorProfile> findByUser_Hospital_Id(Long hospitalId);
+
+    @Query("select p.id as id, p.version as version from DoctorProfile p where p.user = :user")
+    Optional<VersionView> findVersionByUser(User user);
+
+    interface VersionView {
+        Long getId();
+        long getVersion();
+    }
 }
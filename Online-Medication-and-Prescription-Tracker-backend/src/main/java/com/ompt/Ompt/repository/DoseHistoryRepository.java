@@ -0,0 +1,36 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.DoseHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DoseHistoryRepository extends JpaRepository<DoseHistory, Long> {
+
+    // Copies the slots of the given records whose day is over; doses still pending were missed.
+    // Completed courses are left to PrescriptionArchiver, which archives their slots with them.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("insert into DoseHistory (recordId, medicineId, doseDate, time, status, takenAt, reason) " +
+            "select p.record.id, p.medicineId, s.slotDate, s.time, " +
+            "case when s.status = 'pending' then 'missed' else s.status end, s.takenAt, s.reason " +
+            "from DoseSlot s join s.prescription p " +
+            "where p.record.id between :fromId and :toId and s.slotDate < :today and p.completedAt is null")
+    int archiveBefore(Long fromId, Long toId, LocalDate today);
+
+    @Query("select u.id as patientId, d.id as doctorId, h.id as hospitalId, dh.status as status, count(dh) as slots " +
+            "from DoseHistory dh, PatientRecord r join r.user u " +
+            "left join r.assignedDoctor d left join u.hospital h " +
+            "where r.id = dh.recordId " +
+            "group by u.id, d.id, h.id, dh.status")
+    List<DoseSlotRepository.StatusCountView> countStatusesByPatient();
+
+    @Query("select u.id as patientId, d.id as doctorId, h.id as hospitalId, dh.status as status, count(dh) as slots " +
+            "from DoseHistory dh, PatientRecord r join r.user u " +
+            "left join r.assignedDoctor d join u.hospital h " +
+            "where r.id = dh.recordId and h.id = :hospitalId " +
+            "group by u.id, d.id, h.id, dh.status")
+    List<DoseSlotRepository.StatusCountView> countStatusesByHospital(Long hospitalId);
+}
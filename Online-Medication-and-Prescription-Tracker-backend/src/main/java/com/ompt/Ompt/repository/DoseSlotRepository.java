@@ -0,0 +1,139 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.DoseSlot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface DoseSlotRepository extends JpaRepository<DoseSlot, Long> {
+
+    interface StatusCountView {
+        Long getPatientId();
+
+        Long getDoctorId();
+
+        Long getHospitalId();
+
+        String getStatus();
+
+        long getSlots();
+    }
+
+    interface OverdueSlotView {
+        Long getSlotId();
+
+        Long getPatientId();
+
+        Long getDoctorId();
+
+        Long getHospitalId();
+    }
+
+    @Query("select distinct s.time from DoseSlot s join s.prescription p " +
+            "where p.record.id between :fromId and :toId and s.slotDate = :today and s.status = 'pending' " +
+            "and p.completedAt is null")
+    List<String> findPendingTimesInRecordRange(Long fromId, Long toId, LocalDate today);
+
+    @Query("select distinct p.record.id from DoseSlot s join s.prescription p " +
+            "where p.record.id between :fromId and :toId and s.slotDate = :today and s.status = 'pending' " +
+            "and s.time in :times and p.completedAt is null")
+    List<Long> findRecordIdsPendingAt(Long fromId, Long toId, LocalDate today, Collection<String> times);
+
+    // Today's pending slots of running courses at one of the given times, leaving out slots the
+    // patient has recorded a status for that is not compacted into the row yet.
+    @Query("select s.id as slotId, u.id as patientId, d.id as doctorId, h.id as hospitalId " +
+            "from DoseSlot s join s.prescription p join p.record r join r.user u " +
+            "left join r.assignedDoctor d left join u.hospital h " +
+            "where r.id in :recordIds and s.slotDate = :today and s.status = 'pending' and s.time in :times " +
+            "and p.completedAt is null and not exists (select e.id from MedicationEvent e " +
+            "where e.recordId = r.id and e.medicineId = p.medicineId and e.slotTime = s.time " +
+            "and e.type = com.ompt.Ompt.model.MedicationEventType.DOSE_STATUS and e.compacted = false)")
+    List<OverdueSlotView> findOverdue(Collection<Long> recordIds, LocalDate today, Collection<String> times);
+
+    @Modifying
+    @Query("update DoseSlot s set s.status = :status, s.takenAt = null, s.lastEventId = :eventId " +
+            "where s.id in :slotIds and s.status = 'pending'")
+    int applyFromPending(Collection<Long> slotIds, String status, Long eventId);
+
+    interface RolloverCountView {
+        Long getPatientId();
+
+        Long getDoctorId();
+
+        Long getHospitalId();
+
+        String getStatus();
+
+        LocalDate getSlotDate();
+
+        long getSlots();
+    }
+
+    @Query("select u.id as patientId, d.id as doctorId, h.id as hospitalId, s.status as status, " +
+            "s.slotDate as slotDate, count(s) as slots " +
+            "from DoseSlot s join s.prescription p join p.record r join r.user u " +
+            "left join r.assignedDoctor d left join u.hospital h " +
+            "where r.id between :fromId and :toId and s.slotDate < :today and p.completedAt is null " +
+            "group by u.id, d.id, h.id, s.status, s.slotDate")
+    List<RolloverCountView> countBefore(Long fromId, Long toId, LocalDate today);
+
+    // Starts today's dose for every slot whose day is over. lastEventId moves past every event
+    // already folded in, so none of them is overlaid on the new day.
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update DoseSlot s set s.status = 'pending', s.takenAt = null, s.reason = null, s.slotDate = :today, " +
+            "s.lastEventId = :eventId " +
+            "where s.slotDate < :today and s.prescription.id in " +
+            "(select p.id from Prescription p where p.record.id between :fromId and :toId and p.completedAt is null)")
+    int resetBefore(Long fromId, Long toId, LocalDate today, Long eventId);
+
+    @Modifying
+    @Query("update DoseSlot s set s.slotDate = :today where s.slotDate is null")
+    int stampUndated(LocalDate today);
+
+    interface ReminderView {
+        Long getRecordId();
+
+        Long getPatientId();
+
+        String getMedicineId();
+
+        String getMedicineName();
+
+        String getDosage();
+
+        String getTime();
+
+        LocalDate getSlotDate();
+
+        String getStatus();
+    }
+
+    @Query("select r.id as recordId, u.id as patientId, " +
+            "p.medicineId as medicineId, p.name as medicineName, p.dosage as dosage, s.time as time, " +
+            "s.slotDate as slotDate, s.status as status " +
+            "from DoseSlot s join s.prescription p join p.record r join r.user u where p.completedAt is null")
+    List<ReminderView> findAllForReminders();
+
+    @Query("select u.id as patientId, d.id as doctorId, h.id as hospitalId, s.status as status, count(s) as slots " +
+            "from DoseSlot s join s.prescription p join p.record r join r.user u " +
+            "left join r.assignedDoctor d left join u.hospital h " +
+            "group by u.id, d.id, h.id, s.status")
+    List<StatusCountView> countStatusesByPatient();
+
+    @Query("select u.id as patientId, d.id as doctorId, h.id as hospitalId, s.status as status, count(s) as slots " +
+            "from DoseSlot s join s.prescription p join p.record r join r.user u " +
+            "left join r.assignedDoctor d join u.hospital h where h.id = :hospitalId " +
+            "group by u.id, d.id, h.id, s.status")
+    List<StatusCountView> countStatusesByHospital(Long hospitalId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update DoseSlot s set s.status = :status, s.takenAt = :takenAt, s.reason = coalesce(:reason, s.reason), " +
+            "s.lastEventId = :eventId " +
+            "where s.time = :time and (s.lastEventId is null or s.lastEventId < :eventId) and s.prescription.id in " +
+            "(select p.id from Prescription p where p.record.id = :recordId and p.medicineId = :medicineId)")
+    int applyStatus(Long recordId, String medicineId, String time, String status, String takenAt, String reason, Long eventId);
+}
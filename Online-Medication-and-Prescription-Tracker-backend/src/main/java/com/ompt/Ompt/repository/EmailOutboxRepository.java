@@ -0,0 +1,30 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.EmailOutboxMessage;
+import com.ompt.Ompt.model.EmailStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EmailOutboxRepository extends JpaRepository<EmailOutboxMessage, Long> {
+
+    List<EmailOutboxMessage> findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+            EmailStatus status, LocalDateTime now, Pageable pageable);
+
+    long countByStatus(EmailStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("update EmailOutboxMessage m set m.status = :to, m.claimedAt = :now where m.id = :id and m.status = :from")
+    int claim(Long id, EmailStatus from, EmailStatus to, LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("update EmailOutboxMessage m set m.status = :pending where m.status = :sending and m.claimedAt < :cutoff")
+    int releaseStale(EmailStatus sending, EmailStatus pending, LocalDateTime cutoff);
+}
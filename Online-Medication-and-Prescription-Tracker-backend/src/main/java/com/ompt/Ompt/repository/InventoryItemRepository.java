@@ -2,7 +2,11 @@ package com.ompt.Ompt.repository;
 
 import com.ompt.Ompt.model.InventoryItem;
 import com.ompt.Ompt.model.Pharmacy;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,5 +14,45 @@ import java.util.Optional;
 public interface InventoryItemRepository extends JpaRepository<InventoryItem, Long> {
     List<InventoryItem> findByPharmacyOrderByIdDesc(Pharmacy pharmacy);
     Optional<InventoryItem> findByIdAndPharmacy(Long id, Pharmacy pharmacy);
+
+    // For edits that must not race the hold statements below.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from InventoryItem i where i.id = :id and i.pharmacy = :pharmacy")
+    Optional<InventoryItem> lockByIdAndPharmacy(Long id, Pharmacy pharmacy);
     List<InventoryItem> findByNameIgnoreCaseAndQuantityGreaterThan(String name, int quantity);
+
+    // Items of that name with units not yet held for a delivery.
+    @Query("select i from InventoryItem i join fetch i.pharmacy " +
+            "where lower(i.name) = lower(:name) and i.quantity - i.reserved > 0")
+    List<InventoryItem> findAvailableByName(String name);
+
+    // Holds count units only while that many are neither sold nor held; lowStock follows the
+    // units still on offer. Returns 0 when the stock could not cover it.
+    @Modifying(flushAutomatically = true)
+    @Query("update InventoryItem i set i.reserved = i.reserved + :count, " +
+            "i.lowStock = case when i.quantity - i.reserved - :count < :lowStockBelow then true else false end " +
+            "where i.id = :id and i.quantity - i.reserved >= :count")
+    int reserveIfAvailable(Long id, int count, int lowStockBelow);
+
+    // A held delivery went out: the units leave both the stock and the held count.
+    @Modifying(flushAutomatically = true)
+    @Query("update InventoryItem i set i.quantity = i.quantity - :count, i.reserved = i.reserved - :count " +
+            "where i.id = :id and i.reserved >= :count and i.quantity >= :count")
+    int commitReserved(Long id, int count);
+
+    @Modifying(flushAutomatically = true)
+    @Query("update InventoryItem i set i.reserved = i.reserved - :count, " +
+            "i.lowStock = case when i.quantity - i.reserved + :count < :lowStockBelow then true else false end " +
+            "where i.id = :id and i.reserved >= :count")
+    int releaseReserved(Long id, int count, int lowStockBelow);
+
+    // Takes count units straight off the stock, only while that many are neither sold nor held.
+    @Modifying(flushAutomatically = true)
+    @Query("update InventoryItem i set i.quantity = i.quantity - :count, " +
+            "i.lowStock = case when i.quantity - i.reserved - :count < :lowStockBelow then true else false end " +
+            "where i.id = :id and i.quantity - i.reserved >= :count")
+    int decrementIfAvailable(Long id, int count, int lowStockBelow);
+
+    @Query("select i.quantity - i.reserved from InventoryItem i where i.id = :id")
+    Optional<Integer> findAvailableById(Long id);
 }
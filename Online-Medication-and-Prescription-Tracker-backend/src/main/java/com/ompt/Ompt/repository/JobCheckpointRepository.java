@@ -0,0 +1,7 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+}
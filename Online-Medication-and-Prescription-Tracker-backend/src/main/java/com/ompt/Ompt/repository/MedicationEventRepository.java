@@ -0,0 +1,39 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.MedicationEvent;
+import com.ompt.Ompt.model.MedicationEventType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface MedicationEventRepository extends JpaRepository<MedicationEvent, Long> {
+
+    List<MedicationEvent> findByRecordIdInAndCompactedFalseOrderByIdAsc(Collection<Long> recordIds);
+
+    List<MedicationEvent> findByCompactedFalseOrderByIdAsc(Limit limit);
+
+    Optional<MedicationEvent> findFirstByRecordIdAndMedicineIdAndSlotTimeAndTypeOrderByIdDesc(
+            Long recordId, String medicineId, String slotTime, MedicationEventType type);
+
+    long countByCompactedFalse();
+
+    @Query("select coalesce(max(e.id), 0) from MedicationEvent e")
+    long findMaxId();
+
+    // One already compacted event per slot, for writers that update the slots themselves.
+    @Modifying
+    @Query("insert into MedicationEvent (recordId, medicineId, type, slotTime, status, compacted, occurredAt) " +
+            "select p.record.id, p.medicineId, com.ompt.Ompt.model.MedicationEventType.DOSE_STATUS, s.time, " +
+            ":status, true, :now from DoseSlot s join s.prescription p where s.id in :slotIds")
+    int insertAppliedDoseStatus(Collection<Long> slotIds, String status, LocalDateTime now);
+
+    @Modifying
+    @Query("update MedicationEvent e set e.compacted = true where e.id in :ids")
+    int markCompacted(Collection<Long> ids);
+}
@@ -2,13 +2,80 @@ package com.ompt.Ompt.repository;
 
 import com.ompt.Ompt.model.PatientRecord;
 import com.ompt.Ompt.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface PatientRecordRepository extends JpaRepository<PatientRecord, Long> {
     Optional<PatientRecord> findByUser(User user);
     List<PatientRecord> findByUser_Hospital_Id(Long hospitalId);
     List<PatientRecord> findByAssignedDoctor(User doctor);
+
+    @Query("select r from PatientRecord r where r.user.hospital.id = :hospitalId " +
+            "and (r.updatedAt > :updatedAt or (r.updatedAt = :updatedAt and r.id > :id)) order by r.updatedAt, r.id")
+    List<PatientRecord> findPageByHospitalId(Long hospitalId, LocalDateTime updatedAt, Long id, Limit limit);
+
+    @Query("select r from PatientRecord r where r.assignedDoctor.id = :doctorId " +
+            "and (r.updatedAt > :updatedAt or (r.updatedAt = :updatedAt and r.id > :id)) order by r.updatedAt, r.id")
+    List<PatientRecord> findPageByAssignedDoctorId(Long doctorId, LocalDateTime updatedAt, Long id, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"))
+    @Query("select r from PatientRecord r where r.user.hospital.id = :hospitalId order by r.updatedAt, r.id")
+    Stream<PatientRecord> streamByHospitalId(Long hospitalId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"))
+    @Query("select r from PatientRecord r where r.assignedDoctor.id = :doctorId order by r.updatedAt, r.id")
+    Stream<PatientRecord> streamByAssignedDoctorId(Long doctorId);
+
+    @Query("select r.id as id, r.version as version from PatientRecord r where r.user = :user")
+    Optional<VersionView> findVersionByUser(User user);
+
+    @Query("select r.id as id, r.version as version from PatientRecord r where r.user.hospital.id = :hospitalId order by r.id")
+    List<VersionView> findVersionsByHospitalId(Long hospitalId);
+
+    @Query("select r.id as id, r.version as version from PatientRecord r where r.assignedDoctor = :doctor order by r.id")
+    List<VersionView> findVersionsByAssignedDoctor(User doctor);
+
+    @Modifying
+    @Query("update PatientRecord r set r.medicinesNormalized = true where r.id = :id and r.medicinesNormalized = false")
+    int claimNormalization(Long id);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update PatientRecord r set r.updatedAt = :now, r.version = r.version + 1 where r.id = :id")
+    int touch(Long id, LocalDateTime now);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update PatientRecord r set r.updatedAt = :now, r.version = r.version + 1 where r.id in :ids")
+    int touchAll(Collection<Long> ids, LocalDateTime now);
+
+    @Query("select r.id from PatientRecord r where r.id > :afterId order by r.id")
+    List<Long> findIdsAfter(Long afterId, Limit limit);
+
+    @Query("select r.id as id, u.id as patientId, u.hospital.id as hospitalId, r.assignedDoctor.id as doctorId, " +
+            "r.dataJson as dataJson, r.updatedAt as updatedAt from PatientRecord r join r.user u where r.id in :ids")
+    List<SearchSourceView> findSearchSources(Collection<Long> ids);
+
+    interface VersionView {
+        Long getId();
+        long getVersion();
+    }
+
+    interface SearchSourceView {
+        Long getId();
+        Long getPatientId();
+        Long getHospitalId();
+        Long getDoctorId();
+        String getDataJson();
+        LocalDateTime getUpdatedAt();
+    }
 }
@@ -2,10 +2,24 @@ package com.ompt.Ompt.repository;
 
 import com.ompt.Ompt.model.Pharmacy;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface PharmacyRepository extends JpaRepository<Pharmacy, Long> {
     Optional<Pharmacy> findByEmailIgnoreCase(String email);
     boolean existsByEmailIgnoreCase(String email);
+
+    @Query("select p.id as id, p.tokenEpoch as tokenEpoch from Pharmacy p where p.id in :ids")
+    List<TokenEpochView> findTokenEpochsByIdIn(Collection<Long> ids);
+
+    @Query("select p.id as id, p.tokenEpoch as tokenEpoch from Pharmacy p where p.id = :id")
+    Optional<TokenEpochView> findTokenEpochById(Long id);
+
+    interface TokenEpochView {
+        Long getId();
+        int getTokenEpoch();
+    }
 }
@@ -0,0 +1,59 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.Prescription;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
+
+    @Query("select distinct p from Prescription p left join fetch p.slots where p.record.id in :recordIds order by p.position")
+    List<Prescription> findWithSlotsByRecordIds(Collection<Long> recordIds);
+
+    Optional<Prescription> findByRecord_IdAndMedicineId(Long recordId, String medicineId);
+
+    interface ArchiveCandidateView {
+        Long getId();
+
+        Long getRecordId();
+    }
+
+    // Courses the doctor completed, and delivered courses whose last day has passed.
+    @Query("select p.id as id, p.record.id as recordId from Prescription p " +
+            "where p.completedAt is not null or (p.deliveryStatus = 'delivered' and p.endsOn < :today) order by p.id")
+    List<ArchiveCandidateView> findArchivable(LocalDate today, Limit limit);
+
+    @Query("select distinct p from Prescription p left join fetch p.slots join fetch p.record r join fetch r.user " +
+            "where p.id in :ids order by p.id")
+    List<Prescription> findWithSlotsByIds(Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Prescription p set p.completedAt = :completedAt where p.id = :id and p.completedAt is null")
+    int markCompleted(Long id, LocalDateTime completedAt);
+
+    @Query("select p.record.id as recordId, p.name as name from Prescription p where p.record.id in :recordIds")
+    List<NameView> findNamesByRecordIds(Collection<Long> recordIds);
+
+    interface NameView {
+        Long getRecordId();
+
+        String getName();
+    }
+
+    @Query("select coalesce(max(p.position), -1) from Prescription p where p.record.id = :recordId")
+    int findMaxPosition(Long recordId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Prescription p set p.deliveryStatus = :status, p.deliveredAt = coalesce(:deliveredAt, p.deliveredAt), " +
+            "p.lastEventId = :eventId " +
+            "where p.record.id = :recordId and p.medicineId = :medicineId " +
+            "and (p.lastEventId is null or p.lastEventId < :eventId)")
+    int applyDeliveryStatus(Long recordId, String medicineId, String status, String deliveredAt, Long eventId);
+}
@@ -0,0 +1,29 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.StockHold;
+import com.ompt.Ompt.model.StockHoldStatus;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface StockHoldRepository extends JpaRepository<StockHold, Long> {
+
+    Optional<StockHold> findByDeliveryId(Long deliveryId);
+
+    // Served by idx_stock_holds_expiry: only holds already past their expiry are read.
+    List<StockHold> findByStatusAndExpiresAtLessThanEqualOrderByExpiresAtAsc(
+            StockHoldStatus status, LocalDateTime now, Limit limit);
+
+    long countByStatus(StockHoldStatus status);
+
+    // Moves a hold on only from the expected status, so a delivery and the sweeper cannot both
+    // settle it.
+    @Modifying(flushAutomatically = true)
+    @Query("update StockHold h set h.status = :to, h.resolvedAt = :now where h.id = :id and h.status = :from")
+    int resolve(Long id, StockHoldStatus from, StockHoldStatus to, LocalDateTime now);
+}
@@ -2,14 +2,34 @@ package com.ompt.Ompt.repository;
 
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import com.ompt.Ompt.model.AccountStatus;
+import com.ompt.Ompt.model.Role;
 import com.ompt.Ompt.model.User;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByEmail(String email);
-    List<User> findByResetTokenHashIsNotNullAndResetTokenExpiryAfter(LocalDateTime time);
+    List<User> findByResetTokenSelectorIsNullAndResetTokenHashIsNotNullAndResetTokenExpiryAfter(LocalDateTime time);
+    Optional<User> findByResetTokenSelector(String selector);
     Optional<User> findByEmailIgnoreCase(String email);
     boolean existsByEmailIgnoreCase(String email);
+
+    @Query("select u.id from User u where u.hospital.id = :hospitalId and u.role = :role")
+    List<Long> findIdsByHospitalIdAndRole(Long hospitalId, Role role);
+
+    @Query("select u.id as id, u.tokenEpoch as tokenEpoch, u.status as status from User u where u.id in :ids")
+    List<TokenEpochView> findTokenEpochsByIdIn(Collection<Long> ids);
+
+    @Query("select u.id as id, u.tokenEpoch as tokenEpoch, u.status as status from User u where u.id = :id")
+    Optional<TokenEpochView> findTokenEpochById(Long id);
+
+    interface TokenEpochView {
+        Long getId();
+        int getTokenEpoch();
+        AccountStatus getStatus();
+    }
 }
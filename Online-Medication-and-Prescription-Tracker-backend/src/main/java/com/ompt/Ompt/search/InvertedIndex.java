@@ -0,0 +1,144 @@
+package com.ompt.Ompt.search;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+// Term -> postings index over documents identified by a long key. Each document gets a dense int
+// ordinal; postings are sorted ordinal arrays and the dictionary is sorted, so a prefix is one
+// range of terms. A query unions the postings of each prefix into a bit set and intersects the sets.
+// Not thread-safe: callers serialise writes against reads.
+final class InvertedIndex<T> {
+
+    private record Entry<T>(long key, T value, String[] terms) {
+    }
+
+    private static final class Postings {
+        private int[] ordinals = new int[2];
+        private int size;
+
+        void add(int ordinal) {
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            System.arraycopy(ordinals, at, ordinals, at + 1, size - at);
+            ordinals[at] = ordinal;
+            size++;
+        }
+
+        void remove(int ordinal) {
+            int at = Arrays.binarySearch(ordinals, 0, size, ordinal);
+            if (at < 0) {
+                return;
+            }
+            System.arraycopy(ordinals, at + 1, ordinals, at, size - at - 1);
+            size--;
+        }
+    }
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final Map<Long, Integer> ordinalsByKey = new HashMap<>();
+    private final List<Entry<T>> entries = new ArrayList<>();
+    private final ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    // Replaces whatever was indexed under the key.
+    void put(long key, Collection<String> documentTerms, T value) {
+        Integer existing = ordinalsByKey.get(key);
+        int ordinal;
+        if (existing != null) {
+            unlink(existing);
+            ordinal = existing;
+        } else {
+            ordinal = freeOrdinals.isEmpty() ? entries.size() : freeOrdinals.pop();
+            ordinalsByKey.put(key, ordinal);
+        }
+        String[] distinct = documentTerms.stream().distinct().toArray(String[]::new);
+        Entry<T> entry = new Entry<>(key, value, distinct);
+        if (ordinal == entries.size()) {
+            entries.add(entry);
+        } else {
+            entries.set(ordinal, entry);
+        }
+        for (String term : distinct) {
+            terms.computeIfAbsent(term, ignored -> new Postings()).add(ordinal);
+        }
+    }
+
+    void remove(long key) {
+        Integer ordinal = ordinalsByKey.remove(key);
+        if (ordinal != null) {
+            unlink(ordinal);
+            entries.set(ordinal, null);
+            freeOrdinals.push(ordinal);
+        }
+    }
+
+    T get(long key) {
+        Integer ordinal = ordinalsByKey.get(key);
+        return ordinal == null ? null : entries.get(ordinal).value();
+    }
+
+    int size() {
+        return ordinalsByKey.size();
+    }
+
+    int termCount() {
+        return terms.size();
+    }
+
+    // Passes every document that has, for each prefix, at least one term starting with it.
+    void forEachMatch(List<String> prefixes, Consumer<T> action) {
+        if (prefixes.isEmpty()) {
+            return;
+        }
+        BitSet matches = null;
+        for (String prefix : prefixes) {
+            BitSet matching = new BitSet(entries.size());
+            for (Postings postings : withPrefix(prefix).values()) {
+                for (int i = 0; i < postings.size; i++) {
+                    matching.set(postings.ordinals[i]);
+                }
+            }
+            if (matches == null) {
+                matches = matching;
+            } else {
+                matches.and(matching);
+            }
+            if (matches.isEmpty()) {
+                return;
+            }
+        }
+        for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+            action.accept(entries.get(ordinal).value());
+        }
+    }
+
+    private NavigableMap<String, Postings> withPrefix(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void unlink(int ordinal) {
+        for (String term : entries.get(ordinal).terms()) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                postings.remove(ordinal);
+                if (postings.size == 0) {
+                    terms.remove(term);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.ompt.Ompt.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ompt.Ompt.DTO.PatientSearchHitDTO;
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import com.ompt.Ompt.repository.PrescriptionRepository;
+import com.ompt.Ompt.security.JwtPrincipal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+// Prefix search over patient name, email, diagnosis, allergies and current medicine names, held
+// in memory with one inverted index per hospital. Built from the database on startup; the record
+// write paths report changed records and those are re-read and re-indexed after their commit.
+@Slf4j
+@Component
+public class PatientSearchIndex implements MetricsSource {
+
+    public static final int DEFAULT_LIMIT = 20;
+    public static final int MAX_LIMIT = 100;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Doc> BY_NAME = Comparator.comparing(Doc::sortKey).thenComparing(Doc::patientId);
+
+    // sortKey is the lower-cased name, so ranking a large match set does not allocate per comparison
+    private record Doc(Long patientId, Long doctorId, String sortKey, String name, String email, String diagnosis) {
+    }
+
+    // Where a record is indexed, and the record version that put it there.
+    private record Placement(Long hospitalId, LocalDateTime version) {
+    }
+
+    private static final class Partition {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final InvertedIndex<Doc> index = new InvertedIndex<>();
+    }
+
+    private final PatientRecordRepository patientRecordRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+    private final int batchSize;
+
+    private final Map<Long, Partition> partitions = new ConcurrentHashMap<>();
+    private final Map<Long, Placement> placements = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private final AtomicLong maxSearchMicros = new AtomicLong();
+    private final AtomicLong reindexed = new AtomicLong();
+    private volatile long buildMs;
+
+    public PatientSearchIndex(
+            PatientRecordRepository patientRecordRepository,
+            PrescriptionRepository prescriptionRepository,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${search.rebuild-batch-size:1000}") int batchSize
+    ) {
+        this.patientRecordRepository = patientRecordRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.objectMapper = objectMapper;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long started = System.nanoTime();
+        long afterId = 0;
+        try {
+            while (true) {
+                List<Long> ids = patientRecordRepository.findIdsAfter(afterId, Limit.of(batchSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                reindex(ids);
+                afterId = ids.get(ids.size() - 1);
+            }
+        } catch (RuntimeException ex) {
+            log.error("Building the patient search index failed after record {}; search stays unavailable", afterId, ex);
+            return;
+        }
+        ready = true;
+        buildMs = (System.nanoTime() - started) / 1_000_000;
+        log.info("Indexed {} patient records for search in {} ms", placements.size(), buildMs);
+    }
+
+    // Call inside the transaction that changed the records.
+    public void recordsChanged(Collection<Long> recordIds) {
+        List<Long> ids = List.copyOf(recordIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    reindexQuietly(ids);
+                }
+            });
+        } else {
+            reindexQuietly(ids);
+        }
+    }
+
+    // Admins search their hospital; doctors search the patients assigned to them within their hospital.
+    public List<PatientSearchHitDTO> search(JwtPrincipal viewer, String query, Integer limit) {
+        long started = System.nanoTime();
+        if (!viewer.hasRole(Role.ADMIN) && !viewer.hasRole(Role.DOCTOR)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admins and doctors can search patients");
+        }
+        List<String> prefixes = tokens(query);
+        if (prefixes.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "q must contain a letter or digit");
+        }
+        if (!ready) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Patient search is still loading");
+        }
+        int size = limit == null ? DEFAULT_LIMIT : Math.min(Math.max(limit, 1), MAX_LIMIT);
+
+        // keeps the first `size` matches by name; the head is the one to drop next
+        PriorityQueue<Doc> top = new PriorityQueue<>(size, BY_NAME.reversed());
+        Collection<Partition> scope = partitionOf(viewer.hospitalId());
+        Long doctorId = viewer.hasRole(Role.DOCTOR) ? viewer.id() : null;
+        for (Partition partition : scope) {
+            partition.lock.readLock().lock();
+            try {
+                partition.index.forEachMatch(prefixes, doc -> {
+                    if (doctorId != null && !doctorId.equals(doc.doctorId())) {
+                        return;
+                    }
+                    if (top.size() < size) {
+                        top.add(doc);
+                    } else if (BY_NAME.compare(doc, top.peek()) < 0) {
+                        top.poll();
+                        top.add(doc);
+                    }
+                });
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+
+        List<Doc> sorted = new ArrayList<>(top);
+        sorted.sort(BY_NAME);
+        long elapsed = System.nanoTime() - started;
+        searches.incrementAndGet();
+        searchNanos.addAndGet(elapsed);
+        maxSearchMicros.accumulateAndGet(elapsed / 1000, Math::max);
+        return sorted.stream()
+                .map(doc -> new PatientSearchHitDTO(doc.patientId(), doc.name(), doc.email(), doc.diagnosis(), doc.doctorId()))
+                .toList();
+    }
+
+    static List<String> tokens(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private Collection<Partition> partitionOf(Long hospitalId) {
+        Partition partition = hospitalId == null ? null : partitions.get(hospitalId);
+        return partition == null ? List.of() : List.of(partition);
+    }
+
+    private void reindexQuietly(List<Long> recordIds) {
+        try {
+            reindex(recordIds);
+        } catch (RuntimeException ex) {
+            // the change is committed; the entry catches up on the record's next save
+            log.warn("Could not re-index patient records {}", recordIds, ex);
+        }
+    }
+
+    private void reindex(Collection<Long> recordIds) {
+        Set<Long> ids = new TreeSet<>();
+        recordIds.stream().filter(Objects::nonNull).forEach(ids::add);
+        if (ids.isEmpty()) {
+            return;
+        }
+        readTransaction.executeWithoutResult(status -> {
+            Map<Long, List<String>> medicines = new HashMap<>();
+            for (PrescriptionRepository.NameView prescription : prescriptionRepository.findNamesByRecordIds(ids)) {
+                medicines.computeIfAbsent(prescription.getRecordId(), ignored -> new ArrayList<>()).add(prescription.getName());
+            }
+            for (PatientRecordRepository.SearchSourceView source : patientRecordRepository.findSearchSources(ids)) {
+                index(source, medicines.getOrDefault(source.getId(), List.of()));
+            }
+        });
+        reindexed.addAndGet(ids.size());
+    }
+
+    private void index(PatientRecordRepository.SearchSourceView source, List<String> medicineNames) {
+        JsonNode data = parse(source.getDataJson());
+        String name = text(data.path("name"));
+        String email = text(data.path("contact").path("email"));
+        String diagnosis = text(data.path("history").path("diagnosis"));
+
+        List<String> terms = new ArrayList<>();
+        terms.addAll(tokens(name));
+        terms.addAll(tokens(email));
+        terms.addAll(tokens(diagnosis));
+        for (JsonNode allergy : data.path("history").path("allergies")) {
+            // plain strings, or objects whose text fields are all searchable
+            if (allergy.isValueNode()) {
+                terms.addAll(tokens(allergy.asText()));
+            } else {
+                allergy.forEach(field -> terms.addAll(tokens(text(field))));
+            }
+        }
+        medicineNames.forEach(medicine -> terms.addAll(tokens(medicine)));
+
+        Doc doc = new Doc(source.getPatientId(), source.getDoctorId(),
+                name == null ? "" : name.toLowerCase(Locale.ROOT), name, email, diagnosis);
+        Long hospitalId = source.getHospitalId();
+        // Decided and applied under the record's map entry, so a re-read that lost a race with a later
+        // commit neither overwrites the newer entry nor moves the record back to its old hospital.
+        placements.compute(source.getId(), (recordId, current) -> {
+            if (current != null && current.version() != null && source.getUpdatedAt() != null
+                    && source.getUpdatedAt().isBefore(current.version())) {
+                return current;
+            }
+            if (current != null && current.hospitalId() != null && !current.hospitalId().equals(hospitalId)) {
+                Partition previous = partitions.get(current.hospitalId());
+                previous.lock.writeLock().lock();
+                try {
+                    previous.index.remove(recordId);
+                } finally {
+                    previous.lock.writeLock().unlock();
+                }
+            }
+            if (hospitalId != null) {
+                Partition partition = partitions.computeIfAbsent(hospitalId, ignored -> new Partition());
+                partition.lock.writeLock().lock();
+                try {
+                    partition.index.put(recordId, terms, doc);
+                } finally {
+                    partition.lock.writeLock().unlock();
+                }
+            }
+            return new Placement(hospitalId, source.getUpdatedAt());
+        });
+    }
+
+    private String text(JsonNode node) {
+        return node.isValueNode() && !node.isNull() ? node.asText() : null;
+    }
+
+    private JsonNode parse(String json) {
+        try {
+            return json == null ? objectMapper.createObjectNode() : objectMapper.readTree(json);
+        } catch (Exception ex) {
+            return objectMapper.createObjectNode();
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "patientSearch";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        int documents = 0;
+        int terms = 0;
+        for (Partition partition : partitions.values()) {
+            partition.lock.readLock().lock();
+            try {
+                documents += partition.index.size();
+                terms += partition.index.termCount();
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+        long count = searches.get();
+        metrics.put("ready", ready);
+        metrics.put("partitions", partitions.size());
+        metrics.put("documents", documents);
+        metrics.put("terms", terms);
+        metrics.put("buildMs", buildMs);
+        metrics.put("reindexed", reindexed.get());
+        metrics.put("searches", count);
+        metrics.put("avgSearchMicros", count == 0 ? 0 : searchNanos.get() / count / 1000);
+        metrics.put("maxSearchMicros", maxSearchMicros.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ompt.Ompt.security;
+
+import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.model.User;
+import lombok.AllArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+@Component
+@AllArgsConstructor
+public class CurrentAccountArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private final CurrentAccountProvider currentAccountProvider;
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        Class<?> type = parameter.getParameterType();
+        if (parameter.hasParameterAnnotation(CurrentUser.class)) {
+            return type == User.class || type == JwtPrincipal.class;
+        }
+        return parameter.hasParameterAnnotation(CurrentPharmacy.class) && type == Pharmacy.class;
+    }
+
+    @Override
+    public Object resolveArgument(
+            MethodParameter parameter,
+            ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest,
+            WebDataBinderFactory binderFactory
+    ) {
+        Class<?> type = parameter.getParameterType();
+        if (type == Pharmacy.class) {
+            return currentAccountProvider.pharmacy();
+        }
+        if (type == JwtPrincipal.class) {
+            return currentAccountProvider.principal();
+        }
+        return currentAccountProvider.user();
+    }
+}
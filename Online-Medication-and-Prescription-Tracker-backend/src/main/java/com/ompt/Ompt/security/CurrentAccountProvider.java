@@ -0,0 +1,82 @@
+package com.ompt.Ompt.security;
+
+import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.PharmacyRepository;
+import com.ompt.Ompt.repository.UserRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@Component
+@AllArgsConstructor
+public class CurrentAccountProvider {
+
+    private static final String USER_ATTRIBUTE = CurrentAccountProvider.class.getName() + ".user";
+    private static final String PHARMACY_ATTRIBUTE = CurrentAccountProvider.class.getName() + ".pharmacy";
+
+    private final UserRepository userRepository;
+    private final PharmacyRepository pharmacyRepository;
+
+    public JwtPrincipal principal() {
+        Authentication authentication = authentication();
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            return principal;
+        }
+        return JwtPrincipal.of(user());
+    }
+
+    public User user() {
+        return requestScoped(USER_ATTRIBUTE, User.class, () -> loadUser(authentication())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found")));
+    }
+
+    public Pharmacy pharmacy() {
+        return requestScoped(PHARMACY_ATTRIBUTE, Pharmacy.class, () -> loadPharmacy(authentication())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Pharmacy not found")));
+    }
+
+    private Optional<User> loadUser(Authentication authentication) {
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            return principal.isPharmacy() ? Optional.empty() : userRepository.findById(principal.id());
+        }
+        return userRepository.findByEmailIgnoreCase(authentication.getName());
+    }
+
+    private Optional<Pharmacy> loadPharmacy(Authentication authentication) {
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            return principal.isPharmacy() ? pharmacyRepository.findById(principal.pharmacyId()) : Optional.empty();
+        }
+        return pharmacyRepository.findByEmailIgnoreCase(authentication.getName());
+    }
+
+    private Authentication authentication() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Not authenticated");
+        }
+        return authentication;
+    }
+
+    private <T> T requestScoped(String attribute, Class<T> type, Supplier<T> loader) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return loader.get();
+        }
+        Object cached = attributes.getAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+        if (type.isInstance(cached)) {
+            return type.cast(cached);
+        }
+        T loaded = loader.get();
+        attributes.setAttribute(attribute, loaded, RequestAttributes.SCOPE_REQUEST);
+        return loaded;
+    }
+}
@@ -1,6 +1,7 @@
 package com.ompt.Ompt.security;
 
 import com.ompt.Ompt.Util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,6 +10,8 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.AllArgsConstructor;
 
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -19,6 +22,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @AllArgsConstructor
 @Component
@@ -26,6 +30,8 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserDetailsService userDetailsService;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    private final OperatorAccounts operatorAccounts;
 
     @Override
     protected void doFilterInternal(
@@ -38,7 +44,8 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
-            if (!jwtUtil.validateToken(token)) {
+            Claims claims = jwtUtil.verify(token);
+            if (claims == null) {
                 response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
                 return;
             }
@@ -46,16 +53,7 @@ public class JwtAuthFilter extends OncePerRequestFilter {
             if (SecurityContextHolder.getContext().getAuthentication() == null) {
 
                 try {
-                    String email = jwtUtil.extractEmail(token);
-
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(email);
-
-                    UsernamePasswordAuthenticationToken auth =
-                            new UsernamePasswordAuthenticationToken(
-                                    userDetails,
-                                    null,
-                                    userDetails.getAuthorities()
-                            );
+                    UsernamePasswordAuthenticationToken auth = authenticate(claims);
 
                     auth.setDetails(
                             new WebAuthenticationDetailsSource()
@@ -76,4 +74,25 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    private UsernamePasswordAuthenticationToken authenticate(Claims claims) {
+        JwtPrincipal principal = JwtPrincipal.fromClaims(claims);
+
+        if (principal != null) {
+            if (!tokenEpochRegistry.isCurrent(principal)) {
+                throw new UsernameNotFoundException("Token revoked");
+            }
+            List<GrantedAuthority> authorities = operatorAccounts.isOperator(principal)
+                    ? AuthorityUtils.createAuthorityList(principal.authority(), OperatorAccounts.AUTHORITY)
+                    : AuthorityUtils.createAuthorityList(principal.authority());
+            return new UsernamePasswordAuthenticationToken(principal, null, authorities);
+        }
+
+        UserDetails userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
+        return new UsernamePasswordAuthenticationToken(
+                userDetails,
+                null,
+                userDetails.getAuthorities()
+        );
+    }
 }
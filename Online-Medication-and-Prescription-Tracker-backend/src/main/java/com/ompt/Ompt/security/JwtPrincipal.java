@@ -0,0 +1,68 @@
+package com.ompt.Ompt.security;
+
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import io.jsonwebtoken.Claims;
+import org.springframework.security.core.AuthenticatedPrincipal;
+
+public record JwtPrincipal(
+        Long id,
+        String email,
+        String role,
+        Long hospitalId,
+        Long pharmacyId,
+        int tokenEpoch
+) implements AuthenticatedPrincipal {
+
+    public static final String PHARMACY_ROLE = "PHARMACY";
+
+    // Tokens issued before the identity claims were added return null and go through the user lookup.
+    public static JwtPrincipal fromClaims(Claims claims) {
+        Long id = claims.get("uid", Long.class);
+        Integer epoch = claims.get("tev", Integer.class);
+        String role = claims.get("role", String.class);
+        if (id == null || epoch == null || role == null || claims.getSubject() == null) {
+            return null;
+        }
+        if (role.startsWith("Role_")) {
+            role = role.substring("Role_".length());
+        }
+        return new JwtPrincipal(
+                id,
+                claims.getSubject(),
+                role,
+                claims.get("hospitalId", Long.class),
+                claims.get("pharmacyId", Long.class),
+                epoch
+        );
+    }
+
+    // Same identity for a token without the claims, taken from the user row instead.
+    public static JwtPrincipal of(User user) {
+        return new JwtPrincipal(
+                user.getId(),
+                user.getEmail(),
+                user.getRole().name(),
+                user.getHospital() != null ? user.getHospital().getId() : null,
+                null,
+                user.getTokenEpoch()
+        );
+    }
+
+    public boolean hasRole(Role expected) {
+        return expected.name().equals(role);
+    }
+
+    public boolean isPharmacy() {
+        return PHARMACY_ROLE.equals(role);
+    }
+
+    public String authority() {
+        return "ROLE_" + role;
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ompt.Ompt.security;
+
+import com.ompt.Ompt.model.Role;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Operators run the deployment rather than a hospital: ADMIN accounts listed in ops.operator-emails.
+// They alone reach /api/ops/**, which shows process-wide figures and runs maintenance that a
+// hospital's own admin must not trigger. Nobody is an operator unless the property names them.
+@Component
+public class OperatorAccounts {
+
+    public static final String AUTHORITY = "ROLE_OPERATOR";
+
+    private final Set<String> emails;
+
+    public OperatorAccounts(@Value("${ops.operator-emails:}") Set<String> emails) {
+        this.emails = emails.stream()
+                .map(email -> email.trim().toLowerCase())
+                .filter(email -> !email.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean isOperator(JwtPrincipal principal) {
+        return principal.hasRole(Role.ADMIN) && emails.contains(principal.email().toLowerCase());
+    }
+}
@@ -0,0 +1,158 @@
+package com.ompt.Ompt.security;
+
+import com.ompt.Ompt.model.AccountStatus;
+import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.PharmacyRepository;
+import com.ompt.Ompt.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Epochs of the accounts that presented a token recently. Revocations on this node land through
+// revokeTokens; the periodic refresh re-reads only the cached accounts (changes made elsewhere,
+// deleted accounts) and forgets those idle for longer than jwt.epoch.idle-ms.
+@Component
+public class TokenEpochRegistry {
+
+    private record EpochState(int epoch, boolean active) {
+    }
+
+    private static final EpochState UNKNOWN = new EpochState(-1, false);
+    private static final int REFRESH_CHUNK = 500;
+
+    private final UserRepository userRepository;
+    private final PharmacyRepository pharmacyRepository;
+    private final long idleMs;
+
+    private final EpochCache userEpochs = new EpochCache();
+    private final EpochCache pharmacyEpochs = new EpochCache();
+
+    public TokenEpochRegistry(
+            UserRepository userRepository,
+            PharmacyRepository pharmacyRepository,
+            @Value("${jwt.epoch.idle-ms:600000}") long idleMs
+    ) {
+        this.userRepository = userRepository;
+        this.pharmacyRepository = pharmacyRepository;
+        this.idleMs = idleMs;
+    }
+
+    public boolean isCurrent(JwtPrincipal principal) {
+        EpochState state = principal.isPharmacy()
+                ? pharmacyEpochs.get(principal.id(), this::loadPharmacy)
+                : userEpochs.get(principal.id(), this::loadUser);
+        return state.active() && state.epoch() == principal.tokenEpoch();
+    }
+
+    // Invalidates every token issued so far for the account. Call inside the transaction that
+    // persists the entity: this node only starts rejecting the old tokens once it commits, so a
+    // rollback leaves them valid.
+    public void revokeTokens(User user) {
+        user.setTokenEpoch(user.getTokenEpoch() + 1);
+        if (user.getId() != null) {
+            EpochState state = new EpochState(user.getTokenEpoch(), user.getStatus() == AccountStatus.ACTIVE);
+            afterCommit(() -> userEpochs.revoked(user.getId(), state));
+        }
+    }
+
+    public void revokeTokens(Pharmacy pharmacy) {
+        pharmacy.setTokenEpoch(pharmacy.getTokenEpoch() + 1);
+        EpochState state = new EpochState(pharmacy.getTokenEpoch(), true);
+        afterCommit(() -> pharmacyEpochs.revoked(pharmacy.getId(), state));
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.epoch.refresh-ms:30000}")
+    public void refresh() {
+        long idleSince = System.currentTimeMillis() - idleMs;
+        userEpochs.refresh(idleSince, ids -> userRepository.findTokenEpochsByIdIn(ids).stream()
+                .collect(Collectors.toMap(UserRepository.TokenEpochView::getId,
+                        view -> new EpochState(view.getTokenEpoch(), view.getStatus() == AccountStatus.ACTIVE))));
+        pharmacyEpochs.refresh(idleSince, ids -> pharmacyRepository.findTokenEpochsByIdIn(ids).stream()
+                .collect(Collectors.toMap(PharmacyRepository.TokenEpochView::getId,
+                        view -> new EpochState(view.getTokenEpoch(), true))));
+    }
+
+    private static EpochState newer(EpochState local, EpochState other) {
+        return local.epoch() > other.epoch() ? local : other;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class EpochCache {
+        private final Map<Long, EpochState> states = new ConcurrentHashMap<>();
+        private final Map<Long, Long> lastSeen = new ConcurrentHashMap<>();
+
+        private EpochState get(Long id, Function<Long, EpochState> loader) {
+            lastSeen.put(id, System.currentTimeMillis());
+            return states.computeIfAbsent(id, loader);
+        }
+
+        // Epochs only grow; a refresh that read the row just before a revocation committed must not undo it.
+        private void revoked(Long id, EpochState state) {
+            states.merge(id, state, TokenEpochRegistry::newer);
+        }
+
+        private void refresh(long idleSince, Function<Collection<Long>, Map<Long, EpochState>> loader) {
+            List<Long> held = new ArrayList<>();
+            for (Long id : states.keySet()) {
+                Long seen = lastSeen.get(id);
+                if (seen == null || seen < idleSince) {
+                    // conditional, so a request that just used the entry keeps it
+                    if (seen == null || lastSeen.remove(id, seen)) {
+                        states.remove(id);
+                    }
+                } else {
+                    held.add(id);
+                }
+            }
+            for (int start = 0; start < held.size(); start += REFRESH_CHUNK) {
+                List<Long> ids = held.subList(start, Math.min(start + REFRESH_CHUNK, held.size()));
+                Map<Long, EpochState> fromDb = loader.apply(ids);
+                for (Long id : ids) {
+                    EpochState state = fromDb.get(id);
+                    if (state == null) {
+                        // deleted; a later token for it loads UNKNOWN
+                        states.remove(id);
+                        lastSeen.remove(id);
+                    } else {
+                        states.merge(id, state, TokenEpochRegistry::newer);
+                    }
+                }
+            }
+        }
+    }
+
+    private EpochState loadUser(Long id) {
+        return userRepository.findTokenEpochById(id)
+                .map(view -> new EpochState(view.getTokenEpoch(), view.getStatus() == AccountStatus.ACTIVE))
+                .orElse(UNKNOWN);
+    }
+
+    private EpochState loadPharmacy(Long id) {
+        return pharmacyRepository.findTokenEpochById(id)
+                .map(view -> new EpochState(view.getTokenEpoch(), true))
+                .orElse(UNKNOWN);
+    }
+}
@@ -0,0 +1,461 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.DTO.AdherenceCountsDTO;
+import com.ompt.Ompt.DTO.AdherenceStatsDTO;
+import com.ompt.Ompt.model.AdherenceBucket;
+import com.ompt.Ompt.model.AdherenceCounter;
+import com.ompt.Ompt.model.AdherenceScope;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.repository.AdherenceCounterRepository;
+import com.ompt.Ompt.repository.DoseHistoryRepository;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import com.ompt.Ompt.repository.HospitalRepository;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import com.ompt.Ompt.repository.UserRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Dose outcome counters kept up to date by the write paths, so adherence reads are a handful of
+// row lookups. TOTAL counts the current status of every slot; DAY and WEEK count outcomes by the
+// date they were recorded, and a correction moves the outcome out of its original bucket.
+@Service
+@AllArgsConstructor
+public class AdherenceService {
+
+    private static final LocalDate TOTAL_START = LocalDate.EPOCH;
+    private static final int MAX_BUCKETS = 366;
+    private static final int BATCH_THRESHOLD = 16;
+    private static final String INSERT_COUNTER = "insert into adherence_counters " +
+            "(scope, scope_id, bucket, bucket_start, on_time, late, missed, pending) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // Whose counters a patient's doses roll up into; doctorId and hospitalId may be null.
+    public record Owner(Long patientId, Long doctorId, Long hospitalId) {
+    }
+
+    private record Delta(long onTime, long late, long missed, long pending) {
+
+        static final Delta ZERO = new Delta(0, 0, 0, 0);
+
+        static Delta of(String status, long count) {
+            if (status == null) {
+                return ZERO;
+            }
+            return switch (status.toLowerCase()) {
+                case "on_time", "taken" -> new Delta(count, 0, 0, 0);
+                case "late" -> new Delta(0, count, 0, 0);
+                case "missed" -> new Delta(0, 0, count, 0);
+                case "pending" -> new Delta(0, 0, 0, count);
+                default -> ZERO;
+            };
+        }
+
+        Delta plus(Delta other) {
+            return new Delta(onTime + other.onTime, late + other.late, missed + other.missed, pending + other.pending);
+        }
+
+        Delta negate() {
+            return new Delta(-onTime, -late, -missed, -pending);
+        }
+
+        Delta outcomesOnly() {
+            return new Delta(onTime, late, missed, 0);
+        }
+
+        boolean isZero() {
+            return onTime == 0 && late == 0 && missed == 0 && pending == 0;
+        }
+    }
+
+    private record Key(AdherenceScope scope, Long scopeId, AdherenceBucket bucket, LocalDate start) {
+    }
+
+    // Counters are always locked in this order, so concurrent writers cannot deadlock each other.
+    private static final Comparator<Key> LOCK_ORDER = Comparator
+            .comparing(Key::scope)
+            .thenComparing(Key::scopeId)
+            .thenComparing(Key::bucket)
+            .thenComparing(Key::start);
+
+    private final AdherenceCounterRepository counterRepository;
+    private final DoseSlotRepository doseSlotRepository;
+    private final DoseHistoryRepository doseHistoryRepository;
+    private final PatientRecordRepository patientRecordRepository;
+    private final HospitalRepository hospitalRepository;
+    private final UserRepository userRepository;
+    private final MedicationEventCompactor compactor;
+    private final JdbcTemplate jdbcTemplate;
+
+    // count slots of the owner moved from previousStatus (recorded at previousAt, or never recorded
+    // when null) to status.
+    public record StatusChange(Owner owner, String previousStatus, LocalDateTime previousAt,
+                               String status, LocalDateTime recordedAt, long count) {
+
+        public StatusChange(Owner owner, String previousStatus, LocalDateTime previousAt,
+                            String status, LocalDateTime recordedAt) {
+            this(owner, previousStatus, previousAt, status, recordedAt, 1);
+        }
+    }
+
+    public void recordStatusChange(Owner owner, String previousStatus, LocalDateTime previousAt,
+                                   String status, LocalDateTime recordedAt) {
+        recordStatusChanges(List.of(new StatusChange(owner, previousStatus, previousAt, status, recordedAt)));
+    }
+
+    // Applies all changes as one set of increments, locking each counter once.
+    public void recordStatusChanges(Collection<StatusChange> changes) {
+        Map<Key, Delta> deltas = new TreeMap<>(LOCK_ORDER);
+        for (StatusChange change : changes) {
+            Delta removed = Delta.of(change.previousStatus(), change.count()).negate();
+            Delta added = Delta.of(change.status(), change.count());
+            addTotals(deltas, change.owner(), removed.plus(added));
+            if (change.previousAt() != null) {
+                addBuckets(deltas, change.owner(), change.previousAt().toLocalDate(), removed.outcomesOnly());
+            }
+            addBuckets(deltas, change.owner(), change.recordedAt().toLocalDate(), added.outcomesOnly());
+        }
+        apply(deltas);
+    }
+
+    // New slots (an assigned or imported prescription) with their initial statuses.
+    public void recordSlotsAdded(Owner owner, Collection<String> statuses) {
+        Delta delta = Delta.ZERO;
+        for (String status : statuses) {
+            delta = delta.plus(Delta.of(status, 1));
+        }
+        Map<Key, Delta> deltas = new TreeMap<>(LOCK_ORDER);
+        addTotals(deltas, owner, delta);
+        apply(deltas);
+    }
+
+    // Moves the patient's totals and time buckets from one doctor's rollup to another's. The
+    // patient's rows stay locked until commit, so a dose recorded meanwhile waits and then lands on
+    // the new doctor instead of being moved twice or not at all.
+    public void recordDoctorChange(Long patientId, Long previousDoctorId, Long doctorId) {
+        if (patientId == null || Objects.equals(previousDoctorId, doctorId)) {
+            return;
+        }
+        Map<Key, Delta> deltas = new TreeMap<>(LOCK_ORDER);
+        for (AdherenceBucket bucket : AdherenceBucket.values()) {
+            for (AdherenceCounter counter : counterRepository.lockBucket(AdherenceScope.PATIENT, patientId, bucket)) {
+                Delta moved = toDelta(counter);
+                add(deltas, new Key(AdherenceScope.DOCTOR, previousDoctorId, bucket, counter.getBucketStart()), moved.negate());
+                add(deltas, new Key(AdherenceScope.DOCTOR, doctorId, bucket, counter.getBucketStart()), moved);
+            }
+        }
+        apply(deltas);
+    }
+
+    public boolean hasTotals() {
+        return counterRepository.existsByBucket(AdherenceBucket.TOTAL);
+    }
+
+    // Recomputes every TOTAL counter from the dose slot and dose history rows. Time buckets are left
+    // alone: the rows do not say when an outcome was recorded.
+    @Transactional
+    public int rebuildTotals() {
+        counterRepository.deleteByBucket(AdherenceBucket.TOTAL);
+        List<DoseSlotRepository.StatusCountView> rows = new ArrayList<>(doseSlotRepository.countStatusesByPatient());
+        rows.addAll(doseHistoryRepository.countStatusesByPatient());
+        return saveTotals(rows);
+    }
+
+    // The same for one hospital, its doctors and its patients, while the application runs. The
+    // hospital's records are locked first, as the dose jobs lock them, and their pending events
+    // folded in; a status recorded meanwhile waits for the rebuild instead of being counted twice
+    // or lost.
+    @Transactional
+    public int rebuildHospitalTotals(Long hospitalId) {
+        if (!hospitalRepository.existsById(hospitalId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Hospital not found");
+        }
+        List<Long> recordIds = patientRecordRepository.findVersionsByHospitalId(hospitalId).stream()
+                .map(PatientRecordRepository.VersionView::getId)
+                .toList();
+        if (!recordIds.isEmpty()) {
+            patientRecordRepository.touchAll(recordIds, LocalDateTime.now());
+            compactor.compactRecords(recordIds);
+        }
+        counterRepository.deleteByBucketAndScopeIds(AdherenceBucket.TOTAL, AdherenceScope.HOSPITAL, List.of(hospitalId));
+        counterRepository.deleteByBucketAndScopeIds(AdherenceBucket.TOTAL, AdherenceScope.DOCTOR,
+                userRepository.findIdsByHospitalIdAndRole(hospitalId, Role.DOCTOR));
+        counterRepository.deleteByBucketAndScopeIds(AdherenceBucket.TOTAL, AdherenceScope.PATIENT,
+                userRepository.findIdsByHospitalIdAndRole(hospitalId, Role.PATIENT));
+
+        List<DoseSlotRepository.StatusCountView> rows = new ArrayList<>(doseSlotRepository.countStatusesByHospital(hospitalId));
+        rows.addAll(doseHistoryRepository.countStatusesByHospital(hospitalId));
+        return saveTotals(rows);
+    }
+
+    private int saveTotals(List<DoseSlotRepository.StatusCountView> rows) {
+        Map<Key, Delta> totals = new HashMap<>();
+        for (DoseSlotRepository.StatusCountView row : rows) {
+            Owner owner = new Owner(row.getPatientId(), row.getDoctorId(), row.getHospitalId());
+            addTotals(totals, owner, Delta.of(row.getStatus(), row.getSlots()));
+        }
+        List<AdherenceCounter> counters = new ArrayList<>();
+        totals.forEach((key, delta) -> counters.add(newCounter(key, delta)));
+        counterRepository.saveAll(counters);
+        return counters.size();
+    }
+
+    @Transactional(readOnly = true)
+    public AdherenceStatsDTO stats(AdherenceScope scope, Long scopeId, String bucketName, LocalDate from, LocalDate to) {
+        AdherenceBucket bucket = parseBucket(bucketName);
+        LocalDate last = align(bucket, to == null ? LocalDate.now() : to);
+        LocalDate first = align(bucket, from == null ? defaultFrom(bucket, last) : from);
+        if (first.isAfter(last)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+        }
+        if (step(bucket, first, MAX_BUCKETS - 1).isBefore(last)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_BUCKETS + " buckets per request");
+        }
+
+        AdherenceCountsDTO totals = counterRepository
+                .findByScopeAndScopeIdAndBucketAndBucketStart(scope, scopeId, AdherenceBucket.TOTAL, TOTAL_START)
+                .map(counter -> toDto(null, toDelta(counter)))
+                .orElse(toDto(null, Delta.ZERO));
+
+        Map<LocalDate, Delta> recorded = new HashMap<>();
+        for (AdherenceCounter counter : counterRepository
+                .findByScopeAndScopeIdAndBucketAndBucketStartBetweenOrderByBucketStartAsc(scope, scopeId, bucket, first, last)) {
+            recorded.put(counter.getBucketStart(), toDelta(counter));
+        }
+        List<AdherenceCountsDTO> buckets = new ArrayList<>();
+        for (LocalDate start = first; !start.isAfter(last); start = step(bucket, start, 1)) {
+            buckets.add(toDto(start, recorded.getOrDefault(start, Delta.ZERO)));
+        }
+        return new AdherenceStatsDTO(scope.name(), scopeId, bucket.name(), totals, buckets);
+    }
+
+    private void addTotals(Map<Key, Delta> deltas, Owner owner, Delta delta) {
+        add(deltas, new Key(AdherenceScope.PATIENT, owner.patientId(), AdherenceBucket.TOTAL, TOTAL_START), delta);
+        add(deltas, new Key(AdherenceScope.DOCTOR, owner.doctorId(), AdherenceBucket.TOTAL, TOTAL_START), delta);
+        add(deltas, new Key(AdherenceScope.HOSPITAL, owner.hospitalId(), AdherenceBucket.TOTAL, TOTAL_START), delta);
+    }
+
+    private void addBuckets(Map<Key, Delta> deltas, Owner owner, LocalDate date, Delta delta) {
+        for (AdherenceBucket bucket : List.of(AdherenceBucket.DAY, AdherenceBucket.WEEK)) {
+            LocalDate start = align(bucket, date);
+            add(deltas, new Key(AdherenceScope.PATIENT, owner.patientId(), bucket, start), delta);
+            add(deltas, new Key(AdherenceScope.DOCTOR, owner.doctorId(), bucket, start), delta);
+            add(deltas, new Key(AdherenceScope.HOSPITAL, owner.hospitalId(), bucket, start), delta);
+        }
+    }
+
+    private void add(Map<Key, Delta> deltas, Key key, Delta delta) {
+        if (key.scopeId() != null && !delta.isZero()) {
+            deltas.merge(key, delta, Delta::plus);
+        }
+    }
+
+    private void apply(Map<Key, Delta> deltas) {
+        Map<Key, Delta> remaining = deltas;
+        if (deltas.size() > BATCH_THRESHOLD) {
+            Map<Key, Delta> patients = new TreeMap<>(LOCK_ORDER);
+            deltas.forEach((key, delta) -> {
+                if (key.scope() == AdherenceScope.PATIENT) {
+                    patients.put(key, delta);
+                }
+            });
+            Set<Key> created = createMissing(patients);
+            remaining = incrementPatientGroups(deltas, created);
+            remaining.keySet().removeAll(createMissing(remaining));
+        }
+        remaining.forEach((key, delta) -> {
+            if (!delta.isZero() && increment(key, delta) == 0 && insertIfAbsent(Map.of(key, delta)).isEmpty()) {
+                increment(key, delta);
+            }
+        });
+    }
+
+    private int increment(Key key, Delta delta) {
+        return counterRepository.increment(key.scope(), key.scopeId(), key.bucket(), key.start(),
+                delta.onTime(), delta.late(), delta.missed(), delta.pending());
+    }
+
+    // Inserts the rows with their deltas on the caller's own connection behind a savepoint, as one
+    // batch. If another writer created one of them first, the batch is rolled back and the rows go in
+    // one by one, each behind its own savepoint, skipping the ones that exist; the caller's
+    // transaction never fails. Returns the keys inserted, which need no increment.
+    private Set<Key> insertIfAbsent(Map<Key, Delta> rows) {
+        if (rows.isEmpty()) {
+            return Set.of();
+        }
+        return jdbcTemplate.execute((ConnectionCallback<Set<Key>>) connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_COUNTER)) {
+                Savepoint batch = connection.setSavepoint();
+                try {
+                    for (Map.Entry<Key, Delta> row : rows.entrySet()) {
+                        bind(insert, row.getKey(), row.getValue());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                    connection.releaseSavepoint(batch);
+                    return rows.keySet();
+                } catch (SQLException ex) {
+                    connection.rollback(batch);
+                    insert.clearBatch();
+                }
+                Set<Key> inserted = new HashSet<>();
+                for (Map.Entry<Key, Delta> row : rows.entrySet()) {
+                    bind(insert, row.getKey(), row.getValue());
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        insert.executeUpdate();
+                        connection.releaseSavepoint(savepoint);
+                        inserted.add(row.getKey());
+                    } catch (SQLException ex) {
+                        connection.rollback(savepoint);
+                        if (!UNIQUE_VIOLATION.equals(ex.getSQLState())) {
+                            throw ex;
+                        }
+                    }
+                }
+                return inserted;
+            }
+        });
+    }
+
+    private static void bind(PreparedStatement insert, Key key, Delta delta) throws SQLException {
+        insert.setString(1, key.scope().name());
+        insert.setLong(2, key.scopeId());
+        insert.setString(3, key.bucket().name());
+        insert.setObject(4, key.start());
+        insert.setLong(5, delta.onTime());
+        insert.setLong(6, delta.late());
+        insert.setLong(7, delta.missed());
+        insert.setLong(8, delta.pending());
+    }
+
+    // A patient's counters are only shared with that patient's own writes, so patients receiving the
+    // same increment are updated by one statement. Groups run in (bucket, start) order, which keeps
+    // each patient's rows in LOCK_ORDER, and all before the doctor and hospital rows. Returns the
+    // deltas still to apply one by one.
+    private Map<Key, Delta> incrementPatientGroups(Map<Key, Delta> deltas, Set<Key> created) {
+        Map<Key, Delta> remaining = new TreeMap<>(LOCK_ORDER);
+        Map<Key, Map<Delta, List<Long>>> groups = new TreeMap<>(
+                Comparator.comparing(Key::bucket).thenComparing(Key::start));
+        deltas.forEach((key, delta) -> {
+            if (key.scope() != AdherenceScope.PATIENT) {
+                remaining.put(key, delta);
+            } else if (!delta.isZero() && !created.contains(key)) {
+                groups.computeIfAbsent(new Key(key.scope(), null, key.bucket(), key.start()), group -> new HashMap<>())
+                        .computeIfAbsent(delta, same -> new ArrayList<>())
+                        .add(key.scopeId());
+            }
+        });
+        groups.forEach((group, byDelta) -> byDelta.forEach((delta, scopeIds) -> {
+            LongSummaryStatistics ids = scopeIds.stream().mapToLong(Long::longValue).summaryStatistics();
+            int updated = counterRepository.incrementAll(group.scope(), group.bucket(), group.start(),
+                    ids.getMin(), ids.getMax(), scopeIds,
+                    delta.onTime(), delta.late(), delta.missed(), delta.pending());
+            if (updated != scopeIds.size()) {
+                // only a concurrent rebuild removes counters; roll back rather than lose increments
+                throw new IllegalStateException("Adherence counters changed during a batch update");
+            }
+        }));
+        return remaining;
+    }
+
+    // Batch writers touch many counters that do not exist yet (each patient's first outcome of the
+    // day); finding them with one range query per group and inserting them with their deltas saves
+    // an UPDATE per row. Patient rows are created before any are incremented and the doctor and
+    // hospital rows after, so the inserts keep LOCK_ORDER as well. Returns the keys created.
+    private Set<Key> createMissing(Map<Key, Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return Set.of();
+        }
+        Map<Key, List<Key>> groups = new HashMap<>();
+        for (Key key : deltas.keySet()) {
+            groups.computeIfAbsent(new Key(key.scope(), null, key.bucket(), key.start()), group -> new ArrayList<>()).add(key);
+        }
+        Set<Key> existing = new HashSet<>();
+        groups.forEach((group, members) -> {
+            LongSummaryStatistics ids = members.stream().mapToLong(Key::scopeId).summaryStatistics();
+            for (Long scopeId : counterRepository.findScopeIdsBetween(
+                    group.scope(), group.bucket(), group.start(), ids.getMin(), ids.getMax())) {
+                existing.add(new Key(group.scope(), scopeId, group.bucket(), group.start()));
+            }
+        });
+        Map<Key, Delta> missing = new TreeMap<>(LOCK_ORDER);
+        deltas.forEach((key, delta) -> {
+            if (!existing.contains(key)) {
+                missing.put(key, delta);
+            }
+        });
+        return insertIfAbsent(missing);
+    }
+
+    private AdherenceCounter newCounter(Key key, Delta delta) {
+        AdherenceCounter counter = new AdherenceCounter();
+        counter.setScope(key.scope());
+        counter.setScopeId(key.scopeId());
+        counter.setBucket(key.bucket());
+        counter.setBucketStart(key.start());
+        counter.setOnTime(delta.onTime());
+        counter.setLate(delta.late());
+        counter.setMissed(delta.missed());
+        counter.setPending(delta.pending());
+        return counter;
+    }
+
+    private Delta toDelta(AdherenceCounter counter) {
+        return new Delta(counter.getOnTime(), counter.getLate(), counter.getMissed(), counter.getPending());
+    }
+
+    private AdherenceCountsDTO toDto(LocalDate start, Delta delta) {
+        long taken = delta.onTime() + delta.late();
+        long recorded = taken + delta.missed();
+        Double rate = recorded == 0 ? null : Math.round(taken * 1000.0 / recorded) / 1000.0;
+        return new AdherenceCountsDTO(start, delta.onTime(), delta.late(), delta.missed(), delta.pending(), taken, rate);
+    }
+
+    private AdherenceBucket parseBucket(String bucket) {
+        if (bucket == null || bucket.equalsIgnoreCase("day")) {
+            return AdherenceBucket.DAY;
+        }
+        if (bucket.equalsIgnoreCase("week")) {
+            return AdherenceBucket.WEEK;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "bucket must be day or week");
+    }
+
+    private LocalDate align(AdherenceBucket bucket, LocalDate date) {
+        return bucket == AdherenceBucket.WEEK ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : date;
+    }
+
+    private LocalDate defaultFrom(AdherenceBucket bucket, LocalDate last) {
+        return bucket == AdherenceBucket.WEEK ? last.minusWeeks(7) : last.minusDays(6);
+    }
+
+    private LocalDate step(AdherenceBucket bucket, LocalDate start, int count) {
+        return start.plus(count, bucket == AdherenceBucket.WEEK ? ChronoUnit.WEEKS : ChronoUnit.DAYS);
+    }
+}
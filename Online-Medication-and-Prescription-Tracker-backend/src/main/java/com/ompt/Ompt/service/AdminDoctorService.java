@@ -8,12 +8,10 @@ import com.ompt.Ompt.model.User;
 import com.ompt.Ompt.repository.UserRepository;
 import com.ompt.Ompt.service.DoctorProfileService;
 import lombok.AllArgsConstructor;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
-import java.util.UUID;
+import java.time.Duration;
 
 @Service
 @AllArgsConstructor
@@ -21,17 +19,14 @@ public class AdminDoctorService {
 
     private final UserRepository userRepository;
     private final EmailService emailService;
-    private final PasswordEncoder passwordEncoder;
+    private final ResetTokenService resetTokenService;
     private final DoctorProfileService doctorProfileService;
+
+    @Transactional
     public DoctorResponseDTO registerDoctor(
             DoctorRegisterRequestDTO request,
-            Authentication authentication
+            User admin
     ) {
-
-        User admin = userRepository
-                .findByEmailIgnoreCase(authentication.getName())
-                .orElseThrow(() -> new IllegalStateException("Admin not found"));
-
         User doctor = registerDoctorForAdmin(admin, request);
         return new DoctorResponseDTO(
                 doctor.getId(),
@@ -42,6 +37,7 @@ public class AdminDoctorService {
         );
     }
 
+    @Transactional
     public User registerDoctorForAdmin(User admin, DoctorRegisterRequestDTO request) {
         if (admin.getRole() != Role.ADMIN) {
             throw new IllegalStateException("Only admin can register doctors");
@@ -58,9 +54,7 @@ public class AdminDoctorService {
         doctor.setRole(Role.DOCTOR);
         doctor.setHospital(admin.getHospital());
 
-        String token = UUID.randomUUID().toString();
-        doctor.setResetTokenHash(passwordEncoder.encode(token));
-        doctor.setResetTokenExpiry(LocalDateTime.now().plusHours(24));
+        String token = resetTokenService.issue(doctor, Duration.ofHours(24));
 
         userRepository.save(doctor);
         doctorProfileService.getOrCreateProfile(doctor);
@@ -5,12 +5,14 @@ import com.ompt.Ompt.model.AccountStatus;
 import com.ompt.Ompt.model.Hospital;
 import com.ompt.Ompt.model.Role;
 import com.ompt.Ompt.repository.HospitalRepository;
+import com.ompt.Ompt.security.TokenEpochRegistry;
 import com.ompt.Ompt.service.DoctorProfileService;
 import com.ompt.Ompt.service.PatientRecordService;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.ompt.Ompt.model.User;
 import com.ompt.Ompt.repository.UserRepository;
@@ -18,9 +20,7 @@ import com.ompt.Ompt.repository.UserRepository;
 import lombok.*;
 
 import java.time.LocalDateTime;
-import java.security.SecureRandom;
-import java.util.List;
-import java.util.UUID;
+import java.time.Duration;
 
 
 @Service
@@ -34,6 +34,8 @@ public class AuthService {
     private final HospitalRepository hospitalRepository;
     private final PatientRecordService patientRecordService;
     private final DoctorProfileService doctorProfileService;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    private final ResetTokenService resetTokenService;
 
     
 
@@ -99,33 +101,22 @@ public class AuthService {
         return user;
     }
 
+    @Transactional
     public void forgotPassword(String email){
         userrepo.findByEmailIgnoreCase(email).ifPresent(user -> {
-            String code = String.format("%06d", new SecureRandom().nextInt(1_000_000));
-            user.setResetTokenHash(passwordEncoder.encode(code));
-            user.setResetTokenExpiry(LocalDateTime.now().plusMinutes(15));
+            String code = resetTokenService.issueCode(user, Duration.ofMinutes(15));
             userrepo.save(user);
             emailService.sendResetPasswordEmail(user.getEmail(), code);
         });
     }
 
+    @Transactional
     public void resetPassword(String token, String newPassword) {
-        List<User> users=userrepo.findByResetTokenHashIsNotNullAndResetTokenExpiryAfter(LocalDateTime.now());
+        User user = resetTokenService.resolve(token);
 
-        User user=users
-                .stream()
-                .filter(u->passwordEncoder.matches(token,u.getResetTokenHash()))
-                .findFirst()
-                .orElseThrow(()->
-                        new IllegalStateException("Invalid or Expired Token")
-                );
-
-        if(!passwordEncoder.matches(token,user.getResetTokenHash())){
-            throw new IllegalStateException("Invalid or expired token");
-        }
         user.setPassword(passwordEncoder.encode(newPassword));
-        user.setResetTokenHash(null);
-        user.setResetTokenExpiry(null);
+        tokenEpochRegistry.revokeTokens(user);
+        resetTokenService.clear(user);
         userrepo.save(user);
     }
 
@@ -146,6 +137,7 @@ public class AuthService {
         }
     }
 
+    @Transactional
     public void resetPasswordWithCode(String email, String code, String newPassword) {
         User user = userrepo.findByEmailIgnoreCase(email)
                 .orElseThrow(() -> new IllegalStateException("Invalid or Expired Token"));
@@ -163,27 +155,20 @@ public class AuthService {
         }
 
         user.setPassword(passwordEncoder.encode(newPassword));
-        user.setResetTokenHash(null);
-        user.setResetTokenExpiry(null);
+        tokenEpochRegistry.revokeTokens(user);
+        resetTokenService.clear(user);
         userrepo.save(user);
     }
+    @Transactional
     public void setPassword(String token, String newPassword) {
 
-        List<User> users = userrepo
-                .findByResetTokenHashIsNotNullAndResetTokenExpiryAfter(LocalDateTime.now());
-
-        User user = users.stream()
-                .filter(u->passwordEncoder.matches(token,u.getResetTokenHash()))
-                .findFirst()
-                .orElseThrow(()->
-                        new IllegalStateException("Invalid or Expired Token")
-                );
+        User user = resetTokenService.resolve(token);
 
         user.setPassword(passwordEncoder.encode(newPassword));
         user.setStatus(AccountStatus.ACTIVE);
+        tokenEpochRegistry.revokeTokens(user);
 
-        user.setResetTokenHash(null);
-        user.setResetTokenExpiry(null);
+        resetTokenService.clear(user);
 
         userrepo.save(user);
     }
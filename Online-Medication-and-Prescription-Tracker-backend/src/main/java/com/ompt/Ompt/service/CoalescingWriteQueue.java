@@ -0,0 +1,181 @@
+package com.ompt.Ompt.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serialises writes per key and coalesces the ones that pile up meanwhile. Keys hash onto a fixed
+// set of stripes. A submitting thread queues its mutation and, under its stripe's lock, claims
+// everything queued on the stripe for keys no other thread is writing; the writes themselves run
+// with the lock released, one writer call per key, so a slow write holds up only its own key.
+// Mutations that arrive while their key is being written wait and go out together in the next
+// call. Threads whose mutation was applied meanwhile return straight away.
+final class CoalescingWriteQueue<K, M, R> {
+
+    interface BatchWriter<K, M, R> {
+        // Applies the mutations in order and returns one outcome per mutation.
+        List<Outcome<R>> write(K key, List<M> mutations);
+    }
+
+    record Outcome<R>(R value, RuntimeException error) {
+        static <R> Outcome<R> of(R value) {
+            return new Outcome<>(value, null);
+        }
+
+        static <R> Outcome<R> failed(RuntimeException error) {
+            return new Outcome<>(null, error);
+        }
+    }
+
+    private static final class Pending<K, M, R> {
+        private final K key;
+        private final M mutation;
+        // set by the claiming thread before it retakes the stripe lock; read under the lock
+        private Outcome<R> outcome;
+
+        private Pending(K key, M mutation) {
+            this.key = key;
+            this.mutation = mutation;
+        }
+    }
+
+    private static final class Stripe<K, M, R> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition written = lock.newCondition();
+        // both guarded by lock
+        private final Deque<Pending<K, M, R>> queue = new ArrayDeque<>();
+        private final Set<K> writing = new HashSet<>();
+    }
+
+    private final List<Stripe<K, M, R>> stripes;
+    private final int maxBatch;
+    private final BatchWriter<K, M, R> writer;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong mutations = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    CoalescingWriteQueue(int stripeCount, int maxBatch, BatchWriter<K, M, R> writer) {
+        if (stripeCount < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("stripeCount and maxBatch must be positive");
+        }
+        this.stripes = new ArrayList<>(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.add(new Stripe<>());
+        }
+        this.maxBatch = maxBatch;
+        this.writer = writer;
+    }
+
+    // Blocks until the mutation is written, then returns its result or rethrows its failure.
+    R submit(K key, M mutation) {
+        Stripe<K, M, R> stripe = stripes.get(Math.floorMod(key.hashCode(), stripes.size()));
+        Pending<K, M, R> pending = new Pending<>(key, mutation);
+        maxQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+
+        Outcome<R> outcome;
+        stripe.lock.lock();
+        try {
+            stripe.queue.add(pending);
+            while (pending.outcome == null) {
+                Map<K, List<Pending<K, M, R>>> claimed = claim(stripe);
+                if (claimed.isEmpty()) {
+                    // every queued key, this one included, is being written by another thread
+                    stripe.written.awaitUninterruptibly();
+                    continue;
+                }
+                stripe.lock.unlock();
+                try {
+                    claimed.forEach(this::write);
+                } finally {
+                    stripe.lock.lock();
+                    finish(stripe, claimed);
+                }
+            }
+            outcome = pending.outcome;
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (outcome.error() != null) {
+            throw outcome.error();
+        }
+        return outcome.value();
+    }
+
+    // Takes up to maxBatch queued mutations, in order, of keys nobody is writing yet. Call under the lock.
+    private Map<K, List<Pending<K, M, R>>> claim(Stripe<K, M, R> stripe) {
+        Map<K, List<Pending<K, M, R>>> claimed = new LinkedHashMap<>();
+        int count = 0;
+        Iterator<Pending<K, M, R>> queue = stripe.queue.iterator();
+        while (queue.hasNext() && count < maxBatch) {
+            Pending<K, M, R> next = queue.next();
+            if (stripe.writing.contains(next.key) && !claimed.containsKey(next.key)) {
+                continue;
+            }
+            queue.remove();
+            stripe.writing.add(next.key);
+            claimed.computeIfAbsent(next.key, key -> new ArrayList<>()).add(next);
+            count++;
+        }
+        queued.addAndGet(-count);
+        return claimed;
+    }
+
+    // Call under the lock.
+    private void finish(Stripe<K, M, R> stripe, Map<K, List<Pending<K, M, R>>> claimed) {
+        // these are off the queue, so nobody else would ever complete them
+        for (List<Pending<K, M, R>> group : claimed.values()) {
+            for (Pending<K, M, R> pending : group) {
+                if (pending.outcome == null) {
+                    pending.outcome = Outcome.failed(new IllegalStateException("Write did not complete"));
+                }
+            }
+        }
+        stripe.writing.removeAll(claimed.keySet());
+        stripe.written.signalAll();
+    }
+
+    private void write(K key, List<Pending<K, M, R>> group) {
+        try {
+            List<Outcome<R>> outcomes = writer.write(key, group.stream().map(pending -> pending.mutation).toList());
+            if (outcomes == null || outcomes.size() != group.size()) {
+                throw new IllegalStateException("Writer returned " + (outcomes == null ? 0 : outcomes.size())
+                        + " outcomes for " + group.size() + " mutations");
+            }
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).outcome = outcomes.get(i);
+            }
+        } catch (RuntimeException ex) {
+            group.forEach(pending -> pending.outcome = Outcome.failed(ex));
+        }
+        batches.incrementAndGet();
+        mutations.addAndGet(group.size());
+        largestBatch.accumulateAndGet(group.size(), Math::max);
+    }
+
+    Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        long mutationCount = mutations.get();
+        metrics.put("queued", queued.get());
+        metrics.put("maxQueued", maxQueued.get());
+        metrics.put("writes", batchCount);
+        metrics.put("mutations", mutationCount);
+        metrics.put("coalesced", mutationCount - batchCount);
+        metrics.put("largestBatch", largestBatch.get());
+        metrics.put("avgBatchSize", batchCount == 0 ? 0 : (double) mutationCount / batchCount);
+        return metrics;
+    }
+}
@@ -4,6 +4,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ompt.Ompt.Util.ETags;
+import com.ompt.Ompt.exception.PreconditionFailedException;
 import com.ompt.Ompt.model.DoctorProfile;
 import com.ompt.Ompt.model.Hospital;
 import com.ompt.Ompt.model.AccountStatus;
@@ -12,15 +14,15 @@ import com.ompt.Ompt.model.User;
 import com.ompt.Ompt.repository.DoctorProfileRepository;
 import com.ompt.Ompt.repository.HospitalRepository;
 import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.security.TokenEpochRegistry;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
 import java.util.List;
-import java.util.UUID;
 
 @Service
 @AllArgsConstructor
@@ -30,8 +32,11 @@ public class DoctorProfileService {
     private final UserRepository userRepository;
     private final HospitalRepository hospitalRepository;
     private final EmailService emailService;
-    private final PasswordEncoder passwordEncoder;
+    private final ResetTokenService resetTokenService;
     private final ObjectMapper objectMapper;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    private final DocumentCache documentCache;
+    private final OptimisticRetry optimisticRetry;
 
     public JsonNode getTemplate() {
         return buildDoctorTemplate(null, "", "");
@@ -41,7 +46,9 @@ public class DoctorProfileService {
         DoctorProfile profile = doctorProfileRepository
                 .findByUser(doctor)
                 .orElseGet(() -> createProfile(doctor, buildDoctorTemplate(doctor.getId(), doctor.getName(), doctor.getEmail())));
-        ObjectNode data = parseObject(profile.getProfileJson());
+        JsonNode cached = documentCache.get(
+                DocumentCache.DOCTOR_PROFILE, profile.getId(), profile.getUpdatedAt(), profile.getProfileJson(), this::parse);
+        ObjectNode data = cached instanceof ObjectNode cachedObject ? cachedObject : objectMapper.createObjectNode();
         Hospital hospital = resolveHospital(doctor);
         if (hospital != null) {
             data.put("hospitalId", hospital.getId());
@@ -69,6 +76,7 @@ public class DoctorProfileService {
                 .toList();
     }
 
+    @Transactional
     public JsonNode createDoctorFromProfile(User admin, JsonNode profileJson) {
         if (admin.getRole() != Role.ADMIN) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admin can register doctors");
@@ -93,9 +101,7 @@ public class DoctorProfileService {
         doctor.setRole(Role.DOCTOR);
         doctor.setHospital(admin.getHospital());
 
-        String token = UUID.randomUUID().toString();
-        doctor.setResetTokenHash(passwordEncoder.encode(token));
-        doctor.setResetTokenExpiry(LocalDateTime.now().plusHours(24));
+        String token = resetTokenService.issue(doctor, Duration.ofHours(24));
 
         userRepository.save(doctor);
 
@@ -111,9 +117,9 @@ public class DoctorProfileService {
         return normalized;
     }
 
-    public JsonNode updateProfile(User admin, Long doctorId, JsonNode profileJson) {
+    public User hospitalDoctor(User admin, Long doctorId) {
         if (admin.getRole() != Role.ADMIN) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admin can update doctors");
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only admin can manage doctors");
         }
 
         User doctor = userRepository.findById(doctorId)
@@ -122,14 +128,12 @@ public class DoctorProfileService {
         if (doctor.getRole() != Role.DOCTOR || !doctor.getHospital().getId().equals(admin.getHospital().getId())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Doctor not in your hospital");
         }
+        return doctor;
+    }
 
-        ObjectNode normalized = normalizeProfile(profileJson, doctor);
-        DoctorProfile profile = doctorProfileRepository.findByUser(doctor).orElse(new DoctorProfile());
-        profile.setUser(doctor);
-        profile.setProfileJson(normalized.toString());
-        doctorProfileRepository.save(profile);
-
-        return normalized;
+    // ifMatch, when given, is the ETag served by GET /api/admin/doctors/{doctorId}.
+    public JsonNode updateProfile(User admin, Long doctorId, JsonNode profileJson, String ifMatch) {
+        return optimisticRetry.execute(() -> replaceProfile(hospitalDoctor(admin, doctorId), profileJson, ifMatch));
     }
 
     public JsonNode getOwnProfile(User doctor) {
@@ -139,7 +143,17 @@ public class DoctorProfileService {
         return getOrCreateProfile(doctor);
     }
 
-    public JsonNode updateOwnProfile(User doctor, JsonNode profileJson) {
+    // The served profile also carries the hospital id and name, so both are part of the validator.
+    public String profileETag(User doctor) {
+        if (doctor.getRole() != Role.DOCTOR) {
+            return null;
+        }
+        return doctorProfileRepository.findVersionByUser(doctor)
+                .map(version -> profileETag(version.getId(), version.getVersion(), doctor.getHospital()))
+                .orElse(null);
+    }
+
+    public JsonNode updateOwnProfile(User doctor, JsonNode profileJson, String ifMatch) {
         if (doctor.getRole() != Role.DOCTOR) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only doctor can update doctor profile");
         }
@@ -150,14 +164,38 @@ public class DoctorProfileService {
         // Keep login identity stable for doctor self-service updates.
         incoming.with("personal").put("email", doctor.getEmail());
 
-        ObjectNode normalized = normalizeProfile(incoming, doctor);
+        return optimisticRetry.execute(() -> replaceProfile(doctor, incoming, ifMatch));
+    }
+
+    // Checks the precondition against the row it is about to overwrite; a save racing another
+    // one fails on the version and is retried, and then the precondition no longer holds.
+    private ObjectNode replaceProfile(User doctor, JsonNode profileJson, String ifMatch) {
         DoctorProfile profile = doctorProfileRepository.findByUser(doctor).orElse(new DoctorProfile());
+        if (ifMatch != null && (profile.getId() == null || !ETags.matches(ifMatch,
+                profileETag(profile.getId(), profile.getVersion(), doctor.getHospital())))) {
+            throw new PreconditionFailedException("Doctor profile has changed since it was read");
+        }
+
+        ObjectNode normalized = normalizeProfile(profileJson, doctor);
         profile.setUser(doctor);
         profile.setProfileJson(normalized.toString());
-        doctorProfileRepository.save(profile);
+        saveProfile(profile);
         return normalized;
     }
 
+    private String profileETag(Long profileId, long version, Hospital hospital) {
+        return ETags.of("doctor", profileId, version,
+                hospital == null ? null : hospital.getId(),
+                hospital == null ? null : hospital.getName());
+    }
+
+    private DoctorProfile saveProfile(DoctorProfile profile) {
+        if (profile.getId() != null) {
+            documentCache.invalidate(DocumentCache.DOCTOR_PROFILE, profile.getId());
+        }
+        return doctorProfileRepository.save(profile);
+    }
+
     private DoctorProfile createProfile(User doctor, ObjectNode data) {
         DoctorProfile profile = new DoctorProfile();
         profile.setUser(doctor);
@@ -186,6 +224,7 @@ public class DoctorProfileService {
                 throw new ResponseStatusException(HttpStatus.CONFLICT, "Email already registered");
             }
             doctor.setEmail(newEmail.toLowerCase());
+            tokenEpochRegistry.revokeTokens(doctor);
         }
 
         doctor.setName(newName);
@@ -297,12 +336,4 @@ public class DoctorProfileService {
 
         return root;
     }
-
-    private ObjectNode parseObject(String json) {
-        JsonNode node = parse(json);
-        if (node instanceof ObjectNode objectNode) {
-            return objectNode;
-        }
-        return objectMapper.createObjectNode();
-    }
 }
@@ -0,0 +1,111 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ompt.Ompt.metrics.MetricsSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+// Parsed JSON documents keyed by entity id and checked against updatedAt and the stored text.
+// Every caller gets its own deep copy, so whatever it changes never reaches the cached tree;
+// copying a tree is still far cheaper than parsing the text again.
+@Component
+public class DocumentCache implements MetricsSource {
+
+    public static final String PATIENT_RECORD = "patientRecord";
+    public static final String DOCTOR_PROFILE = "doctorProfile";
+
+    private record Key(String kind, Long id) {
+    }
+
+    private record Entry(LocalDateTime version, String source, JsonNode tree) {
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long weight;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public DocumentCache(
+            @Value("${documents.cache.max-entries:5000}") int maxEntries,
+            @Value("${documents.cache.max-weight:20000000}") long maxWeight
+    ) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    public JsonNode get(String kind, Long id, LocalDateTime version, String json, Function<String, JsonNode> parser) {
+        if (id == null || version == null || json == null || maxEntries <= 0) {
+            return parser.apply(json);
+        }
+        Key key = new Key(kind, id);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            // The text comparison also covers a document changed in this transaction but not yet flushed.
+            if (entry != null && entry.version().equals(version)
+                    && (entry.source() == json || entry.source().equals(json))) {
+                hits.incrementAndGet();
+                return entry.tree().deepCopy();
+            }
+        }
+
+        misses.incrementAndGet();
+        JsonNode tree = parser.apply(json);
+        if (json.length() > maxWeight) {
+            return tree;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(version, json, tree));
+            weight += json.length() - (previous == null ? 0 : previous.source().length());
+            evict();
+        }
+        return tree.deepCopy();
+    }
+
+    public synchronized void invalidate(String kind, Long id) {
+        Entry removed = entries.remove(new Key(kind, id));
+        if (removed != null) {
+            weight -= removed.source().length();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+            weight -= eldest.next().getValue().source().length();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "documentCache";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        metrics.put("hits", hitCount);
+        metrics.put("misses", misses.get());
+        metrics.put("hitRate", lookups == 0 ? 0 : (double) hitCount / lookups);
+        metrics.put("evictions", evictions.get());
+        synchronized (this) {
+            metrics.put("entries", entries.size());
+            metrics.put("weightChars", weight);
+        }
+        return metrics;
+    }
+}
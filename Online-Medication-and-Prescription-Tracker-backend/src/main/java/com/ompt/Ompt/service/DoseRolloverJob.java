@@ -0,0 +1,177 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.repository.DoseHistoryRepository;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Starts a new day for every dose slot: the status of the day that ended is copied to dose_history
+// (doses still pending were missed) and the slot is reset to pending. Records are walked in id
+// order one chunk at a time, each chunk a few set-based statements in its own transaction, so the
+// work grows with the number of slots rather than with history and memory is bounded by the chunk.
+// Rolled slots carry today's date, which makes a re-run, or a run cut short, safe to repeat.
+// Completed courses are not rolled; PrescriptionArchiver moves their last day to dose_history.
+@Slf4j
+@Component
+public class DoseRolloverJob implements MetricsSource {
+
+    private final PatientRecordRepository patientRecordRepository;
+    private final DoseSlotRepository doseSlotRepository;
+    private final DoseHistoryRepository doseHistoryRepository;
+    private final MedicationEventService medicationEventService;
+    private final MedicationEventCompactor compactor;
+    private final AdherenceService adherenceService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong rolled = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+    private volatile LocalDate lastRunDate;
+    private volatile long lastRunSlots;
+    private volatile long lastRunMs;
+
+    public DoseRolloverJob(
+            PatientRecordRepository patientRecordRepository,
+            DoseSlotRepository doseSlotRepository,
+            DoseHistoryRepository doseHistoryRepository,
+            MedicationEventService medicationEventService,
+            MedicationEventCompactor compactor,
+            AdherenceService adherenceService,
+            TransactionTemplate transactionTemplate,
+            @Value("${rollover.chunk-size:500}") int chunkSize
+    ) {
+        this.patientRecordRepository = patientRecordRepository;
+        this.doseSlotRepository = doseSlotRepository;
+        this.doseHistoryRepository = doseHistoryRepository;
+        this.medicationEventService = medicationEventService;
+        this.compactor = compactor;
+        this.adherenceService = adherenceService;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    // Catches up on days missed while the application was down.
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUp() {
+        run();
+    }
+
+    @Scheduled(cron = "${rollover.cron:0 0 0 * * *}")
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.nanoTime();
+        LocalDate today = LocalDate.now();
+        long slots = 0;
+        runs.incrementAndGet();
+        try {
+            // Captured once, so every chunk is stamped with the same watermark however long the run takes.
+            long eventId = medicationEventService.latestEventId();
+            transactionTemplate.executeWithoutResult(status -> doseSlotRepository.stampUndated(today));
+            long afterId = 0;
+            while (true) {
+                List<Long> ids = patientRecordRepository.findIdsAfter(afterId, Limit.of(chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                Integer count = transactionTemplate.execute(status -> rollChunk(ids, today, eventId));
+                slots += count == null ? 0 : count;
+                chunks.incrementAndGet();
+                afterId = ids.get(ids.size() - 1);
+            }
+            lastRunDate = today;
+        } catch (RuntimeException ex) {
+            failedRuns.incrementAndGet();
+            log.warn("Dose rollover for {} stopped, continuing on the next run", today, ex);
+        } finally {
+            lastRunSlots = slots;
+            lastRunMs = (System.nanoTime() - started) / 1_000_000;
+            running.set(false);
+        }
+    }
+
+    // Rolls one record over inside the caller's transaction, for writers that reach a slot before
+    // the nightly run does.
+    public int rollOver(Long recordId, LocalDate today) {
+        return rollChunk(List.of(recordId), today, medicationEventService.latestEventId());
+    }
+
+    // Events of the chunk recorded after eventId are folded in by the compaction below, so they are
+    // not overlaid on the new day either.
+    private int rollChunk(List<Long> recordIds, LocalDate today, long eventId) {
+        Long fromId = recordIds.get(0);
+        Long toId = recordIds.get(recordIds.size() - 1);
+        if (doseSlotRepository.countBefore(fromId, toId, today).isEmpty()) {
+            return 0;
+        }
+        // Lock the records as updateMedicineStatus does, fold in statuses recorded since the last
+        // compaction, then count again under the lock.
+        LocalDateTime now = LocalDateTime.now();
+        patientRecordRepository.touchAll(recordIds, now);
+        compactor.compactRecords(recordIds);
+        List<DoseSlotRepository.RolloverCountView> counts = doseSlotRepository.countBefore(fromId, toId, today);
+
+        doseHistoryRepository.archiveBefore(fromId, toId, today);
+        int reset = doseSlotRepository.resetBefore(fromId, toId, today, eventId);
+
+        List<AdherenceService.StatusChange> changes = new ArrayList<>();
+        long missedNow = 0;
+        for (DoseSlotRepository.RolloverCountView row : counts) {
+            AdherenceService.Owner owner = new AdherenceService.Owner(row.getPatientId(), row.getDoctorId(), row.getHospitalId());
+            if ("pending".equalsIgnoreCase(row.getStatus())) {
+                changes.add(new AdherenceService.StatusChange(owner, "pending", null, "missed",
+                        row.getSlotDate().atStartOfDay(), row.getSlots()));
+                missedNow += row.getSlots();
+            }
+            // each slot's new pending dose for today
+            changes.add(new AdherenceService.StatusChange(owner, null, null, "pending", now, row.getSlots()));
+        }
+        adherenceService.recordStatusChanges(changes);
+        rolled.addAndGet(reset);
+        missed.addAndGet(missedNow);
+        return reset;
+    }
+
+    @Override
+    public String metricsName() {
+        return "doseRollover";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long runMs = lastRunMs;
+        metrics.put("runs", runs.get());
+        metrics.put("failedRuns", failedRuns.get());
+        metrics.put("lastRunDate", lastRunDate == null ? null : lastRunDate.toString());
+        metrics.put("chunks", chunks.get());
+        metrics.put("slotsRolled", rolled.get());
+        metrics.put("missedAtRollover", missed.get());
+        metrics.put("lastRunSlots", lastRunSlots);
+        metrics.put("lastRunMs", runMs);
+        metrics.put("lastRunSlotsPerSecond", runMs == 0 ? 0 : lastRunSlots * 1000 / runMs);
+        return metrics;
+    }
+}
@@ -0,0 +1,202 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.EmailOutboxMessage;
+import com.ompt.Ompt.model.EmailStatus;
+import com.ompt.Ompt.repository.EmailOutboxRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+@Component
+public class EmailDispatcher implements MetricsSource {
+
+    private final EmailOutboxRepository outboxRepository;
+    private final SmtpBatchSender batchSender;
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final long flushMs;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    private final long staleMs;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong sendNanos = new AtomicLong();
+
+    public EmailDispatcher(
+            EmailOutboxRepository outboxRepository,
+            JavaMailSender mailSender,
+            @Value("${email.outbox.threads:4}") int threads,
+            @Value("${email.outbox.batch-size:100}") int batchSize,
+            @Value("${email.outbox.smtp-batch-size:25}") int smtpBatchSize,
+            @Value("${email.outbox.flush-ms:2000}") long flushMs,
+            @Value("${email.outbox.max-attempts:6}") int maxAttempts,
+            @Value("${email.outbox.backoff-ms:30000}") long backoffMs,
+            @Value("${email.outbox.max-backoff-ms:3600000}") long maxBackoffMs,
+            @Value("${email.outbox.stale-ms:300000}") long staleMs
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.batchSender = new SmtpBatchSender(mailSender, smtpBatchSize);
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "email-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = batchSize;
+        this.flushMs = flushMs;
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.staleMs = staleMs;
+    }
+
+    @Scheduled(fixedDelayString = "${email.outbox.poll-ms:1000}")
+    public void poll() {
+        outboxRepository.releaseStale(
+                EmailStatus.SENDING,
+                EmailStatus.PENDING,
+                LocalDateTime.now().minusNanos(staleMs * 1_000_000)
+        );
+        while (dispatchDue() == batchSize) {
+            // keep draining while full batches come back
+        }
+    }
+
+    // Claims up to one batch of due messages and sends them on the pool, one SMTP session per
+    // chunk; returns how many were due.
+    public int dispatchDue() {
+        LocalDateTime now = LocalDateTime.now();
+        List<EmailOutboxMessage> due = outboxRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                EmailStatus.PENDING, now, PageRequest.of(0, batchSize));
+
+        // A partial chunk waits up to flush-ms so bursts (e.g. bulk doctor onboarding) share sessions.
+        if (due.size() < batchSender.getBatchSize() && !due.isEmpty()
+                && due.get(0).getNextAttemptAt().isAfter(now.minusNanos(flushMs * 1_000_000))) {
+            return 0;
+        }
+
+        List<EmailOutboxMessage> claimed = new ArrayList<>();
+        for (EmailOutboxMessage message : due) {
+            if (outboxRepository.claim(message.getId(), EmailStatus.PENDING, EmailStatus.SENDING, now) == 1) {
+                claimed.add(message);
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int chunkSize = batchSender.getBatchSize();
+        for (int start = 0; start < claimed.size(); start += chunkSize) {
+            List<EmailOutboxMessage> chunk = claimed.subList(start, Math.min(start + chunkSize, claimed.size()));
+            tasks.add(() -> {
+                deliver(chunk);
+                return null;
+            });
+        }
+
+        try {
+            pool.invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return due.size();
+    }
+
+    private void deliver(List<EmailOutboxMessage> chunk) {
+        long started = System.nanoTime();
+        List<Exception> results = batchSender.send(chunk.stream().map(this::toMail).toList());
+        sendNanos.addAndGet(System.nanoTime() - started);
+        sessions.incrementAndGet();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            record(chunk.get(i), results.get(i));
+        }
+        outboxRepository.saveAll(chunk);
+    }
+
+    private void record(EmailOutboxMessage message, Exception failure) {
+        message.setAttempts(message.getAttempts() + 1);
+        message.setClaimedAt(null);
+        if (failure == null) {
+            sent.incrementAndGet();
+            message.setStatus(EmailStatus.SENT);
+            message.setSentAt(LocalDateTime.now());
+            message.setLastError(null);
+        } else {
+            message.setLastError(truncate(failure.getMessage()));
+            if (message.getAttempts() >= maxAttempts) {
+                deadLettered.incrementAndGet();
+                message.setStatus(EmailStatus.DEAD);
+                log.warn("Email {} to {} dead-lettered after {} attempts", message.getId(), message.getRecipient(), message.getAttempts());
+            } else {
+                retried.incrementAndGet();
+                message.setStatus(EmailStatus.PENDING);
+                message.setNextAttemptAt(LocalDateTime.now().plusNanos(backoffFor(message.getAttempts()) * 1_000_000));
+            }
+        }
+    }
+
+    private long backoffFor(int attempts) {
+        long delay = backoffMs << Math.min(attempts - 1, 20);
+        return Math.min(delay, maxBackoffMs);
+    }
+
+    private SimpleMailMessage toMail(EmailOutboxMessage message) {
+        SimpleMailMessage mail = new SimpleMailMessage();
+        mail.setTo(message.getRecipient());
+        mail.setSubject(message.getSubject());
+        mail.setText(message.getBody());
+        return mail;
+    }
+
+    private String truncate(String error) {
+        if (error == null) {
+            return "Unknown error";
+        }
+        return error.length() > 500 ? error.substring(0, 500) : error;
+    }
+
+    @Override
+    public String metricsName() {
+        return "emailOutbox";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long sentCount = sent.get();
+        long sessionCount = sessions.get();
+        metrics.put("sent", sentCount);
+        metrics.put("retried", retried.get());
+        metrics.put("deadLettered", deadLettered.get());
+        metrics.put("smtpSessions", sessionCount);
+        metrics.put("avgSessionMs", sessionCount == 0 ? 0 : sendNanos.get() / sessionCount / 1_000_000.0);
+        metrics.put("avgMessagesPerSession", sessionCount == 0 ? 0 : (double) sentCount / sessionCount);
+        metrics.put("pending", outboxRepository.countByStatus(EmailStatus.PENDING));
+        metrics.put("dead", outboxRepository.countByStatus(EmailStatus.DEAD));
+        return metrics;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -1,42 +1,39 @@
 package com.ompt.Ompt.service;
 
+import com.ompt.Ompt.model.EmailOutboxMessage;
+import com.ompt.Ompt.repository.EmailOutboxRepository;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class EmailService {
-    private final JavaMailSender mailSender;
+    private final EmailOutboxRepository outboxRepository;
     private final String resetBaseUrl;
 
 
-    public EmailService(JavaMailSender mailSender, @Value("${app.frontend.url}") String resetBaseUrl) {
-        this.mailSender = mailSender;
+    public EmailService(EmailOutboxRepository outboxRepository, @Value("${app.frontend.url}") String resetBaseUrl) {
+        this.outboxRepository = outboxRepository;
         this.resetBaseUrl = resetBaseUrl;
     }
 
     public void sendResetPasswordEmail(String toEmail, String code) {
-        SimpleMailMessage message=new SimpleMailMessage();
-        message.setTo(toEmail);
-        message.setSubject("Reset Your Password");
-        message.setText("""
+        enqueue(toEmail, "Reset Your Password", """
         Use the verification code below to reset your password:
 
         %s
 
         Code valid for 15 minutes.
         """.formatted(code));
-        mailSender.send(message);
     }
 
     public void sendDoctorWelcomeMail(String email, String hospital, String token) {
         String link = resetBaseUrl + "/set-password?token=" + token;
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(email);
-        message.setSubject("Doctor Account Created");
-        message.setText("""
+        enqueue(email, "Doctor Account Created", """
         Your doctor account has been created for %s.
 
         Please set your password using the link below:
@@ -44,8 +41,39 @@ public class EmailService {
 
         Link valid for 24 hours.
         """.formatted(hospital, link));
+    }
+
+    public record DoseReminderMail(String email, String name, String medicine, String dosage, String time) {
+    }
+
+    // One transaction for the whole batch rather than one per reminder.
+    @Transactional
+    public void sendDoseReminders(List<DoseReminderMail> reminders) {
+        List<EmailOutboxMessage> messages = new ArrayList<>();
+        for (DoseReminderMail reminder : reminders) {
+            String dosage = reminder.dosage() == null || reminder.dosage().isBlank() ? "" : " (" + reminder.dosage() + ")";
+            messages.add(message(reminder.email(), "Medication Reminder: " + reminder.medicine(), """
+            Hi %s,
+
+            It is time for your %s dose of %s%s.
+
+            Please record it in the app once taken.
+            """.formatted(reminder.name(), reminder.time(), reminder.medicine(), dosage)));
+        }
+        outboxRepository.saveAll(messages);
+    }
+
+    // Joins the caller's transaction; EmailDispatcher delivers the row after commit.
+    private void enqueue(String to, String subject, String body) {
+        outboxRepository.save(message(to, subject, body));
+    }
 
-        mailSender.send(message);
+    private EmailOutboxMessage message(String to, String subject, String body) {
+        EmailOutboxMessage message = new EmailOutboxMessage();
+        message.setRecipient(to);
+        message.setSubject(subject);
+        message.setBody(body);
+        return message;
     }
 
 }
@@ -0,0 +1,116 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.MedicationEvent;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import com.ompt.Ompt.repository.MedicationEventRepository;
+import com.ompt.Ompt.repository.PrescriptionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Folds pending medication events into the prescription and dose-slot rows. Each row keeps the id
+// of the last event applied to it, so replaying a batch after a crash leaves the rows unchanged.
+@Slf4j
+@Component
+public class MedicationEventCompactor implements MetricsSource {
+
+    private final MedicationEventRepository eventRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final DoseSlotRepository doseSlotRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private final AtomicLong compacted = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong maxLagMs = new AtomicLong();
+
+    public MedicationEventCompactor(
+            MedicationEventRepository eventRepository,
+            PrescriptionRepository prescriptionRepository,
+            DoseSlotRepository doseSlotRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${medication.events.compact-batch:500}") int batchSize
+    ) {
+        this.eventRepository = eventRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.doseSlotRepository = doseSlotRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${medication.events.compact-ms:5000}")
+    public void compact() {
+        runs.incrementAndGet();
+        try {
+            Integer applied;
+            do {
+                applied = transactionTemplate.execute(status -> compactBatch());
+            } while (applied != null && applied == batchSize);
+        } catch (RuntimeException ex) {
+            log.warn("Medication event compaction failed, retrying on the next run", ex);
+        }
+    }
+
+    // Folds the pending events of the given records in the caller's transaction.
+    public void compactRecords(Collection<Long> recordIds) {
+        List<MedicationEvent> events = eventRepository.findByRecordIdInAndCompactedFalseOrderByIdAsc(recordIds);
+        if (!events.isEmpty()) {
+            apply(events);
+        }
+    }
+
+    private int compactBatch() {
+        List<MedicationEvent> events = eventRepository.findByCompactedFalseOrderByIdAsc(Limit.of(batchSize));
+        if (events.isEmpty()) {
+            return 0;
+        }
+        apply(events);
+        return events.size();
+    }
+
+    private void apply(List<MedicationEvent> events) {
+        LocalDateTime now = LocalDateTime.now();
+        for (MedicationEvent event : events) {
+            switch (event.getType()) {
+                case DOSE_STATUS -> doseSlotRepository.applyStatus(
+                        event.getRecordId(), event.getMedicineId(), event.getSlotTime(),
+                        event.getStatus(), event.getTakenAt(), event.getReason(), event.getId());
+                case DELIVERY_STATUS -> prescriptionRepository.applyDeliveryStatus(
+                        event.getRecordId(), event.getMedicineId(), event.getStatus(), event.getDeliveredAt(), event.getId());
+                case PRESCRIPTION_ADDED, PRESCRIPTION_COMPLETED -> {
+                    // the row itself was written with the event
+                }
+            }
+            maxLagMs.accumulateAndGet(Duration.between(event.getOccurredAt(), now).toMillis(), Math::max);
+        }
+        eventRepository.markCompacted(events.stream().map(MedicationEvent::getId).toList());
+        compacted.addAndGet(events.size());
+    }
+
+    @Override
+    public String metricsName() {
+        return "medicationEvents";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("compacted", compacted.get());
+        metrics.put("compactionRuns", runs.get());
+        metrics.put("maxCompactionLagMs", maxLagMs.get());
+        metrics.put("pending", eventRepository.countByCompactedFalse());
+        return metrics;
+    }
+}
@@ -0,0 +1,81 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.model.MedicationEvent;
+import com.ompt.Ompt.model.MedicationEventType;
+import com.ompt.Ompt.model.PatientRecord;
+import com.ompt.Ompt.model.Prescription;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.MedicationEventRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+@AllArgsConstructor
+public class MedicationEventService {
+
+    private final MedicationEventRepository eventRepository;
+
+    public MedicationEvent recordDoseStatus(PatientRecord record, User actor, String medicineId, String time,
+                                            String status, String takenAt, String reason) {
+        MedicationEvent event = newEvent(record, actor, medicineId, MedicationEventType.DOSE_STATUS);
+        event.setSlotTime(time);
+        event.setStatus(status);
+        event.setTakenAt(takenAt);
+        event.setReason(reason);
+        return eventRepository.save(event);
+    }
+
+    public MedicationEvent recordDeliveryStatus(PatientRecord record, User actor, String medicineId,
+                                                String status, String deliveredAt) {
+        MedicationEvent event = newEvent(record, actor, medicineId, MedicationEventType.DELIVERY_STATUS);
+        event.setStatus(status);
+        event.setDeliveredAt(deliveredAt);
+        return eventRepository.save(event);
+    }
+
+    // For writers that update the dose slot rows themselves in the same transaction.
+    public int recordAppliedDoseStatus(Collection<Long> slotIds, String status, LocalDateTime now) {
+        return eventRepository.insertAppliedDoseStatus(slotIds, status, now);
+    }
+
+    // The prescription row is written in the same transaction, so there is nothing left to fold in.
+    public MedicationEvent recordPrescriptionAdded(PatientRecord record, User actor, Prescription prescription) {
+        MedicationEvent event = newEvent(record, actor, prescription.getMedicineId(), MedicationEventType.PRESCRIPTION_ADDED);
+        event.setStatus(prescription.getDeliveryStatus());
+        event.setCompacted(true);
+        return eventRepository.save(event);
+    }
+
+    public long latestEventId() {
+        return eventRepository.findMaxId();
+    }
+
+    public MedicationEvent recordPrescriptionCompleted(PatientRecord record, User actor, Prescription prescription) {
+        MedicationEvent event = newEvent(record, actor, prescription.getMedicineId(), MedicationEventType.PRESCRIPTION_COMPLETED);
+        event.setCompacted(true);
+        return eventRepository.save(event);
+    }
+
+    public List<MedicationEvent> pendingFor(Collection<Long> recordIds) {
+        return eventRepository.findByRecordIdInAndCompactedFalseOrderByIdAsc(recordIds);
+    }
+
+    public Optional<MedicationEvent> lastDoseStatus(PatientRecord record, String medicineId, String time) {
+        return eventRepository.findFirstByRecordIdAndMedicineIdAndSlotTimeAndTypeOrderByIdDesc(
+                record.getId(), medicineId, time, MedicationEventType.DOSE_STATUS);
+    }
+
+    private MedicationEvent newEvent(PatientRecord record, User actor, String medicineId, MedicationEventType type) {
+        MedicationEvent event = new MedicationEvent();
+        event.setRecordId(record.getId());
+        event.setMedicineId(medicineId);
+        event.setType(type);
+        event.setActorId(actor == null ? null : actor.getId());
+        return event;
+    }
+}
@@ -0,0 +1,232 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.JobCheckpoint;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import com.ompt.Ompt.repository.JobCheckpointRepository;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Marks today's pending dose slots as missed once their time plus the grace period has passed.
+// Slots from an earlier day that are still pending are left to DoseRolloverJob, and completed
+// courses are skipped. Patient records are walked in id order in chunks, a few chunks at a time,
+// each chunk a few set-based statements in its own short transaction; the checkpoint advances
+// after every wave so a restarted run resumes there.
+@Slf4j
+@Component
+public class MissedDoseJob implements MetricsSource {
+
+    static final String JOB_NAME = "missed-doses";
+    private static final String MISSED = "missed";
+    private static final DateTimeFormatter SLOT_TIME = DateTimeFormatter.ofPattern("H:mm");
+
+    private final PatientRecordRepository patientRecordRepository;
+    private final DoseSlotRepository doseSlotRepository;
+    private final JobCheckpointRepository checkpointRepository;
+    private final MedicationEventService medicationEventService;
+    private final AdherenceService adherenceService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService pool;
+    private final int parallelism;
+    private final int chunkSize;
+    private final long graceMinutes;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong resumedRuns = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private final AtomicLong marked = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private volatile long lastRunMs;
+
+    public MissedDoseJob(
+            PatientRecordRepository patientRecordRepository,
+            DoseSlotRepository doseSlotRepository,
+            JobCheckpointRepository checkpointRepository,
+            MedicationEventService medicationEventService,
+            AdherenceService adherenceService,
+            TransactionTemplate transactionTemplate,
+            @Value("${missed-doses.parallelism:4}") int parallelism,
+            @Value("${missed-doses.chunk-size:200}") int chunkSize,
+            @Value("${missed-doses.grace-minutes:60}") long graceMinutes
+    ) {
+        this.patientRecordRepository = patientRecordRepository;
+        this.doseSlotRepository = doseSlotRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.medicationEventService = medicationEventService;
+        this.adherenceService = adherenceService;
+        this.transactionTemplate = transactionTemplate;
+        this.pool = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "missed-doses");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.graceMinutes = graceMinutes;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Scheduled(fixedDelayString = "${missed-doses.interval-ms:60000}", initialDelayString = "${missed-doses.initial-delay-ms:30000}")
+    public void run() {
+        long started = System.nanoTime();
+        runs.incrementAndGet();
+        JobCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME).orElseGet(() -> {
+            JobCheckpoint created = new JobCheckpoint();
+            created.setName(JOB_NAME);
+            return created;
+        });
+        if (checkpoint.getLastRecordId() > 0) {
+            resumedRuns.incrementAndGet();
+            log.info("Resuming missed-dose run after patient record {}", checkpoint.getLastRecordId());
+        } else {
+            checkpoint.setRunStartedAt(LocalDateTime.now());
+            checkpoint.setRunCompletedAt(null);
+        }
+
+        try {
+            long afterId = checkpoint.getLastRecordId();
+            while (true) {
+                List<long[]> wave = nextWave(afterId);
+                if (wave.isEmpty()) {
+                    break;
+                }
+                List<Future<Integer>> results = new ArrayList<>();
+                for (long[] range : wave) {
+                    results.add(pool.submit((Callable<Integer>) () -> processChunk(range[0], range[1])));
+                }
+                for (Future<Integer> result : results) {
+                    marked.addAndGet(result.get());
+                    chunks.incrementAndGet();
+                }
+                afterId = wave.get(wave.size() - 1)[1];
+                checkpoint.setLastRecordId(afterId);
+                checkpoint = checkpointRepository.save(checkpoint);
+            }
+            checkpoint.setLastRecordId(0);
+            checkpoint.setRunCompletedAt(LocalDateTime.now());
+            checkpointRepository.save(checkpoint);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RuntimeException ex) {
+            failedRuns.incrementAndGet();
+            log.warn("Missed-dose run stopped after patient record {}, resuming on the next run",
+                    checkpoint.getLastRecordId(), ex);
+        } finally {
+            lastRunMs = (System.nanoTime() - started) / 1_000_000;
+        }
+    }
+
+    // Up to `parallelism` consecutive id ranges of at most chunkSize records each.
+    private List<long[]> nextWave(long afterId) {
+        List<Long> ids = patientRecordRepository.findIdsAfter(afterId, Limit.of(chunkSize * parallelism));
+        List<long[]> wave = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += chunkSize) {
+            int end = Math.min(start + chunkSize, ids.size()) - 1;
+            wave.add(new long[]{ids.get(start), ids.get(end)});
+        }
+        return wave;
+    }
+
+    private int processChunk(long fromId, long toId) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalTime cutoff = now.toLocalTime().minusMinutes(graceMinutes);
+        if (cutoff.isAfter(now.toLocalTime())) {
+            // the grace period reaches back into yesterday, so nothing today is overdue yet
+            return 0;
+        }
+        LocalDate today = now.toLocalDate();
+
+        // Slot times are free text, so the overdue ones are picked here from the few distinct values
+        // and everything after that is a set-based statement over the chunk.
+        List<String> times = doseSlotRepository.findPendingTimesInRecordRange(fromId, toId, today).stream()
+                .filter(time -> isOverdue(time, cutoff))
+                .toList();
+        if (times.isEmpty()) {
+            return 0;
+        }
+        List<Long> recordIds = doseSlotRepository.findRecordIdsPendingAt(fromId, toId, today, times);
+        if (recordIds.isEmpty()) {
+            return 0;
+        }
+        Integer count = transactionTemplate.execute(status -> {
+            // Lock the records first, as updateMedicineStatus does; the statements below then select
+            // under the lock, so a patient's own update either committed before this point (and its
+            // pending event keeps the slot out) or queues behind the chunk.
+            patientRecordRepository.touchAll(recordIds, now);
+            List<DoseSlotRepository.OverdueSlotView> overdue = doseSlotRepository.findOverdue(recordIds, today, times);
+            if (overdue.isEmpty()) {
+                return 0;
+            }
+            List<Long> slotIds = overdue.stream().map(DoseSlotRepository.OverdueSlotView::getSlotId).toList();
+            medicationEventService.recordAppliedDoseStatus(slotIds, MISSED, now);
+            // Every event of these records is older than anything recorded once the locks are
+            // released, so the newest id is a valid watermark for all of the chunk's slots.
+            int applied = doseSlotRepository.applyFromPending(slotIds, MISSED, medicationEventService.latestEventId());
+            if (applied != overdue.size()) {
+                throw new IllegalStateException("Dose slots changed while their records were locked");
+            }
+            List<AdherenceService.StatusChange> changes = new ArrayList<>();
+            for (DoseSlotRepository.OverdueSlotView slot : overdue) {
+                AdherenceService.Owner owner = new AdherenceService.Owner(
+                        slot.getPatientId(), slot.getDoctorId(), slot.getHospitalId());
+                changes.add(new AdherenceService.StatusChange(owner, "pending", null, MISSED, now));
+            }
+            // Counters are shared by every patient of a doctor or hospital, so they are updated
+            // last to hold their locks for as short a time as possible.
+            adherenceService.recordStatusChanges(changes);
+            return applied;
+        });
+        return count == null ? 0 : count;
+    }
+
+    private boolean isOverdue(String time, LocalTime cutoff) {
+        try {
+            return !LocalTime.parse(time.trim(), SLOT_TIME).isAfter(cutoff);
+        } catch (DateTimeParseException | NullPointerException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "missedDoseJob";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("runs", runs.get());
+        metrics.put("resumedRuns", resumedRuns.get());
+        metrics.put("failedRuns", failedRuns.get());
+        metrics.put("chunks", chunks.get());
+        metrics.put("slotsMarkedMissed", marked.get());
+        metrics.put("lastRunMs", lastRunMs);
+        return metrics;
+    }
+}
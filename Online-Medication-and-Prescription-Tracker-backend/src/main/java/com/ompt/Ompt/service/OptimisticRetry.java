@@ -0,0 +1,92 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Runs a unit of work in its own transaction and runs it again when it lost a race for a
+// versioned row (or timed out waiting for a row lock), after a short randomised backoff.
+// The rollback clears the persistence context, so every attempt re-reads what it writes.
+@Slf4j
+@Component
+public class OptimisticRetry implements MetricsSource {
+
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long backoffMs;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+
+    public OptimisticRetry(
+            TransactionTemplate transactionTemplate,
+            @Value("${optimistic-retry.max-attempts:8}") int maxAttempts,
+            @Value("${optimistic-retry.backoff-ms:10}") long backoffMs
+    ) {
+        this.transactionTemplate = transactionTemplate;
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            // a retry inside the caller's transaction would still see its stale state
+            return work.get();
+        }
+        calls.incrementAndGet();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (ConcurrencyFailureException ex) {
+                if (attempt >= maxAttempts) {
+                    exhausted.incrementAndGet();
+                    log.warn("Giving up after {} conflicting attempts", attempt);
+                    throw ex;
+                }
+                retries.incrementAndGet();
+                backOff(attempt);
+            }
+        }
+    }
+
+    // Full jitter, so writers that collided once do not collide again in step.
+    private void backOff(int attempt) {
+        long bound = backoffMs << Math.min(attempt - 1, 10);
+        if (bound <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying", ex);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "optimisticRetry";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        long callCount = calls.get();
+        metrics.put("calls", callCount);
+        metrics.put("retries", retries.get());
+        metrics.put("exhausted", exhausted.get());
+        metrics.put("retryRate", callCount == 0 ? 0 : (double) retries.get() / callCount);
+        return metrics;
+    }
+}
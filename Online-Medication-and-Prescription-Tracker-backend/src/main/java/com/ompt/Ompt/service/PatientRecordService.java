@@ -4,36 +4,90 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.ompt.Ompt.DTO.AdherenceStatsDTO;
 import com.ompt.Ompt.DTO.AssignMedicineRequestDTO;
+import com.ompt.Ompt.DTO.BulkMedicineAssignmentResponseDTO;
 import com.ompt.Ompt.DTO.DoctorRatingRequestDTO;
+import com.ompt.Ompt.DTO.MedicineAssignmentResultDTO;
 import com.ompt.Ompt.DTO.MedicineStatusUpdateDTO;
+import com.ompt.Ompt.Util.ETags;
+import com.ompt.Ompt.Util.JsonPatches;
+import com.ompt.Ompt.exception.PatchFailedException;
+import com.ompt.Ompt.exception.PreconditionFailedException;
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.AdherenceScope;
+import com.ompt.Ompt.model.ArchivedPrescription;
 import com.ompt.Ompt.model.DoctorProfile;
+import com.ompt.Ompt.model.DoseSlot;
 import com.ompt.Ompt.model.Delivery;
 import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.MedicationEvent;
 import com.ompt.Ompt.model.PatientRecord;
 import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.model.Prescription;
 import com.ompt.Ompt.model.Role;
 import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.reminder.DoseReminder;
+import com.ompt.Ompt.reminder.DoseReminderScheduler;
+import com.ompt.Ompt.repository.ArchivedPrescriptionRepository;
 import com.ompt.Ompt.repository.DeliveryRepository;
 import com.ompt.Ompt.repository.DoctorProfileRepository;
 import com.ompt.Ompt.repository.InventoryItemRepository;
 import com.ompt.Ompt.repository.PatientRecordRepository;
+import com.ompt.Ompt.repository.PrescriptionRepository;
 import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.search.PatientSearchIndex;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
-public class PatientRecordService {
+public class PatientRecordService implements MetricsSource {
+
+    // Owned by the account and by the medicine endpoints rather than by the patient document.
+    private static final List<String> PROTECTED_FIELDS = List.of("/id", "/contact/email", "/doctorAssignedId", "/medicines");
+
+    private static final String MEDICINES_PLACEHOLDER = "\"medicines\":[]}";
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    private static final int STREAM_BATCH_SIZE = 200;
+    private static final LocalDateTime FIRST_PAGE = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final int DOCUMENT_WRITE_STRIPES = 64;
+    private static final int DOCUMENT_WRITE_BATCH = 32;
+
+    // A page of raw JSON documents and the cursor of the next page, null on the last one.
+    public record DocumentPage(List<RawValue> items, String nextCursor) {
+    }
 
     private final PatientRecordRepository patientRecordRepository;
     private final UserRepository userRepository;
@@ -41,7 +95,32 @@ public class PatientRecordService {
     private final DeliveryRepository deliveryRepository;
     private final DoctorProfileRepository doctorProfileRepository;
     private final DoctorProfileService doctorProfileService;
+    private final PrescriptionService prescriptionService;
+    private final MedicationEventService medicationEventService;
+    private final AdherenceService adherenceService;
+    private final DoseRolloverJob doseRolloverJob;
+    private final PrescriptionRepository prescriptionRepository;
+    private final ArchivedPrescriptionRepository archivedPrescriptionRepository;
+    private final DoseReminderScheduler doseReminderScheduler;
+    private final PatientSearchIndex patientSearchIndex;
+    private final StockReservationService stockReservationService;
     private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final DocumentCache documentCache;
+    private final TransactionTemplate transactionTemplate;
+    private final OptimisticRetry optimisticRetry;
+
+    // Edits of the patient document, one writer per record at a time; see writeDocument.
+    private final CoalescingWriteQueue<Long, DocumentEdit, DocumentWrite> documentWrites =
+            new CoalescingWriteQueue<>(DOCUMENT_WRITE_STRIPES, DOCUMENT_WRITE_BATCH, this::writeDocument);
+
+    // ifMatch is the ETag the edit was made against, or null for an unconditional edit.
+    private record DocumentEdit(String ifMatch, UnaryOperator<ObjectNode> apply) {
+    }
+
+    // etag is null when a later edit in the same write superseded this one.
+    public record DocumentWrite(JsonNode document, String etag) {
+    }
 
     public JsonNode createForNewPatient(User patient, User assignedDoctor) {
         ObjectNode data = buildPatientTemplate(patient, assignedDoctor);
@@ -50,54 +129,118 @@ public class PatientRecordService {
         record.setUser(patient);
         record.setAssignedDoctor(assignedDoctor);
         record.setDataJson(data.toString());
-        patientRecordRepository.save(record);
+        record.setMedicinesNormalized(true);
+        save(record);
 
         return data;
     }
 
+    @Transactional
     public JsonNode getOrCreateRecord(User patient) {
         PatientRecord record = patientRecordRepository
                 .findByUser(patient)
                 .orElseGet(() -> createEntityForPatient(patient, null));
-        return parse(record.getDataJson());
+        return assemble(record);
     }
 
-    public List<JsonNode> listByHospital(Long hospitalId) {
-        return patientRecordRepository
-                .findByUser_Hospital_Id(hospitalId)
-                .stream()
-                .map(record -> parse(record.getDataJson()))
-                .toList();
+    @Transactional
+    public List<RawValue> listByHospital(Long hospitalId) {
+        return assembleAll(patientRecordRepository.findByUser_Hospital_Id(hospitalId));
     }
 
-    public List<JsonNode> listByDoctor(User doctor) {
-        return patientRecordRepository
-                .findByAssignedDoctor(doctor)
-                .stream()
-                .map(record -> parse(record.getDataJson()))
-                .toList();
+    @Transactional
+    public List<RawValue> listByDoctor(User doctor) {
+        return assembleAll(patientRecordRepository.findByAssignedDoctor(doctor));
     }
 
-    public JsonNode updatePatientRecord(User patient, JsonNode updatedData) {
-        PatientRecord record = patientRecordRepository
-                .findByUser(patient)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
+    // Keyset pages ordered by (updatedAt, id); a record edited mid-walk moves to the end and is
+    // served again on a later page, so a walk also picks up concurrent changes.
+    @Transactional
+    public DocumentPage pageByHospital(Long hospitalId, String cursor, Integer limit) {
+        Cursor position = decodeCursor(cursor);
+        int size = pageSize(limit);
+        return toPage(patientRecordRepository.findPageByHospitalId(
+                hospitalId, position.updatedAt(), position.id(), Limit.of(size)), size);
+    }
 
-        ObjectNode normalized = updatedData.deepCopy();
-        normalized.put("id", patient.getId());
+    @Transactional
+    public DocumentPage pageByDoctor(User doctor, String cursor, Integer limit) {
+        Cursor position = decodeCursor(cursor);
+        int size = pageSize(limit);
+        return toPage(patientRecordRepository.findPageByAssignedDoctorId(
+                doctor.getId(), position.updatedAt(), position.id(), Limit.of(size)), size);
+    }
 
-        ObjectNode contact = normalized.with("contact");
-        contact.put("email", patient.getEmail());
+    @Transactional
+    public void streamByHospital(Long hospitalId, OutputStream out) throws IOException {
+        try (Stream<PatientRecord> records = patientRecordRepository.streamByHospitalId(hospitalId)) {
+            writeNdjson(records, out);
+        }
+    }
 
-        if (record.getAssignedDoctor() != null) {
-            normalized.put("doctorAssignedId", record.getAssignedDoctor().getId());
-        } else {
-            normalized.putNull("doctorAssignedId");
+    @Transactional
+    public void streamByDoctor(Long doctorId, OutputStream out) throws IOException {
+        try (Stream<PatientRecord> records = patientRecordRepository.streamByAssignedDoctorId(doctorId)) {
+            writeNdjson(records, out);
         }
+    }
+
+    public String recordETag(User patient) {
+        return patientRecordRepository.findVersionByUser(patient)
+                .map(version -> ETags.of("patient", version.getId(), version.getVersion()))
+                .orElse(null);
+    }
+
+    public String listETagByHospital(Long hospitalId) {
+        return listETag(patientRecordRepository.findVersionsByHospitalId(hospitalId));
+    }
+
+    public String listETagByDoctor(User doctor) {
+        return listETag(patientRecordRepository.findVersionsByAssignedDoctor(doctor));
+    }
 
-        record.setDataJson(normalized.toString());
-        patientRecordRepository.save(record);
-        return normalized;
+    // Medicines are owned by the assign/status/delivery endpoints: a "medicines" array may be sent
+    // back as read, but not changed.
+    public DocumentWrite updatePatientRecord(User patient, JsonNode updatedData, String ifMatch) {
+        return documentWrites.submit(documentRecordId(patient), new DocumentEdit(ifMatch, current -> {
+            JsonNode medicines = updatedData.get("medicines");
+            if (medicines != null && !sameContent(medicines, current.path("medicines"))) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "medicines cannot be changed here; use the medicine endpoints or omit the field");
+            }
+            ObjectNode normalized = updatedData.deepCopy();
+            normalized.put("id", patient.getId());
+
+            ObjectNode contact = normalized.with("contact");
+            contact.put("email", patient.getEmail());
+
+            // kept in step with the assigned doctor by the medicine endpoints
+            JsonNode doctorAssignedId = current.get("doctorAssignedId");
+            if (doctorAssignedId != null) {
+                normalized.set("doctorAssignedId", doctorAssignedId);
+            } else {
+                normalized.putNull("doctorAssignedId");
+            }
+            return normalized;
+        }));
+    }
+
+    public DocumentWrite patchPatientRecord(User patient, JsonNode patch, boolean mergePatch, String ifMatch) {
+        return documentWrites.submit(documentRecordId(patient), new DocumentEdit(ifMatch, current -> {
+            JsonNode patched = mergePatch
+                    ? JsonPatches.applyMergePatch(current, patch)
+                    : JsonPatches.applyJsonPatch(current, patch);
+
+            if (!(patched instanceof ObjectNode patchedObject)) {
+                throw new PatchFailedException(HttpStatus.UNPROCESSABLE_ENTITY, "Patient record must remain an object");
+            }
+            for (String field : PROTECTED_FIELDS) {
+                if (!current.at(field).equals(patched.at(field))) {
+                    throw new PatchFailedException(HttpStatus.UNPROCESSABLE_ENTITY, "Field " + field + " cannot be modified");
+                }
+            }
+            return patchedObject;
+        }));
     }
 
     @Transactional
@@ -113,151 +256,253 @@ public class PatientRecordService {
         User patientUser = userRepository.findById(patientId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient not found"));
 
-        PatientRecord record = patientRecordRepository
+        PatientRecord record = normalize(patientRecordRepository
                 .findByUser(patientUser)
-                .orElseGet(() -> createEntityForPatient(patientUser, doctor));
+                .orElseGet(() -> createEntityForPatient(patientUser, doctor)));
 
         InventoryItem inventoryItem = inventoryItemRepository
                 .findById(request.getInventoryItemId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Selected pharmacy item not found"));
 
-        if (inventoryItem.getQuantity() <= 0) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Selected pharmacy is out of stock");
-        }
-
         if (!inventoryItem.getName().equalsIgnoreCase(request.getName())) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Selected pharmacy does not carry this medicine");
         }
 
-        Pharmacy pharmacy = inventoryItem.getPharmacy();
+        // The quantity read above may already be stale; only the conditional reservation decides.
+        if (stockReservationService.reserve(inventoryItem.getId(), 1) == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Selected pharmacy is out of stock");
+        }
 
-        inventoryItem.setQuantity(inventoryItem.getQuantity() - 1);
-        inventoryItem.setLowStock(isLowStock(inventoryItem.getQuantity()));
-        inventoryItemRepository.save(inventoryItem);
+        Delivery savedDelivery = deliveryRepository.save(newDelivery(patientUser, request, inventoryItem));
+        stockReservationService.placeHolds(Map.of(savedDelivery.getId(), inventoryItem.getId()));
+        Prescription prescription = prescriptionService.add(record, medicineJson(request, inventoryItem, savedDelivery));
+        finishAssignment(record, doctor, List.of(prescription));
 
-        Delivery delivery = new Delivery();
-        delivery.setPharmacy(pharmacy);
-        delivery.setPatientName(patientUser.getName());
-        delivery.setMedicineName(request.getName());
-        delivery.setStatus("pending");
-        delivery.setPrescribedAt(LocalDateTime.now());
-        Delivery savedDelivery = deliveryRepository.save(delivery);
-
-        ObjectNode data = parseObject(record.getDataJson());
-        ArrayNode medicines = data.withArray("medicines");
+        return assemble(record);
+    }
 
-        ObjectNode medicine = objectMapper.createObjectNode();
-        medicine.put("id", UUID.randomUUID().toString());
-        medicine.put("name", request.getName());
-        String dosage = request.getDosage();
-        if (dosage == null || dosage.isBlank()) {
-            dosage = inventoryItem.getDosage();
-        }
-        medicine.put("dosage", dosage == null ? "" : dosage);
-        medicine.put("type", request.getType() == null ? "Tablet" : request.getType());
-        medicine.put("instructions", request.getInstructions() == null ? "As advised" : request.getInstructions());
-        medicine.put("deliveryStatus", "pending");
-        medicine.put("prescribedAt", LocalDateTime.now().toString());
-        medicine.put("pharmacyId", pharmacy.getId());
-        medicine.put("pharmacyName", pharmacy.getPharmacyName());
-        medicine.put("pharmacyLocation", pharmacy.getLocation());
-        medicine.put("inventoryItemId", inventoryItem.getId());
-        medicine.put("deliveryId", savedDelivery.getId());
-        if (inventoryItem.getPrice() != null) {
-            medicine.put("price", inventoryItem.getPrice());
-        } else {
-            medicine.putNull("price");
+    // A whole prescription in one transaction and one record write. Items the selected pharmacy
+    // cannot fill are reported as rejected and the rest are assigned.
+    @Transactional
+    public BulkMedicineAssignmentResponseDTO assignMedicines(User doctor, Long patientId, List<AssignMedicineRequestDTO> requests) {
+        if (doctor.getRole() != Role.DOCTOR) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only doctor can assign medicines");
         }
 
-        ArrayNode schedule = medicine.putArray("schedule");
-        for (String time : request.getScheduleTimes()) {
-            ObjectNode slot = schedule.addObject();
-            slot.put("time", time);
-            slot.put("status", "pending");
-            slot.putNull("takenAt");
-        }
+        User patientUser = userRepository.findById(patientId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient not found"));
 
-        medicines.add(medicine);
+        PatientRecord record = normalize(patientRecordRepository
+                .findByUser(patientUser)
+                .orElseGet(() -> createEntityForPatient(patientUser, doctor)));
+
+        Map<Long, InventoryItem> items = new HashMap<>();
+        inventoryItemRepository.findAllById(requests.stream().map(AssignMedicineRequestDTO::getInventoryItemId).distinct().toList())
+                .forEach(item -> items.put(item.getId(), item));
+
+        MedicineAssignmentResultDTO[] results = new MedicineAssignmentResultDTO[requests.size()];
+        List<Integer> candidates = new ArrayList<>();
+        Map<Long, Integer> wanted = new TreeMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            AssignMedicineRequestDTO request = requests.get(i);
+            InventoryItem item = items.get(request.getInventoryItemId());
+            String error = null;
+            if (item == null) {
+                error = "Selected pharmacy item not found";
+            } else if (!item.getName().equalsIgnoreCase(request.getName())) {
+                error = "Selected pharmacy does not carry this medicine";
+            }
+            if (error != null) {
+                results[i] = new MedicineAssignmentResultDTO(i, request.getName(), "rejected", null, error);
+                continue;
+            }
+            candidates.add(i);
+            wanted.merge(item.getId(), 1, Integer::sum);
+        }
 
-        data.put("doctorAssignedId", doctor.getId());
-        record.setAssignedDoctor(doctor);
-        record.setDataJson(data.toString());
-        patientRecordRepository.save(record);
+        // Items are taken in id order so two prescriptions sharing items cannot deadlock; repeats
+        // of one item past what is left are rejected from the end of the request.
+        Map<Long, Integer> granted = new HashMap<>();
+        wanted.forEach((itemId, count) -> granted.put(itemId, stockReservationService.reserve(itemId, count)));
+        List<Integer> accepted = new ArrayList<>();
+        for (int i : candidates) {
+            AssignMedicineRequestDTO request = requests.get(i);
+            if (granted.merge(request.getInventoryItemId(), -1, Integer::sum) >= 0) {
+                accepted.add(i);
+            } else {
+                results[i] = new MedicineAssignmentResultDTO(i, request.getName(), "rejected", null, "Selected pharmacy is out of stock");
+            }
+        }
+        if (accepted.isEmpty()) {
+            return new BulkMedicineAssignmentResponseDTO(assemble(record), List.of(results));
+        }
 
-        return data;
+        List<Delivery> deliveries = deliveryRepository.saveAll(accepted.stream()
+                .map(i -> newDelivery(patientUser, requests.get(i), items.get(requests.get(i).getInventoryItemId())))
+                .toList());
+        Map<Long, Long> holds = new HashMap<>();
+        List<ObjectNode> medicines = new ArrayList<>();
+        for (int n = 0; n < accepted.size(); n++) {
+            AssignMedicineRequestDTO request = requests.get(accepted.get(n));
+            holds.put(deliveries.get(n).getId(), request.getInventoryItemId());
+            medicines.add(medicineJson(request, items.get(request.getInventoryItemId()), deliveries.get(n)));
+        }
+        stockReservationService.placeHolds(holds);
+        List<Prescription> prescriptions = prescriptionService.addAll(record, medicines);
+        finishAssignment(record, doctor, prescriptions);
+
+        for (int n = 0; n < accepted.size(); n++) {
+            int i = accepted.get(n);
+            results[i] = new MedicineAssignmentResultDTO(
+                    i, requests.get(i).getName(), "assigned", prescriptions.get(n).getMedicineId(), null);
+        }
+        return new BulkMedicineAssignmentResponseDTO(assemble(record), List.of(results));
     }
 
+    @Transactional
     public JsonNode updateMedicineStatus(User patient, MedicineStatusUpdateDTO request) {
-        PatientRecord record = patientRecordRepository
+        PatientRecord record = normalize(patientRecordRepository
                 .findByUser(patient)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found")));
 
-        ObjectNode data = parseObject(record.getDataJson());
-        ArrayNode medicines = data.withArray("medicines");
         String status = request.getStatus();
-
-        for (JsonNode medNode : medicines) {
-            if (!medNode.path("id").asText().equals(request.getMedicineId())) {
-                continue;
-            }
-            ArrayNode schedule = ((ObjectNode) medNode).withArray("schedule");
-            for (JsonNode slotNode : schedule) {
-                if (!slotNode.path("time").asText().equals(request.getTime())) {
-                    continue;
-                }
-                ObjectNode slot = (ObjectNode) slotNode;
-                slot.put("status", status);
-                if (request.getReason() != null) {
-                    slot.put("reason", request.getReason());
-                }
-                if (!"missed".equalsIgnoreCase(status)) {
-                    slot.put("takenAt", LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm")));
-                } else {
-                    slot.putNull("takenAt");
-                }
+        String takenAt = "missed".equalsIgnoreCase(status)
+                ? null
+                : LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm"));
+
+        Optional<DoseSlot> slot = prescriptionService.findByMedicineId(record, request.getMedicineId())
+                .flatMap(prescription -> prescription.getSlots().stream()
+                        .filter(candidate -> candidate.getTime().equals(request.getTime()))
+                        .findFirst());
+        if (slot.isPresent()) {
+            AdherenceService.Owner owner = ownerOf(record);
+            String initialStatus = slot.get().getStatus();
+            LocalDate slotDate = slot.get().getSlotDate();
+            LocalDateTime now = LocalDateTime.now();
+            if (slotDate != null && slotDate.isBefore(now.toLocalDate())) {
+                // the nightly rollover has not reached this record yet
+                doseRolloverJob.rollOver(record.getId(), now.toLocalDate());
+                initialStatus = "pending";
+                slotDate = now.toLocalDate();
             }
+            // Touching first locks the record row, so concurrent updates read the previous status in turn.
+            patientRecordRepository.touch(record.getId(), now);
+            LocalDate day = slotDate;
+            Optional<MedicationEvent> previous = medicationEventService
+                    .lastDoseStatus(record, request.getMedicineId(), request.getTime())
+                    // statuses from an earlier day are in dose_history now
+                    .filter(event -> day == null || !event.getOccurredAt().toLocalDate().isBefore(day));
+            medicationEventService.recordDoseStatus(record, patient, request.getMedicineId(), request.getTime(),
+                    status, takenAt, request.getReason());
+            adherenceService.recordStatusChange(
+                    owner,
+                    previous.map(MedicationEvent::getStatus).orElse(initialStatus),
+                    previous.map(MedicationEvent::getOccurredAt).orElse(null),
+                    status,
+                    now
+            );
+            doseReminderScheduler.doseRecorded(record.getId(), request.getMedicineId(), request.getTime());
         }
-
-        record.setDataJson(data.toString());
-        patientRecordRepository.save(record);
-        return data;
+        return assemble(record);
     }
 
     @Transactional
     public JsonNode updateDeliveryStatus(User patient, String medicineId, String status) {
-        PatientRecord record = patientRecordRepository
+        PatientRecord record = normalize(patientRecordRepository
                 .findByUser(patient)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
-
-        ObjectNode data = parseObject(record.getDataJson());
-        ArrayNode medicines = data.withArray("medicines");
-
-        for (JsonNode medNode : medicines) {
-            if (!medNode.path("id").asText().equals(medicineId)) {
-                continue;
-            }
-            ObjectNode medObject = (ObjectNode) medNode;
-            medObject.put("deliveryStatus", status);
-            if ("delivered".equalsIgnoreCase(status)) {
-                medObject.put("deliveredAt", LocalDateTime.now().toString());
-            }
-
-            long deliveryId = medObject.path("deliveryId").asLong(-1);
-            if (deliveryId > 0) {
-                deliveryRepository.findById(deliveryId).ifPresent(delivery -> {
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found")));
+
+        String deliveredAt = "delivered".equalsIgnoreCase(status) ? LocalDateTime.now().toString() : null;
+        Optional<Prescription> prescription = prescriptionService.findByMedicineId(record, medicineId);
+        prescription
+                .map(Prescription::getDeliveryId)
+                .flatMap(deliveryRepository::findById)
+                .ifPresent(delivery -> {
                     delivery.setStatus(status);
                     deliveryRepository.save(delivery);
+                    stockReservationService.deliveryStatusChanged(delivery.getId(), status);
                 });
-            }
-        }
 
-        record.setDataJson(data.toString());
-        patientRecordRepository.save(record);
-        return data;
+        if (prescription.isPresent()) {
+            medicationEventService.recordDeliveryStatus(record, patient, medicineId, status, deliveredAt);
+            patientRecordRepository.touch(record.getId(), LocalDateTime.now());
+        }
+        return assemble(record);
     }
 
+    // The doctor ends a course; the archiver moves it out of the record on its next sweep.
     @Transactional
+    public JsonNode completeMedicine(User doctor, Long patientId, String medicineId) {
+        if (doctor.getRole() != Role.DOCTOR) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only doctor can complete medicines");
+        }
+        PatientRecord record = normalize(userRepository.findById(patientId)
+                .flatMap(patientRecordRepository::findByUser)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found")));
+        Prescription prescription = prescriptionService.findByMedicineId(record, medicineId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Medicine not found"));
+        // read before the updates below clear the persistence context
+        List<DoseReminder.SlotKey> reminders = prescription.getSlots().stream()
+                .map(slot -> new DoseReminder.SlotKey(record.getId(), medicineId, slot.getTime()))
+                .toList();
+
+        patientRecordRepository.touch(record.getId(), LocalDateTime.now());
+        if (prescriptionRepository.markCompleted(prescription.getId(), LocalDateTime.now()) == 1) {
+            medicationEventService.recordPrescriptionCompleted(record, doctor, prescription);
+            doseReminderScheduler.slotsRemoved(reminders);
+        }
+        return assemble(patientRecordRepository.findById(record.getId()).orElseThrow());
+    }
+
+    @Transactional(readOnly = true)
+    public DocumentPage medicineHistory(User viewer, Long patientId, String cursor, Integer limit) {
+        checkCanView(viewer, patientId);
+        PatientRecord record = userRepository.findById(patientId)
+                .flatMap(patientRecordRepository::findByUser)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
+        long beforeId = decodeArchiveCursor(cursor);
+        int size = pageSize(limit);
+        List<ArchivedPrescription> archived = archivedPrescriptionRepository.findPageByRecordId(record.getId(), beforeId, Limit.of(size));
+        String nextCursor = archived.size() == size
+                ? Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        String.valueOf(archived.get(archived.size() - 1).getId()).getBytes(StandardCharsets.UTF_8))
+                : null;
+        return new DocumentPage(archived.stream().map(entry -> new RawValue(entry.getDocumentJson())).toList(), nextCursor);
+    }
+
+    @Transactional(readOnly = true)
+    public AdherenceStatsDTO patientAdherence(User viewer, Long patientId, String bucket, LocalDate from, LocalDate to) {
+        checkCanView(viewer, patientId);
+        return adherenceService.stats(AdherenceScope.PATIENT, patientId, bucket, from, to);
+    }
+
+    private void checkCanView(User viewer, Long patientId) {
+        if (viewer.getRole() == Role.PATIENT && !viewer.getId().equals(patientId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Cannot view another patient");
+        }
+        if (viewer.getRole() != Role.PATIENT) {
+            PatientRecord record = userRepository.findById(patientId)
+                    .flatMap(patientRecordRepository::findByUser)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
+            boolean allowed = viewer.getRole() == Role.DOCTOR
+                    ? record.getAssignedDoctor() != null && record.getAssignedDoctor().getId().equals(viewer.getId())
+                    : viewer.getRole() == Role.ADMIN && viewer.getHospital() != null
+                    && record.getUser().getHospital() != null
+                    && viewer.getHospital().getId().equals(record.getUser().getHospital().getId());
+            if (!allowed) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Patient is not under your care");
+            }
+        }
+    }
+
+    // No If-Match here: a rating adds to the running totals rather than replacing what the patient
+    // read, and the patient is never served the profile's ETag. A racing rating fails on the
+    // version and is retried on top of the other one.
     public JsonNode rateDoctor(User patient, DoctorRatingRequestDTO request) {
+        return optimisticRetry.execute(() -> addRating(patient, request));
+    }
+
+    private JsonNode addRating(User patient, DoctorRatingRequestDTO request) {
         PatientRecord record = patientRecordRepository
                 .findByUser(patient)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
@@ -296,6 +541,7 @@ public class PatientRecordService {
 
         profile.setProfileJson(data.toString());
         doctorProfileRepository.save(profile);
+        documentCache.invalidate(DocumentCache.DOCTOR_PROFILE, profile.getId());
 
         return data;
     }
@@ -305,7 +551,240 @@ public class PatientRecordService {
         record.setUser(patient);
         record.setAssignedDoctor(doctor);
         record.setDataJson(buildPatientTemplate(patient, doctor).toString());
-        return patientRecordRepository.save(record);
+        record.setMedicinesNormalized(true);
+        return save(record);
+    }
+
+    // Moves medicines still embedded in a legacy document into the prescription tables, and
+    // rewrites documents whose placeholder is not yet the trailing key. Only write paths call this;
+    // reads serve a legacy document as stored.
+    private PatientRecord normalize(PatientRecord record) {
+        if (record.isMedicinesNormalized() && hasTrailingPlaceholder(record.getDataJson())) {
+            return record;
+        }
+        ObjectNode data = parseObject(record.getDataJson());
+        // Only the transaction that flips the flag imports, so concurrent first reads cannot migrate twice.
+        if (!record.isMedicinesNormalized()
+                && patientRecordRepository.claimNormalization(record.getId()) == 1
+                && data.get("medicines") instanceof ArrayNode medicines && !medicines.isEmpty()) {
+            List<Prescription> imported = prescriptionService.importLegacy(record, medicines);
+            adherenceService.recordSlotsAdded(ownerOf(record), slotStatuses(imported));
+            doseReminderScheduler.prescriptionsAdded(record, imported);
+        }
+        storeDocument(record, data);
+        record.setMedicinesNormalized(true);
+        return save(record);
+    }
+
+    private Delivery newDelivery(User patient, AssignMedicineRequestDTO request, InventoryItem inventoryItem) {
+        Delivery delivery = new Delivery();
+        delivery.setPharmacy(inventoryItem.getPharmacy());
+        delivery.setPatientName(patient.getName());
+        delivery.setMedicineName(request.getName());
+        delivery.setStatus("pending");
+        delivery.setPrescribedAt(LocalDateTime.now());
+        return delivery;
+    }
+
+    private ObjectNode medicineJson(AssignMedicineRequestDTO request, InventoryItem inventoryItem, Delivery delivery) {
+        Pharmacy pharmacy = inventoryItem.getPharmacy();
+        ObjectNode medicine = objectMapper.createObjectNode();
+        medicine.put("id", UUID.randomUUID().toString());
+        medicine.put("name", request.getName());
+        String dosage = request.getDosage();
+        if (dosage == null || dosage.isBlank()) {
+            dosage = inventoryItem.getDosage();
+        }
+        medicine.put("dosage", dosage == null ? "" : dosage);
+        medicine.put("type", request.getType() == null ? "Tablet" : request.getType());
+        medicine.put("instructions", request.getInstructions() == null ? "As advised" : request.getInstructions());
+        medicine.put("deliveryStatus", "pending");
+        medicine.put("prescribedAt", LocalDateTime.now().toString());
+        medicine.put("pharmacyId", pharmacy.getId());
+        medicine.put("pharmacyName", pharmacy.getPharmacyName());
+        medicine.put("pharmacyLocation", pharmacy.getLocation());
+        medicine.put("inventoryItemId", inventoryItem.getId());
+        medicine.put("deliveryId", delivery.getId());
+        if (inventoryItem.getPrice() != null) {
+            medicine.put("price", inventoryItem.getPrice());
+        } else {
+            medicine.putNull("price");
+        }
+        if (request.getDurationDays() != null) {
+            medicine.put("endsOn", LocalDate.now().plusDays(request.getDurationDays() - 1).toString());
+        }
+
+        ArrayNode schedule = medicine.putArray("schedule");
+        for (String time : request.getScheduleTimes()) {
+            ObjectNode slot = schedule.addObject();
+            slot.put("time", time);
+            slot.put("status", "pending");
+            slot.putNull("takenAt");
+        }
+        return medicine;
+    }
+
+    // Everything after the prescription rows exist: events, doctor assignment, counters, reminders
+    // and the single write of the record.
+    private void finishAssignment(PatientRecord record, User doctor, List<Prescription> prescriptions) {
+        // Lock the record and re-read the document under the lock, so a document edit that
+        // committed meanwhile is kept; the lock comes before the counters like everywhere else.
+        entityManager.flush();
+        entityManager.refresh(record, LockModeType.PESSIMISTIC_WRITE);
+
+        for (Prescription prescription : prescriptions) {
+            medicationEventService.recordPrescriptionAdded(record, doctor, prescription);
+        }
+
+        Long previousDoctorId = record.getAssignedDoctor() == null ? null : record.getAssignedDoctor().getId();
+        adherenceService.recordDoctorChange(record.getUser().getId(), previousDoctorId, doctor.getId());
+
+        ObjectNode data = parseObject(record.getDataJson());
+        data.put("doctorAssignedId", doctor.getId());
+        record.setAssignedDoctor(doctor);
+        adherenceService.recordSlotsAdded(ownerOf(record), slotStatuses(prescriptions));
+        doseReminderScheduler.prescriptionsAdded(record, prescriptions);
+        storeDocument(record, data);
+        save(record);
+    }
+
+    private Long documentRecordId(User patient) {
+        return optimisticRetry.execute(() -> normalize(patientRecordRepository
+                .findByUser(patient)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found")))
+                .getId());
+    }
+
+    // One cycle of the document write queue: lock the record, parse the document once, apply the
+    // queued edits in order and write the result once. An edit that fails is skipped and reported
+    // to its caller alone; each caller gets the document as it stood after its own edit, and the last
+    // applied edit also gets the ETag of the stored version. A conditional edit only applies to the
+    // version it names, so it fails once an earlier edit in the batch landed.
+    private List<CoalescingWriteQueue.Outcome<DocumentWrite>> writeDocument(Long recordId, List<DocumentEdit> edits) {
+        return transactionTemplate.execute(status -> {
+            PatientRecord record = patientRecordRepository.findById(recordId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Patient record not found"));
+            // the request may have read the record before; refresh so the edits start from the latest write
+            entityManager.refresh(record, LockModeType.PESSIMISTIC_WRITE);
+
+            // the same document GET serves, so an If-Match taken from it compares like for like
+            ObjectNode document = (ObjectNode) assemble(record);
+            JsonNode medicines = document.get("medicines");
+
+            String etag = ETags.of("patient", record.getId(), record.getVersion());
+            List<CoalescingWriteQueue.Outcome<DocumentWrite>> outcomes = new ArrayList<>();
+            int lastApplied = -1;
+            boolean changed = false;
+            for (DocumentEdit edit : edits) {
+                if (edit.ifMatch() != null && (changed || !ETags.matches(edit.ifMatch(), etag))) {
+                    outcomes.add(CoalescingWriteQueue.Outcome.failed(
+                            new PreconditionFailedException("Patient record has changed since it was read")));
+                    continue;
+                }
+                try {
+                    ObjectNode edited = edit.apply().apply(document.deepCopy());
+                    edited.set("medicines", medicines);
+                    document = edited;
+                    changed = true;
+                    lastApplied = outcomes.size();
+                    outcomes.add(CoalescingWriteQueue.Outcome.of(new DocumentWrite(edited, null)));
+                } catch (RuntimeException ex) {
+                    outcomes.add(CoalescingWriteQueue.Outcome.failed(ex));
+                }
+            }
+            if (changed) {
+                storeDocument(record, document.deepCopy());
+                save(record);
+                // the version is bumped on flush
+                entityManager.flush();
+                outcomes.set(lastApplied, CoalescingWriteQueue.Outcome.of(new DocumentWrite(document,
+                        ETags.of("patient", record.getId(), record.getVersion()))));
+            }
+            return outcomes;
+        });
+    }
+
+    private AdherenceService.Owner ownerOf(PatientRecord record) {
+        User patient = record.getUser();
+        return new AdherenceService.Owner(
+                patient.getId(),
+                record.getAssignedDoctor() == null ? null : record.getAssignedDoctor().getId(),
+                patient.getHospital() == null ? null : patient.getHospital().getId()
+        );
+    }
+
+    private List<String> slotStatuses(List<Prescription> prescriptions) {
+        return prescriptions.stream()
+                .flatMap(prescription -> prescription.getSlots().stream())
+                .map(DoseSlot::getStatus)
+                .toList();
+    }
+
+    // Stored documents always end with an empty "medicines" array, so list reads can splice the
+    // prescriptions in as raw text instead of parsing the document.
+    private void storeDocument(PatientRecord record, ObjectNode data) {
+        data.remove("medicines");
+        data.putArray("medicines");
+        record.setDataJson(data.toString());
+    }
+
+    private boolean hasTrailingPlaceholder(String json) {
+        int start = json.length() - MEDICINES_PLACEHOLDER.length() - 1;
+        return start >= 0
+                && json.endsWith(MEDICINES_PLACEHOLDER)
+                && (json.charAt(start) == ',' || json.charAt(start) == '{');
+    }
+
+    private RawValue assembleRaw(PatientRecord record, ArrayNode medicines) {
+        String json = record.getDataJson();
+        if (!hasTrailingPlaceholder(json)) {
+            return new RawValue(withMedicines(record, medicines).toString());
+        }
+        int splitAt = json.length() - "[]}".length();
+        return new RawValue(new StringBuilder(json.length() + 256)
+                .append(json, 0, splitAt)
+                .append(medicines)
+                .append('}')
+                .toString());
+    }
+
+    private JsonNode assemble(PatientRecord record) {
+        if (!record.isMedicinesNormalized()) {
+            return withMedicines(record, null);
+        }
+        return withMedicines(record, prescriptionService.medicinesFor(record));
+    }
+
+    private List<RawValue> assembleAll(List<PatientRecord> records) {
+        Map<Long, ArrayNode> medicines = prescriptionService.medicinesFor(records.stream()
+                .filter(PatientRecord::isMedicinesNormalized)
+                .map(PatientRecord::getId)
+                .toList());
+        return records.stream()
+                .map(record -> record.isMedicinesNormalized()
+                        ? assembleRaw(record, medicines.getOrDefault(record.getId(), objectMapper.createArrayNode()))
+                        : new RawValue(record.getDataJson()))
+                .toList();
+    }
+
+    // A null medicines keeps the array the document carries (legacy records that are not migrated yet).
+    private JsonNode withMedicines(PatientRecord record, ArrayNode medicines) {
+        JsonNode cached = documentCache.get(
+                DocumentCache.PATIENT_RECORD, record.getId(), record.getUpdatedAt(), record.getDataJson(), this::parse);
+        ObjectNode data = cached instanceof ObjectNode cachedObject ? cachedObject : objectMapper.createObjectNode();
+        if (medicines != null) {
+            data.set("medicines", medicines);
+        }
+        return data;
+    }
+
+    private PatientRecord save(PatientRecord record) {
+        if (record.getId() != null) {
+            documentCache.invalidate(DocumentCache.PATIENT_RECORD, record.getId());
+        }
+        PatientRecord saved = patientRecordRepository.save(record);
+        patientSearchIndex.recordsChanged(List.of(saved.getId()));
+        return saved;
     }
 
     private ObjectNode buildPatientTemplate(User patient, User doctor) {
@@ -341,8 +820,107 @@ public class PatientRecordService {
         return root;
     }
 
-    private boolean isLowStock(int quantity) {
-        return quantity < 50;
+    private DocumentPage toPage(List<PatientRecord> records, int size) {
+        String nextCursor = null;
+        if (records.size() == size) {
+            PatientRecord last = records.get(records.size() - 1);
+            nextCursor = encodeCursor(last.getUpdatedAt(), last.getId());
+        }
+        return new DocumentPage(assembleAll(records), nextCursor);
+    }
+
+    // Writes one document per line, clearing the persistence context after every batch so
+    // memory stays flat however many records the query returns.
+    private void writeNdjson(Stream<PatientRecord> records, OutputStream out) throws IOException {
+        List<PatientRecord> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+        Iterator<PatientRecord> iterator = records.iterator();
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() < STREAM_BATCH_SIZE && iterator.hasNext()) {
+                continue;
+            }
+            for (RawValue document : assembleAll(batch)) {
+                out.write(String.valueOf(document.rawValue()).getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+            }
+            out.flush();
+            batch.clear();
+            entityManager.flush();
+            entityManager.clear();
+        }
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    private record Cursor(LocalDateTime updatedAt, Long id) {
+    }
+
+    private String encodeCursor(LocalDateTime updatedAt, Long id) {
+        String value = updatedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long decodeArchiveCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (RuntimeException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    private Cursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return new Cursor(FIRST_PAGE, 0L);
+        }
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            return new Cursor(LocalDateTime.parse(parts[0]), Long.parseLong(parts[1]));
+        } catch (RuntimeException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    private String listETag(List<PatientRecordRepository.VersionView> versions) {
+        return ETags.ofCollection(versions.stream()
+                .map(version -> version.getId() + ":" + version.getVersion())
+                .toList());
+    }
+
+    // Equality for a document sent back as read: numbers compare by value and a null field equals
+    // a missing one (rows render some fields as null that a legacy document simply left out).
+    private static boolean sameContent(JsonNode a, JsonNode b) {
+        if (a == null || a.isNull() || a.isMissingNode()) {
+            return b == null || b.isNull() || b.isMissingNode();
+        }
+        if (a.isObject() && b.isObject()) {
+            Set<String> fields = new HashSet<>();
+            a.fieldNames().forEachRemaining(fields::add);
+            b.fieldNames().forEachRemaining(fields::add);
+            return fields.stream().allMatch(field -> sameContent(a.get(field), b.get(field)));
+        }
+        if (a.isArray() && b.isArray()) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (!sameContent(a.get(i), b.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return b != null && JsonPatches.equalsNumericAware(a, b);
     }
 
     private JsonNode parse(String json) {
@@ -360,4 +938,14 @@ public class PatientRecordService {
         }
         return objectMapper.createObjectNode();
     }
+
+    @Override
+    public String metricsName() {
+        return "patientDocumentWrites";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        return documentWrites.metrics();
+    }
 }
@@ -9,11 +9,13 @@ import com.ompt.Ompt.repository.DeliveryRepository;
 import com.ompt.Ompt.repository.InventoryItemRepository;
 import com.ompt.Ompt.repository.PharmacyRepository;
 import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.security.TokenEpochRegistry;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
@@ -28,6 +30,8 @@ public class PharmacyService {
     private final UserRepository userRepository;
     private final BCryptPasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    private final StockReservationService stockReservationService;
 
     public PharmacyProfileDTO register(PharmacyRegisterRequestDTO request) {
         String email = request.getEmail().toLowerCase();
@@ -56,17 +60,16 @@ public class PharmacyService {
             throw new BadCredentialsException("Invalid Credentials");
         }
 
-        String token = jwtUtil.generateToken(pharmacy.getEmail(), "PHARMACY");
+        String token = jwtUtil.generateToken(pharmacy);
         return new PharmacyAuthResponseDTO(token, toProfile(pharmacy));
     }
 
-    public PharmacyProfileDTO getProfile(String email) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    public PharmacyProfileDTO getProfile(Pharmacy pharmacy) {
         return toProfile(pharmacy);
     }
 
-    public PharmacyProfileDTO updateProfile(String email, PharmacyProfileUpdateDTO request) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    @Transactional
+    public PharmacyProfileDTO updateProfile(Pharmacy pharmacy, PharmacyProfileUpdateDTO request) {
         String newEmail = request.getEmail().toLowerCase();
 
         if (!newEmail.equals(pharmacy.getEmail())) {
@@ -75,6 +78,7 @@ public class PharmacyService {
                 throw new IllegalArgumentException("Email already registered");
             }
             pharmacy.setEmail(newEmail);
+            tokenEpochRegistry.revokeTokens(pharmacy);
         }
 
         pharmacy.setPharmacyName(request.getPharmacyName());
@@ -84,8 +88,7 @@ public class PharmacyService {
         return toProfile(saved);
     }
 
-    public List<InventoryItemResponseDTO> listInventory(String email) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    public List<InventoryItemResponseDTO> listInventory(Pharmacy pharmacy) {
         return inventoryItemRepository
                 .findByPharmacyOrderByIdDesc(pharmacy)
                 .stream()
@@ -93,19 +96,20 @@ public class PharmacyService {
                 .toList();
     }
 
+    // Quantities are available-to-promise: stock on the shelf minus what is held for deliveries.
     public List<PharmacyAvailabilityDTO> listAvailability(String medicineName) {
         if (medicineName == null || medicineName.isBlank()) {
             return List.of();
         }
 
         return inventoryItemRepository
-                .findByNameIgnoreCaseAndQuantityGreaterThan(medicineName.trim(), 0)
+                .findAvailableByName(medicineName.trim())
                 .stream()
                 .map(item -> new PharmacyAvailabilityDTO(
                         item.getId(),
                         item.getName(),
                         item.getDosage(),
-                        item.getQuantity(),
+                        item.getQuantity() - item.getReserved(),
                         item.getPrice(),
                         item.getPharmacy().getId(),
                         item.getPharmacy().getPharmacyName(),
@@ -114,8 +118,7 @@ public class PharmacyService {
                 .toList();
     }
 
-    public InventoryItemResponseDTO createInventoryItem(String email, InventoryItemRequestDTO request) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    public InventoryItemResponseDTO createInventoryItem(Pharmacy pharmacy, InventoryItemRequestDTO request) {
 
         InventoryItem item = new InventoryItem();
         item.setPharmacy(pharmacy);
@@ -130,25 +133,29 @@ public class PharmacyService {
         return toInventoryResponse(saved);
     }
 
-    public InventoryItemResponseDTO updateInventoryItem(String email, Long id, InventoryItemRequestDTO request) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    @Transactional
+    public InventoryItemResponseDTO updateInventoryItem(Pharmacy pharmacy, Long id, InventoryItemRequestDTO request) {
+        // Locked so no hold can be placed between the check and the write.
         InventoryItem item = inventoryItemRepository
-                .findByIdAndPharmacy(id, pharmacy)
+                .lockByIdAndPharmacy(id, pharmacy)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Item not found"));
+        if (request.getQuantity() < item.getReserved()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Quantity cannot be below the units held for deliveries: " + item.getReserved());
+        }
 
         item.setName(request.getName());
         item.setDosage(request.getDosage());
         item.setQuantity(request.getQuantity());
         item.setPrice(request.getPrice());
         item.setExpiry(request.getExpiry());
-        item.setLowStock(isLowStock(request.getQuantity()));
+        item.setLowStock(isLowStock(request.getQuantity() - item.getReserved()));
 
         InventoryItem saved = inventoryItemRepository.save(item);
         return toInventoryResponse(saved);
     }
 
-    public void deleteInventoryItem(String email, Long id) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    public void deleteInventoryItem(Pharmacy pharmacy, Long id) {
         InventoryItem item = inventoryItemRepository
                 .findByIdAndPharmacy(id, pharmacy)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Item not found"));
@@ -156,8 +163,7 @@ public class PharmacyService {
         inventoryItemRepository.delete(item);
     }
 
-    public List<DeliveryResponseDTO> listDeliveries(String email) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    public List<DeliveryResponseDTO> listDeliveries(Pharmacy pharmacy) {
         return deliveryRepository
                 .findByPharmacyOrderByPrescribedAtDesc(pharmacy)
                 .stream()
@@ -165,8 +171,7 @@ public class PharmacyService {
                 .toList();
     }
 
-    public DeliveryResponseDTO createDelivery(String email, DeliveryRequestDTO request) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    public DeliveryResponseDTO createDelivery(Pharmacy pharmacy, DeliveryRequestDTO request) {
 
         Delivery delivery = new Delivery();
         delivery.setPharmacy(pharmacy);
@@ -184,25 +189,20 @@ public class PharmacyService {
         return toDeliveryResponse(saved);
     }
 
-    public DeliveryResponseDTO updateDeliveryStatus(String email, Long id, DeliveryStatusUpdateDTO request) {
-        Pharmacy pharmacy = getPharmacyByEmail(email);
+    @Transactional
+    public DeliveryResponseDTO updateDeliveryStatus(Pharmacy pharmacy, Long id, DeliveryStatusUpdateDTO request) {
         Delivery delivery = deliveryRepository
                 .findByIdAndPharmacy(id, pharmacy)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Delivery not found"));
 
         delivery.setStatus(request.getStatus());
         Delivery saved = deliveryRepository.save(delivery);
+        stockReservationService.deliveryStatusChanged(saved.getId(), request.getStatus());
         return toDeliveryResponse(saved);
     }
 
-    private Pharmacy getPharmacyByEmail(String email) {
-        return pharmacyRepository
-                .findByEmailIgnoreCase(email)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Pharmacy not found"));
-    }
-
     private boolean isLowStock(Integer quantity) {
-        return quantity != null && quantity < 50;
+        return quantity != null && quantity < StockReservationService.LOW_STOCK_BELOW;
     }
 
     private PharmacyProfileDTO toProfile(Pharmacy pharmacy) {
@@ -0,0 +1,219 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.ArchivedPrescription;
+import com.ompt.Ompt.model.DoseHistory;
+import com.ompt.Ompt.model.DoseSlot;
+import com.ompt.Ompt.model.PatientRecord;
+import com.ompt.Ompt.model.Prescription;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.reminder.DoseReminder;
+import com.ompt.Ompt.reminder.DoseReminderScheduler;
+import com.ompt.Ompt.repository.ArchivedPrescriptionRepository;
+import com.ompt.Ompt.repository.DoseHistoryRepository;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import com.ompt.Ompt.repository.PrescriptionRepository;
+import com.ompt.Ompt.search.PatientSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Moves finished prescriptions (completed by the doctor, or delivered with their last day passed)
+// out of the prescriptions table into prescription_archive, so a record only ever carries its
+// current courses. Their dose outcomes go to dose_history first. Works in batches of batch-size
+// prescriptions, one transaction each, and at most max-batches per run.
+@Slf4j
+@Component
+public class PrescriptionArchiver implements MetricsSource {
+
+    private final PrescriptionRepository prescriptionRepository;
+    private final ArchivedPrescriptionRepository archivedPrescriptionRepository;
+    private final DoseHistoryRepository doseHistoryRepository;
+    private final PatientRecordRepository patientRecordRepository;
+    private final PrescriptionService prescriptionService;
+    private final MedicationEventCompactor compactor;
+    private final AdherenceService adherenceService;
+    private final DoseReminderScheduler doseReminderScheduler;
+    private final PatientSearchIndex patientSearchIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatches;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private final AtomicLong archived = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile long lastRunMs;
+
+    public PrescriptionArchiver(
+            PrescriptionRepository prescriptionRepository,
+            ArchivedPrescriptionRepository archivedPrescriptionRepository,
+            DoseHistoryRepository doseHistoryRepository,
+            PatientRecordRepository patientRecordRepository,
+            PrescriptionService prescriptionService,
+            MedicationEventCompactor compactor,
+            AdherenceService adherenceService,
+            DoseReminderScheduler doseReminderScheduler,
+            PatientSearchIndex patientSearchIndex,
+            TransactionTemplate transactionTemplate,
+            @Value("${archive.batch-size:200}") int batchSize,
+            @Value("${archive.max-batches:50}") int maxBatches
+    ) {
+        this.prescriptionRepository = prescriptionRepository;
+        this.archivedPrescriptionRepository = archivedPrescriptionRepository;
+        this.doseHistoryRepository = doseHistoryRepository;
+        this.patientRecordRepository = patientRecordRepository;
+        this.prescriptionService = prescriptionService;
+        this.compactor = compactor;
+        this.adherenceService = adherenceService;
+        this.doseReminderScheduler = doseReminderScheduler;
+        this.patientSearchIndex = patientSearchIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    @Scheduled(fixedDelayString = "${archive.interval-ms:3600000}", initialDelayString = "${archive.initial-delay-ms:120000}")
+    public void sweep() {
+        long started = System.nanoTime();
+        runs.incrementAndGet();
+        try {
+            for (int batch = 0; batch < maxBatches; batch++) {
+                Integer candidates = transactionTemplate.execute(status -> archiveBatch(LocalDate.now()));
+                batches.incrementAndGet();
+                if (candidates == null || candidates < batchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException ex) {
+            failedRuns.incrementAndGet();
+            log.warn("Prescription archiving failed, retrying on the next run", ex);
+        } finally {
+            lastRunMs = (System.nanoTime() - started) / 1_000_000;
+        }
+    }
+
+    // Returns the number of candidates looked at, so the sweep knows whether more may be waiting.
+    private int archiveBatch(LocalDate today) {
+        List<PrescriptionRepository.ArchiveCandidateView> candidates =
+                prescriptionRepository.findArchivable(today, Limit.of(batchSize));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        // Lock the records as the status writers do, and fold in anything they recorded, before
+        // reading the rows that are about to move.
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> recordIds = new TreeSet<>();
+        candidates.forEach(candidate -> recordIds.add(candidate.getRecordId()));
+        patientRecordRepository.touchAll(recordIds, now);
+        compactor.compactRecords(recordIds);
+
+        List<Prescription> finished = new ArrayList<>();
+        List<ArchivedPrescription> entries = new ArrayList<>();
+        List<DoseHistory> history = new ArrayList<>();
+        List<AdherenceService.StatusChange> changes = new ArrayList<>();
+        List<DoseReminder.SlotKey> reminders = new ArrayList<>();
+        for (Prescription prescription : prescriptionRepository.findWithSlotsByIds(
+                candidates.stream().map(PrescriptionRepository.ArchiveCandidateView::getId).toList())) {
+            if (!isFinished(prescription, today)) {
+                // a delivery status folded in above took it back out of "delivered"
+                continue;
+            }
+            finished.add(prescription);
+            entries.add(toEntry(prescription, now));
+            AdherenceService.Owner owner = ownerOf(prescription.getRecord());
+            for (DoseSlot slot : prescription.getSlots()) {
+                reminders.add(new DoseReminder.SlotKey(prescription.getRecord().getId(), prescription.getMedicineId(), slot.getTime()));
+                boolean pending = "pending".equalsIgnoreCase(slot.getStatus());
+                boolean pastDay = slot.getSlotDate() != null && slot.getSlotDate().isBefore(today);
+                if (pending && !pastDay) {
+                    // today's dose of a finished course will not be taken; it leaves the totals
+                    changes.add(new AdherenceService.StatusChange(owner, "pending", null, null, now));
+                    continue;
+                }
+                if (pending) {
+                    changes.add(new AdherenceService.StatusChange(owner, "pending", null, "missed", slot.getSlotDate().atStartOfDay()));
+                }
+                history.add(toHistory(prescription, slot, pending ? "missed" : slot.getStatus()));
+            }
+        }
+
+        archivedPrescriptionRepository.saveAll(entries);
+        doseHistoryRepository.saveAll(history);
+        prescriptionRepository.deleteAll(finished);
+        adherenceService.recordStatusChanges(changes);
+        doseReminderScheduler.slotsRemoved(reminders);
+        // archived medicine names drop out of patient search
+        patientSearchIndex.recordsChanged(finished.stream().map(prescription -> prescription.getRecord().getId()).toList());
+        archived.addAndGet(finished.size());
+        return candidates.size();
+    }
+
+    private boolean isFinished(Prescription prescription, LocalDate today) {
+        return prescription.getCompletedAt() != null
+                || ("delivered".equals(prescription.getDeliveryStatus())
+                && prescription.getEndsOn() != null && prescription.getEndsOn().isBefore(today));
+    }
+
+    private ArchivedPrescription toEntry(Prescription prescription, LocalDateTime now) {
+        ObjectNode document = prescriptionService.toJson(prescription);
+        document.put("archivedAt", now.toString());
+        ArchivedPrescription entry = new ArchivedPrescription();
+        entry.setRecordId(prescription.getRecord().getId());
+        entry.setMedicineId(prescription.getMedicineId());
+        entry.setArchivedAt(now);
+        entry.setDocumentJson(document.toString());
+        return entry;
+    }
+
+    private DoseHistory toHistory(Prescription prescription, DoseSlot slot, String status) {
+        DoseHistory row = new DoseHistory();
+        row.setRecordId(prescription.getRecord().getId());
+        row.setMedicineId(prescription.getMedicineId());
+        row.setDoseDate(slot.getSlotDate() == null ? LocalDate.now() : slot.getSlotDate());
+        row.setTime(slot.getTime());
+        row.setStatus(status);
+        row.setTakenAt(slot.getTakenAt());
+        row.setReason(slot.getReason());
+        return row;
+    }
+
+    private AdherenceService.Owner ownerOf(PatientRecord record) {
+        User patient = record.getUser();
+        return new AdherenceService.Owner(
+                patient.getId(),
+                record.getAssignedDoctor() == null ? null : record.getAssignedDoctor().getId(),
+                patient.getHospital() == null ? null : patient.getHospital().getId()
+        );
+    }
+
+    @Override
+    public String metricsName() {
+        return "prescriptionArchive";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("runs", runs.get());
+        metrics.put("failedRuns", failedRuns.get());
+        metrics.put("batches", batches.get());
+        metrics.put("archived", archived.get());
+        metrics.put("lastRunMs", lastRunMs);
+        return metrics;
+    }
+}
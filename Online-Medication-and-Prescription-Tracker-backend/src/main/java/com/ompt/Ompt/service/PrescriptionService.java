@@ -0,0 +1,263 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ompt.Ompt.model.DoseSlot;
+import com.ompt.Ompt.model.MedicationEvent;
+import com.ompt.Ompt.model.MedicationEventType;
+import com.ompt.Ompt.model.PatientRecord;
+import com.ompt.Ompt.model.Prescription;
+import com.ompt.Ompt.repository.PrescriptionRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+@Service
+@AllArgsConstructor
+public class PrescriptionService {
+
+    private static final Set<String> MAPPED_FIELDS = Set.of(
+            "id", "name", "dosage", "type", "instructions", "deliveryStatus", "prescribedAt", "deliveredAt",
+            "pharmacyId", "pharmacyName", "pharmacyLocation", "inventoryItemId", "deliveryId", "price", "schedule",
+            "endsOn", "completedAt"
+    );
+
+    private final PrescriptionRepository prescriptionRepository;
+    private final MedicationEventService medicationEventService;
+    private final ObjectMapper objectMapper;
+
+    public ArrayNode medicinesFor(PatientRecord record) {
+        return medicinesFor(List.of(record.getId())).getOrDefault(record.getId(), objectMapper.createArrayNode());
+    }
+
+    public Map<Long, ArrayNode> medicinesFor(Collection<Long> recordIds) {
+        Map<Long, ArrayNode> byRecord = new HashMap<>();
+        if (recordIds.isEmpty()) {
+            return byRecord;
+        }
+        // Events are read before the rows: anything compacted in between is then seen in both,
+        // and the per-row watermark keeps it from being applied twice.
+        Map<String, List<MedicationEvent>> pending = new HashMap<>();
+        for (MedicationEvent event : medicationEventService.pendingFor(recordIds)) {
+            pending.computeIfAbsent(event.getRecordId() + "/" + event.getMedicineId(), key -> new ArrayList<>()).add(event);
+        }
+        for (Prescription prescription : prescriptionRepository.findWithSlotsByRecordIds(recordIds)) {
+            Long recordId = prescription.getRecord().getId();
+            List<MedicationEvent> events = pending.getOrDefault(recordId + "/" + prescription.getMedicineId(), List.of());
+            byRecord.computeIfAbsent(recordId, id -> objectMapper.createArrayNode())
+                    .add(toJson(prescription, events));
+        }
+        return byRecord;
+    }
+
+    public Prescription add(PatientRecord record, ObjectNode medicine) {
+        Prescription prescription = fromJson(record, medicine, prescriptionRepository.findMaxPosition(record.getId()) + 1);
+        return prescriptionRepository.save(prescription);
+    }
+
+    // Appends the medicines in order after the record's current ones.
+    public List<Prescription> addAll(PatientRecord record, List<ObjectNode> medicines) {
+        int position = prescriptionRepository.findMaxPosition(record.getId()) + 1;
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (ObjectNode medicine : medicines) {
+            prescriptions.add(fromJson(record, medicine, position++));
+        }
+        return prescriptionRepository.saveAll(prescriptions);
+    }
+
+    // Moves a legacy embedded medicines array into rows; the caller clears it from the document.
+    public List<Prescription> importLegacy(PatientRecord record, ArrayNode medicines) {
+        List<Prescription> prescriptions = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        int position = 0;
+        for (JsonNode medicine : medicines) {
+            if (medicine instanceof ObjectNode medicineObject) {
+                Prescription prescription = fromJson(record, medicineObject, position++);
+                if (!seenIds.add(prescription.getMedicineId())) {
+                    prescription.setMedicineId(UUID.randomUUID().toString());
+                }
+                prescriptions.add(prescription);
+            }
+        }
+        return prescriptionRepository.saveAll(prescriptions);
+    }
+
+    public Optional<Prescription> findByMedicineId(PatientRecord record, String medicineId) {
+        return prescriptionRepository.findByRecord_IdAndMedicineId(record.getId(), medicineId);
+    }
+
+    public ObjectNode toJson(Prescription prescription) {
+        return toJson(prescription, List.of());
+    }
+
+    // Renders the row with any not yet compacted events (in id order) applied on top.
+    public ObjectNode toJson(Prescription prescription, List<MedicationEvent> events) {
+        String deliveryStatus = prescription.getDeliveryStatus();
+        String deliveredAt = prescription.getDeliveredAt();
+        for (MedicationEvent event : events) {
+            if (event.getType() == MedicationEventType.DELIVERY_STATUS && isNewer(event, prescription.getLastEventId())) {
+                deliveryStatus = event.getStatus();
+                if (event.getDeliveredAt() != null) {
+                    deliveredAt = event.getDeliveredAt();
+                }
+            }
+        }
+
+        ObjectNode medicine = objectMapper.createObjectNode();
+        medicine.put("id", prescription.getMedicineId());
+        putIfPresent(medicine, "name", prescription.getName());
+        putIfPresent(medicine, "dosage", prescription.getDosage());
+        putIfPresent(medicine, "type", prescription.getType());
+        putIfPresent(medicine, "instructions", prescription.getInstructions());
+        putIfPresent(medicine, "deliveryStatus", deliveryStatus);
+        putIfPresent(medicine, "prescribedAt", prescription.getPrescribedAt());
+        if (prescription.getPharmacyId() != null) {
+            medicine.put("pharmacyId", prescription.getPharmacyId());
+        }
+        putIfPresent(medicine, "pharmacyName", prescription.getPharmacyName());
+        putIfPresent(medicine, "pharmacyLocation", prescription.getPharmacyLocation());
+        if (prescription.getInventoryItemId() != null) {
+            medicine.put("inventoryItemId", prescription.getInventoryItemId());
+        }
+        if (prescription.getDeliveryId() != null) {
+            medicine.put("deliveryId", prescription.getDeliveryId());
+        }
+        if (prescription.getPrice() != null) {
+            medicine.put("price", prescription.getPrice());
+        } else {
+            medicine.putNull("price");
+        }
+        if (prescription.getEndsOn() != null) {
+            medicine.put("endsOn", prescription.getEndsOn().toString());
+        }
+        if (prescription.getCompletedAt() != null) {
+            medicine.put("completedAt", prescription.getCompletedAt().toString());
+        }
+
+        ArrayNode schedule = medicine.putArray("schedule");
+        for (DoseSlot slot : prescription.getSlots()) {
+            String status = slot.getStatus();
+            String takenAt = slot.getTakenAt();
+            String reason = slot.getReason();
+            for (MedicationEvent event : events) {
+                if (event.getType() == MedicationEventType.DOSE_STATUS && isNewer(event, slot.getLastEventId())
+                        && slot.getTime().equals(event.getSlotTime())) {
+                    status = event.getStatus();
+                    takenAt = event.getTakenAt();
+                    if (event.getReason() != null) {
+                        reason = event.getReason();
+                    }
+                }
+            }
+
+            ObjectNode slotNode = schedule.addObject();
+            slotNode.put("time", slot.getTime());
+            slotNode.put("status", status);
+            if (takenAt != null) {
+                slotNode.put("takenAt", takenAt);
+            } else {
+                slotNode.putNull("takenAt");
+            }
+            putIfPresent(slotNode, "reason", reason);
+        }
+
+        putIfPresent(medicine, "deliveredAt", deliveredAt);
+        if (prescription.getExtraJson() != null) {
+            try {
+                JsonNode extra = objectMapper.readTree(prescription.getExtraJson());
+                if (extra instanceof ObjectNode extraObject) {
+                    medicine.setAll(extraObject);
+                }
+            } catch (Exception ignored) {
+                // unreadable extras are dropped rather than failing the whole document
+            }
+        }
+        return medicine;
+    }
+
+    private Prescription fromJson(PatientRecord record, ObjectNode medicine, int position) {
+        Prescription prescription = new Prescription();
+        prescription.setRecord(record);
+        prescription.setPosition(position);
+        String medicineId = medicine.path("id").asText("");
+        prescription.setMedicineId(medicineId.isBlank() ? UUID.randomUUID().toString() : medicineId);
+        prescription.setName(text(medicine, "name"));
+        prescription.setDosage(text(medicine, "dosage"));
+        prescription.setType(text(medicine, "type"));
+        prescription.setInstructions(text(medicine, "instructions"));
+        prescription.setDeliveryStatus(text(medicine, "deliveryStatus"));
+        prescription.setPrescribedAt(text(medicine, "prescribedAt"));
+        prescription.setDeliveredAt(text(medicine, "deliveredAt"));
+        prescription.setPharmacyId(number(medicine, "pharmacyId"));
+        prescription.setPharmacyName(text(medicine, "pharmacyName"));
+        prescription.setPharmacyLocation(text(medicine, "pharmacyLocation"));
+        prescription.setInventoryItemId(number(medicine, "inventoryItemId"));
+        prescription.setDeliveryId(number(medicine, "deliveryId"));
+        JsonNode price = medicine.path("price");
+        prescription.setPrice(price.isNumber() ? price.asDouble() : null);
+        prescription.setEndsOn(date(medicine, "endsOn"));
+
+        int slotPosition = 0;
+        for (JsonNode slotNode : medicine.path("schedule")) {
+            DoseSlot slot = new DoseSlot();
+            slot.setPrescription(prescription);
+            slot.setPosition(slotPosition++);
+            slot.setTime(slotNode.path("time").asText(""));
+            slot.setStatus(slotNode.path("status").asText("pending"));
+            slot.setTakenAt(text(slotNode, "takenAt"));
+            slot.setReason(text(slotNode, "reason"));
+            prescription.getSlots().add(slot);
+        }
+
+        ObjectNode extra = objectMapper.createObjectNode();
+        for (Map.Entry<String, JsonNode> field : medicine.properties()) {
+            if (!MAPPED_FIELDS.contains(field.getKey())) {
+                extra.set(field.getKey(), field.getValue());
+            }
+        }
+        prescription.setExtraJson(extra.isEmpty() ? null : extra.toString());
+        return prescription;
+    }
+
+    private boolean isNewer(MedicationEvent event, Long lastEventId) {
+        return lastEventId == null || event.getId() > lastEventId;
+    }
+
+    private void putIfPresent(ObjectNode node, String field, String value) {
+        if (value != null) {
+            node.put(field, value);
+        }
+    }
+
+    private String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private LocalDate date(JsonNode node, String field) {
+        String value = text(node, field);
+        try {
+            return value == null ? null : LocalDate.parse(value);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+
+    private Long number(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value != null && value.canConvertToLong() ? value.asLong() : null;
+    }
+}
@@ -0,0 +1,105 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.UserRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+@Service
+@AllArgsConstructor
+public class ResetTokenService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    // ':' is not in the base64url alphabet, so a code's selector never collides with a link's.
+    private static final String CODE_SELECTOR_PREFIX = "code:";
+    private static final Pattern LEGACY_TOKEN = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+
+    // Token format is "<selector>.<verifier>": the selector is stored in an indexed column,
+    // only the hash of the verifier is kept.
+    public String issue(User user, Duration validity) {
+        String selector = randomToken(12);
+        String verifier = randomToken(24);
+        user.setResetTokenSelector(selector);
+        user.setResetTokenHash(passwordEncoder.encode(verifier));
+        user.setResetTokenExpiry(LocalDateTime.now().plus(validity));
+        return selector + "." + verifier;
+    }
+
+    // Six-digit codes are looked up by email, but still get a selector so they never join the
+    // selector-less rows that resolveLegacy has to scan.
+    public String issueCode(User user, Duration validity) {
+        String code = String.format("%06d", RANDOM.nextInt(1_000_000));
+        user.setResetTokenSelector(CODE_SELECTOR_PREFIX + randomToken(12));
+        user.setResetTokenHash(passwordEncoder.encode(code));
+        user.setResetTokenExpiry(LocalDateTime.now().plus(validity));
+        return code;
+    }
+
+    public User resolve(String token) {
+        if (token == null || token.isBlank()) {
+            throw invalidToken();
+        }
+
+        int separator = token.indexOf('.');
+        if (separator < 0) {
+            return resolveLegacy(token);
+        }
+
+        String selector = token.substring(0, separator);
+        String verifier = token.substring(separator + 1);
+        if (selector.startsWith(CODE_SELECTOR_PREFIX)) {
+            throw invalidToken();
+        }
+
+        User user = userRepository.findByResetTokenSelector(selector)
+                .orElseThrow(this::invalidToken);
+
+        if (user.getResetTokenHash() == null
+                || user.getResetTokenExpiry() == null
+                || user.getResetTokenExpiry().isBefore(LocalDateTime.now())
+                || !passwordEncoder.matches(verifier, user.getResetTokenHash())) {
+            throw invalidToken();
+        }
+        return user;
+    }
+
+    public void clear(User user) {
+        user.setResetTokenSelector(null);
+        user.setResetTokenHash(null);
+        user.setResetTokenExpiry(null);
+    }
+
+    // Links sent before selectors existed carry a bare UUID; they expire within a day of issue.
+    private User resolveLegacy(String token) {
+        if (!LEGACY_TOKEN.matcher(token).matches()) {
+            throw invalidToken();
+        }
+        return userRepository
+                .findByResetTokenSelectorIsNullAndResetTokenHashIsNotNullAndResetTokenExpiryAfter(LocalDateTime.now())
+                .stream()
+                .filter(u -> passwordEncoder.matches(token, u.getResetTokenHash()))
+                .findFirst()
+                .orElseThrow(this::invalidToken);
+    }
+
+    private IllegalStateException invalidToken() {
+        return new IllegalStateException("Invalid or Expired Token");
+    }
+
+    private static String randomToken(int bytes) {
+        byte[] buffer = new byte[bytes];
+        RANDOM.nextBytes(buffer);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer);
+    }
+}
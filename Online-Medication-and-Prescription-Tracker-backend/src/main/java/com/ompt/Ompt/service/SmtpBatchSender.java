@@ -0,0 +1,52 @@
+package com.ompt.Ompt.service;
+
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Sends messages in chunks; JavaMailSender opens one connection (STARTTLS + AUTH) per send call,
+// so each chunk shares a single authenticated SMTP session.
+public class SmtpBatchSender {
+
+    private final JavaMailSender mailSender;
+    private final int batchSize;
+
+    public SmtpBatchSender(JavaMailSender mailSender, int batchSize) {
+        this.mailSender = mailSender;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    // Returns one entry per message: null when it was accepted, otherwise the failure.
+    public List<Exception> send(List<SimpleMailMessage> messages) {
+        List<Exception> results = new ArrayList<>(messages.size());
+        for (int start = 0; start < messages.size(); start += batchSize) {
+            List<SimpleMailMessage> chunk = messages.subList(start, Math.min(start + batchSize, messages.size()));
+            results.addAll(sendChunk(chunk));
+        }
+        return results;
+    }
+
+    private List<Exception> sendChunk(List<SimpleMailMessage> chunk) {
+        Exception[] results = new Exception[chunk.size()];
+        try {
+            mailSender.send(chunk.toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException ex) {
+            Map<Object, Exception> failed = ex.getFailedMessages();
+            for (int i = 0; i < chunk.size(); i++) {
+                results[i] = failed.isEmpty() ? ex : failed.get(chunk.get(i));
+            }
+        } catch (Exception ex) {
+            Arrays.fill(results, ex);
+        }
+        return Arrays.asList(results);
+    }
+}
@@ -0,0 +1,184 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.metrics.MetricsSource;
+import com.ompt.Ompt.model.StockHold;
+import com.ompt.Ompt.model.StockHoldStatus;
+import com.ompt.Ompt.repository.InventoryItemRepository;
+import com.ompt.Ompt.repository.StockHoldRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Prescribing holds stock instead of selling it: the units stay on the shelf but are no longer on
+// offer until the delivery goes out (commit), is cancelled (release) or the hold runs out (expire).
+// Holds are settled with conditional status updates, so each one moves stock exactly once.
+// Lock order everywhere: the hold rows first, then the inventory rows in id order.
+@Slf4j
+@Service
+public class StockReservationService implements MetricsSource {
+
+    public static final int LOW_STOCK_BELOW = 50;
+    private static final String DELIVERED = "delivered";
+    private static final Set<String> RELEASING_STATUSES = Set.of("cancelled", "canceled", "rejected", "returned");
+
+    private final InventoryItemRepository inventoryItemRepository;
+    private final StockHoldRepository stockHoldRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long holdMinutes;
+    private final int sweepBatchSize;
+
+    private final AtomicLong held = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong shortOnCommit = new AtomicLong();
+    private volatile long lastSweepMs;
+
+    public StockReservationService(
+            InventoryItemRepository inventoryItemRepository,
+            StockHoldRepository stockHoldRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${stock-holds.hold-minutes:2880}") long holdMinutes,
+            @Value("${stock-holds.sweep-batch-size:500}") int sweepBatchSize
+    ) {
+        this.inventoryItemRepository = inventoryItemRepository;
+        this.stockHoldRepository = stockHoldRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.holdMinutes = holdMinutes;
+        this.sweepBatchSize = sweepBatchSize;
+    }
+
+    // Sets aside up to count units of an item and returns how many it got, fewer when concurrent
+    // prescriptions emptied the shelf first. Call inside the transaction that places the holds.
+    public int reserve(Long itemId, int count) {
+        int attempt = count;
+        while (attempt > 0 && inventoryItemRepository.reserveIfAvailable(itemId, attempt, LOW_STOCK_BELOW) == 0) {
+            attempt = Math.min(attempt - 1, inventoryItemRepository.findAvailableById(itemId).orElse(0));
+        }
+        return Math.max(attempt, 0);
+    }
+
+    // One unit per delivery, reserved beforehand with reserve(); keyed by delivery id.
+    public void placeHolds(Map<Long, Long> itemIdByDeliveryId) {
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(holdMinutes);
+        List<StockHold> holds = new ArrayList<>();
+        itemIdByDeliveryId.forEach((deliveryId, itemId) -> {
+            StockHold hold = new StockHold();
+            hold.setInventoryItemId(itemId);
+            hold.setDeliveryId(deliveryId);
+            hold.setQuantity(1);
+            hold.setExpiresAt(expiresAt);
+            holds.add(hold);
+        });
+        stockHoldRepository.saveAll(holds);
+        held.addAndGet(holds.size());
+    }
+
+    // Call inside the transaction that changes the delivery status. Deliveries prescribed before
+    // holds existed have none and are left alone.
+    public void deliveryStatusChanged(Long deliveryId, String status) {
+        if (deliveryId == null || status == null) {
+            return;
+        }
+        String normalized = status.trim().toLowerCase();
+        if (DELIVERED.equals(normalized)) {
+            stockHoldRepository.findByDeliveryId(deliveryId).ifPresent(this::commit);
+        } else if (RELEASING_STATUSES.contains(normalized)) {
+            stockHoldRepository.findByDeliveryId(deliveryId).ifPresent(hold -> {
+                if (stockHoldRepository.resolve(hold.getId(), StockHoldStatus.HELD, StockHoldStatus.RELEASED, LocalDateTime.now()) == 1) {
+                    inventoryItemRepository.releaseReserved(hold.getInventoryItemId(), hold.getQuantity(), LOW_STOCK_BELOW);
+                    released.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private void commit(StockHold hold) {
+        LocalDateTime now = LocalDateTime.now();
+        if (stockHoldRepository.resolve(hold.getId(), StockHoldStatus.HELD, StockHoldStatus.COMMITTED, now) == 1) {
+            if (inventoryItemRepository.commitReserved(hold.getInventoryItemId(), hold.getQuantity()) == 0) {
+                shortOnCommit.incrementAndGet();
+                log.warn("Delivery {} went out but item {} no longer has its {} held units",
+                        hold.getDeliveryId(), hold.getInventoryItemId(), hold.getQuantity());
+            }
+            committed.incrementAndGet();
+            return;
+        }
+        // Delivered after the hold expired or was cancelled: its units went back on offer, so
+        // take them again if they are still there.
+        for (StockHoldStatus from : List.of(StockHoldStatus.EXPIRED, StockHoldStatus.RELEASED)) {
+            if (stockHoldRepository.resolve(hold.getId(), from, StockHoldStatus.COMMITTED, now) == 1) {
+                if (inventoryItemRepository.decrementIfAvailable(hold.getInventoryItemId(), hold.getQuantity(), LOW_STOCK_BELOW) == 0) {
+                    shortOnCommit.incrementAndGet();
+                    log.warn("Delivery {} went out after its hold ended and item {} has no stock left to take",
+                            hold.getDeliveryId(), hold.getInventoryItemId());
+                }
+                committed.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    // Reads only due holds through the expiry index, a batch per transaction, until none are left.
+    @Scheduled(fixedDelayString = "${stock-holds.sweep-interval-ms:60000}", initialDelayString = "${stock-holds.sweep-initial-delay-ms:60000}")
+    public void expireHolds() {
+        long started = System.nanoTime();
+        try {
+            while (true) {
+                Integer swept = transactionTemplate.execute(status -> expireBatch(LocalDateTime.now()));
+                if (swept == null || swept < sweepBatchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Stock hold sweep failed, retrying on the next run", ex);
+        } finally {
+            lastSweepMs = (System.nanoTime() - started) / 1_000_000;
+        }
+    }
+
+    private int expireBatch(LocalDateTime now) {
+        List<StockHold> due = stockHoldRepository.findByStatusAndExpiresAtLessThanEqualOrderByExpiresAtAsc(
+                StockHoldStatus.HELD, now, Limit.of(sweepBatchSize));
+        Map<Long, Integer> returned = new TreeMap<>();
+        for (StockHold hold : due) {
+            // a delivery settling the hold meanwhile wins; it is skipped here
+            if (stockHoldRepository.resolve(hold.getId(), StockHoldStatus.HELD, StockHoldStatus.EXPIRED, now) == 1) {
+                returned.merge(hold.getInventoryItemId(), hold.getQuantity(), Integer::sum);
+                expired.incrementAndGet();
+            }
+        }
+        returned.forEach((itemId, count) -> inventoryItemRepository.releaseReserved(itemId, count, LOW_STOCK_BELOW));
+        return due.size();
+    }
+
+    @Override
+    public String metricsName() {
+        return "stockHolds";
+    }
+
+    @Override
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("placed", held.get());
+        metrics.put("committed", committed.get());
+        metrics.put("released", released.get());
+        metrics.put("expired", expired.get());
+        metrics.put("committedWithoutStock", shortOnCommit.get());
+        metrics.put("active", stockHoldRepository.countByStatus(StockHoldStatus.HELD));
+        metrics.put("lastSweepMs", lastSweepMs);
+        return metrics;
+    }
+}
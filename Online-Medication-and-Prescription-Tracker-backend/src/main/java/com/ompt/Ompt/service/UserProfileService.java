@@ -4,22 +4,16 @@ import com.ompt.Ompt.DTO.UserProfileRequestDTO;
 import com.ompt.Ompt.model.User;
 import com.ompt.Ompt.model.UserProfile;
 import com.ompt.Ompt.repository.UserProfileRepository;
-import com.ompt.Ompt.repository.UserRepository;
 import lombok.*;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 @Service
 @AllArgsConstructor
 
 public class UserProfileService {
-    private UserRepository userRepository;
     private final UserProfileRepository profileRepository;
 
-    public void saveProfile(String email, UserProfileRequestDTO request) {
-
-        User user = userRepository.findByEmailIgnoreCase(email)
-                .orElseThrow(() -> new UsernameNotFoundException("User not found"));
+    public void saveProfile(User user, UserProfileRequestDTO request) {
 
         UserProfile profile = profileRepository
                 .findByUser(user)
@@ -0,0 +1,87 @@
+package com.ompt.Ompt.Controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+// Conditional GETs, called on the controller directly with a mock request in place of the servlet.
+class PatientControllerTests extends ServiceTestSupport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private PatientController patientController;
+
+    @Test
+    void ownRecordAnswersAMatchingIfNoneMatchWith304() throws Exception {
+        User doctor = createUser("etag.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("etag.patient@ompt.test", doctor);
+
+        ResponseEntity<JsonNode> first = patientController.getMyRecord(patient, get(null, new MockHttpServletResponse()));
+        String etag = first.getHeaders().getETag();
+        assertNotNull(etag);
+
+        MockHttpServletResponse notModified = new MockHttpServletResponse();
+        assertNull(patientController.getMyRecord(patient, get(etag, notModified)));
+        assertEquals(304, notModified.getStatus());
+        assertEquals(etag, notModified.getHeader(HttpHeaders.ETAG));
+
+        // a write moves the version on, so the old tag gets the full document again
+        patientRecordService.patchPatientRecord(patient, MAPPER.readTree("{\"bloodGroup\":\"AB+\"}"), true, null);
+        ResponseEntity<JsonNode> changed = patientController.getMyRecord(patient, get(etag, new MockHttpServletResponse()));
+        assertEquals(200, changed.getStatusCode().value());
+        assertNotEquals(etag, changed.getHeaders().getETag());
+        assertEquals("AB+", changed.getBody().path("bloodGroup").asText());
+    }
+
+    @Test
+    void patientListsAnswer304UntilOneOfTheRecordsChanges() throws Exception {
+        User doctor = createUser("etag.list.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User admin = createUser("etag.list.admin@ompt.test", Role.ADMIN, doctor);
+        User patient = createPatient("etag.list.patient1@ompt.test", doctor);
+        createPatient("etag.list.patient2@ompt.test", doctor);
+
+        for (User viewer : List.of(doctor, admin)) {
+            ResponseEntity<List<?>> first = patientController.listPatients(viewer, null, null,
+                    get(null, new MockHttpServletResponse()));
+            String etag = first.getHeaders().getETag();
+            assertNotNull(etag);
+
+            MockHttpServletResponse notModified = new MockHttpServletResponse();
+            assertNull(patientController.listPatients(viewer, null, null, get(etag, notModified)));
+            assertEquals(304, notModified.getStatus());
+        }
+
+        String doctorETag = patientController.listPatients(doctor, null, null, get(null, new MockHttpServletResponse()))
+                .getHeaders().getETag();
+        patientRecordService.patchPatientRecord(patient, MAPPER.readTree("{\"bloodGroup\":\"O-\"}"), true, null);
+        ResponseEntity<List<?>> changed = patientController.listPatients(doctor, null, null,
+                get(doctorETag, new MockHttpServletResponse()));
+        assertEquals(2, changed.getBody().size());
+        assertNotEquals(doctorETag, changed.getHeaders().getETag());
+    }
+
+    private static ServletWebRequest get(String ifNoneMatch, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/patients");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, response);
+    }
+}
@@ -0,0 +1,91 @@
+package com.ompt.Ompt.Util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ompt.Ompt.exception.PatchFailedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonPatchesTests {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String DOCUMENT = "{\"name\":\"A\",\"tags\":[\"x\",\"y\"],\"contact\":{\"phone\":\"1\"}}";
+
+    @Test
+    void addRemoveAndMoveWorkOnObjectsAndArrayIndices() {
+        JsonNode document = json(DOCUMENT);
+
+        JsonNode patched = JsonPatches.applyJsonPatch(document, json("""
+                [
+                  {"op": "add", "path": "/age", "value": 30},
+                  {"op": "add", "path": "/tags/1", "value": "z"},
+                  {"op": "add", "path": "/tags/-", "value": "end"},
+                  {"op": "remove", "path": "/tags/0"},
+                  {"op": "move", "from": "/contact/phone", "path": "/phone"}
+                ]"""));
+
+        assertEquals(json("{\"name\":\"A\",\"tags\":[\"z\",\"y\",\"end\"],\"contact\":{},\"age\":30,\"phone\":\"1\"}"),
+                patched);
+        // the input is left untouched
+        assertEquals(json(DOCUMENT), document);
+    }
+
+    @Test
+    void testComparesNumbersByValue() {
+        JsonNode document = json("{\"dose\":{\"mg\":1,\"times\":[2.0]}}");
+
+        JsonPatches.applyJsonPatch(document, json("[{\"op\": \"test\", \"path\": \"/dose\", \"value\": {\"mg\": 1.0, \"times\": [2]}}]"));
+
+        assertTrue(JsonPatches.equalsNumericAware(json("1"), json("1.00")));
+        assertFalse(JsonPatches.equalsNumericAware(json("1"), json("\"1\"")));
+        assertFalse(JsonPatches.equalsNumericAware(json("{\"a\":1}"), json("{\"a\":1,\"b\":null}")));
+        assertFalse(JsonPatches.equalsNumericAware(json("[1,2]"), json("[2,1]")));
+    }
+
+    @Test
+    void mergePatchRemovesNullFieldsAndMergesObjects() {
+        JsonNode patched = JsonPatches.applyMergePatch(json(DOCUMENT),
+                json("{\"name\":null,\"contact\":{\"email\":\"a@b\"},\"tags\":[\"q\"]}"));
+
+        assertEquals(json("{\"tags\":[\"q\"],\"contact\":{\"phone\":\"1\",\"email\":\"a@b\"}}"), patched);
+    }
+
+    @Test
+    void malformedPatchesAre400() {
+        assertStatus(HttpStatus.BAD_REQUEST, "{\"op\": \"add\", \"path\": \"/a\", \"value\": 1}");
+        assertStatus(HttpStatus.BAD_REQUEST, "[{\"op\": \"frobnicate\", \"path\": \"/a\"}]");
+        assertStatus(HttpStatus.BAD_REQUEST, "[{\"op\": \"add\", \"path\": \"/a\"}]");
+        assertStatus(HttpStatus.BAD_REQUEST, "[{\"op\": \"remove\"}]");
+        assertStatus(HttpStatus.BAD_REQUEST, "[{\"op\": \"remove\", \"path\": \"no-slash\"}]");
+    }
+
+    @Test
+    void patchesThatDoNotFitTheDocumentAre409() {
+        assertStatus(HttpStatus.CONFLICT, "[{\"op\": \"test\", \"path\": \"/name\", \"value\": \"B\"}]");
+        assertStatus(HttpStatus.CONFLICT, "[{\"op\": \"remove\", \"path\": \"/missing\"}]");
+        assertStatus(HttpStatus.CONFLICT, "[{\"op\": \"replace\", \"path\": \"/tags/2\", \"value\": \"z\"}]");
+        assertStatus(HttpStatus.CONFLICT, "[{\"op\": \"add\", \"path\": \"/tags/01\", \"value\": \"z\"}]");
+        assertStatus(HttpStatus.CONFLICT, "[{\"op\": \"move\", \"from\": \"/contact\", \"path\": \"/contact/inner\"}]");
+        assertStatus(HttpStatus.CONFLICT, "[{\"op\": \"remove\", \"path\": \"\"}]");
+    }
+
+    private static void assertStatus(HttpStatus expected, String patch) {
+        PatchFailedException ex = assertThrows(PatchFailedException.class,
+                () -> JsonPatches.applyJsonPatch(json(DOCUMENT), json(patch)));
+        assertEquals(expected, ex.getStatus(), patch);
+    }
+
+    private static JsonNode json(String text) {
+        try {
+            return MAPPER.readTree(text);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+}
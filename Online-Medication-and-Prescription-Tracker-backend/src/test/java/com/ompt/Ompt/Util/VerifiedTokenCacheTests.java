@@ -0,0 +1,73 @@
+package com.ompt.Ompt.Util;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VerifiedTokenCacheTests {
+
+    private static final long HOUR_MS = 3_600_000L;
+
+    @Test
+    void returnsTheClaimsOfAVerifiedToken() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(8);
+        Claims claims = claimsExpiringIn(HOUR_MS);
+
+        cache.put("token-a", claims);
+
+        assertSame(claims, cache.get("token-a"));
+        assertNull(cache.get("token-b"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void neverServesATokenPastItsExpiry() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(8);
+        cache.put("expired", claimsExpiringIn(-1));
+        assertNull(cache.get("expired"));
+        assertEquals(0, cache.size());
+
+        // an expired entry nobody reads again leaves on the next put
+        cache.put("expired", claimsExpiringIn(-1));
+        cache.put("live", claimsExpiringIn(HOUR_MS));
+        assertEquals(1, cache.size());
+        assertNull(cache.get("expired"));
+    }
+
+    @Test
+    void overflowEvictsTheSoonestToExpire() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2);
+        Claims late = claimsExpiringIn(3 * HOUR_MS);
+        Claims soon = claimsExpiringIn(HOUR_MS);
+        Claims middle = claimsExpiringIn(2 * HOUR_MS);
+
+        cache.put("late", late);
+        cache.put("soon", soon);
+        cache.put("middle", middle);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("soon"));
+        assertSame(late, cache.get("late"));
+        assertSame(middle, cache.get("middle"));
+    }
+
+    @Test
+    void aZeroSizedCacheStoresNothing() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(0);
+        cache.put("token-a", claimsExpiringIn(HOUR_MS));
+        assertNull(cache.get("token-a"));
+        assertEquals(0, cache.size());
+    }
+
+    private static Claims claimsExpiringIn(long millis) {
+        Claims claims = Jwts.claims();
+        claims.setExpiration(new Date(System.currentTimeMillis() + millis));
+        return claims;
+    }
+}
@@ -0,0 +1,54 @@
+package com.ompt.Ompt.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressedJsonConverterTests {
+
+    private static final String LARGE = "{\"medicines\":[" + "{\"name\":\"Paracetamol\",\"dosage\":\"500 mg\"},".repeat(40)
+            + "{\"name\":\"Ünïcode ✓\"}]}";
+
+    private final CompressedJsonConverter converter = new CompressedJsonConverter("deflate", 256);
+
+    @Test
+    void largeDocumentsRoundTripThroughTheDeflateHeader() {
+        String stored = converter.convertToDatabaseColumn(LARGE);
+
+        assertTrue(stored.startsWith(CompressedJsonConverter.DEFLATE_HEADER));
+        assertTrue(stored.length() < LARGE.length());
+        assertEquals(LARGE, converter.convertToEntityAttribute(stored));
+    }
+
+    @Test
+    void legacyPlainTextIsReadAsIs() {
+        assertEquals(LARGE, converter.convertToEntityAttribute(LARGE));
+        assertEquals("{}", converter.convertToEntityAttribute("{}"));
+        assertNull(converter.convertToEntityAttribute(null));
+        // a header written by the deflate codec still reads after switching to plain
+        String stored = converter.convertToDatabaseColumn(LARGE);
+        assertEquals(LARGE, new CompressedJsonConverter("plain", 256).convertToEntityAttribute(stored));
+    }
+
+    @Test
+    void smallDocumentsAndThePlainCodecStoreText() {
+        String small = "{\"name\":\"A\"}";
+        assertEquals(small, converter.convertToDatabaseColumn(small));
+        assertEquals(LARGE, new CompressedJsonConverter("plain", 256).convertToDatabaseColumn(LARGE));
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertThrows(IllegalArgumentException.class, () -> new CompressedJsonConverter("zstd", 256));
+    }
+
+    @Test
+    void corruptOrTruncatedValuesFailLoudly() {
+        String stored = converter.convertToDatabaseColumn(LARGE);
+        String truncated = stored.substring(0, CompressedJsonConverter.DEFLATE_HEADER.length() + 40);
+
+        assertThrows(IllegalStateException.class, () -> converter.convertToEntityAttribute(truncated));
+        assertThrows(IllegalStateException.class, () ->
+                converter.convertToEntityAttribute(CompressedJsonConverter.DEFLATE_HEADER + "AAAAAAAA"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.ompt.Ompt.reminder;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTests {
+
+    private static final long TICK = 1000;
+
+    @Test
+    void firesEachTimerOnTheTickContainingItsDeadline() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(TICK, 8, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // spans several overflow levels of an 8-bucket wheel
+            long deadline = 1 + random.nextInt(3 * 24 * 3600) * 1000L + random.nextInt(1000);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        List<long[]> fired = new ArrayList<>();
+        long end = 3L * 24 * 3600 * 1000 + 2 * TICK;
+        for (long now = 0; now <= end; now += 7 * TICK) {
+            long clock = now;
+            wheel.advance(now, timeout -> fired.add(new long[]{timeout.payload(), clock}));
+        }
+
+        assertEquals(deadlines.size(), fired.size());
+        assertEquals(0, wheel.size());
+        for (long[] firing : fired) {
+            long deadline = firing[0];
+            long firedAt = firing[1];
+            // never more than one tick early, and no later than the advance call that passed it
+            assertTrue(firedAt >= deadline - TICK, "fired early: " + deadline + " at " + firedAt);
+            assertTrue(firedAt < deadline + 7 * TICK, "fired late: " + deadline + " at " + firedAt);
+        }
+    }
+
+    @Test
+    void cancelledTimersDoNotFire() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, 60, 0);
+        HierarchicalTimingWheel.Timeout<String> kept = wheel.schedule(90_000, "kept");
+        HierarchicalTimingWheel.Timeout<String> cancelled = wheel.schedule(2 * 3_600_000, "cancelled");
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, wheel.size());
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(3 * 3_600_000, timeout -> fired.add(timeout.payload()));
+
+        assertEquals(List.of("kept"), fired);
+        assertFalse(kept.cancel());
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextAdvance() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, 60, 10_000);
+        wheel.schedule(5_000, "late");
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(10_000, timeout -> fired.add(timeout.payload()));
+
+        assertEquals(List.of("late"), fired);
+    }
+}
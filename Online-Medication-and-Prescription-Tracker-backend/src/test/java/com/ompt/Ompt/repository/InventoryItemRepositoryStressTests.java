@@ -0,0 +1,160 @@
+package com.ompt.Ompt.repository;
+
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Pharmacy;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.ompt.Ompt.service.StockReservationService.LOW_STOCK_BELOW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Many threads prescribe from one shelf at once, each update in its own committed transaction.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryItemRepositoryStressTests {
+
+    private static final int THREADS = 48;
+    private static final int ATTEMPTS_PER_THREAD = 40;
+    private static final int STOCK = 500;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private PharmacyRepository pharmacyRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentDecrementsNeverOversell() throws Exception {
+        Long itemId = createItem(STOCK).getId();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long seed = t;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                int taken = 0;
+                int refused = 0;
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    // mixes single doses with the multi-unit takes of bulk prescriptions
+                    int count = 1 + random.nextInt(3);
+                    if (decrement(itemId, count) == 1) {
+                        taken += count;
+                    } else {
+                        refused++;
+                    }
+                }
+                return new int[]{taken, refused};
+            }));
+        }
+        start.countDown();
+
+        int taken = 0;
+        int refused = 0;
+        for (Future<int[]> result : results) {
+            int[] counts = result.get(2, TimeUnit.MINUTES);
+            taken += counts[0];
+            refused += counts[1];
+        }
+        pool.shutdown();
+
+        InventoryItem item = inventoryItemRepository.findById(itemId).orElseThrow();
+        // demand (about 2 units x 1920 attempts) is far above the stock, so it must run out exactly
+        assertTrue(refused > 0);
+        assertTrue(item.getQuantity() >= 0 && item.getQuantity() < 3, "left: " + item.getQuantity());
+        assertEquals(STOCK, taken + item.getQuantity());
+        assertTrue(item.isLowStock());
+    }
+
+    @Test
+    void decrementLeavesStockUntouchedWhenItCannotCoverTheCount() {
+        Long itemId = createItem(60).getId();
+
+        assertEquals(1, decrement(itemId, 10));
+        InventoryItem item = inventoryItemRepository.findById(itemId).orElseThrow();
+        assertEquals(50, item.getQuantity());
+        assertFalse(item.isLowStock());
+
+        assertEquals(0, decrement(itemId, 51));
+        assertEquals(1, decrement(itemId, 1));
+        item = inventoryItemRepository.findById(itemId).orElseThrow();
+        assertEquals(49, item.getQuantity());
+        assertTrue(item.isLowStock());
+    }
+
+    @Test
+    void heldUnitsAreNotOfferedAgainUntilReleased() {
+        Long itemId = createItem(60).getId();
+
+        assertEquals(1, inTransaction(() -> inventoryItemRepository.reserveIfAvailable(itemId, 20, LOW_STOCK_BELOW)));
+        InventoryItem item = inventoryItemRepository.findById(itemId).orElseThrow();
+        assertEquals(60, item.getQuantity());
+        assertEquals(20, item.getReserved());
+        assertTrue(item.isLowStock());
+
+        assertEquals(0, decrement(itemId, 41));
+        assertEquals(1, decrement(itemId, 40));
+        assertEquals(0, inTransaction(() -> inventoryItemRepository.reserveIfAvailable(itemId, 1, LOW_STOCK_BELOW)));
+
+        assertEquals(1, inTransaction(() -> inventoryItemRepository.commitReserved(itemId, 5)));
+        assertEquals(1, inTransaction(() -> inventoryItemRepository.releaseReserved(itemId, 15, LOW_STOCK_BELOW)));
+        assertEquals(0, inTransaction(() -> inventoryItemRepository.releaseReserved(itemId, 1, LOW_STOCK_BELOW)));
+        item = inventoryItemRepository.findById(itemId).orElseThrow();
+        assertEquals(15, item.getQuantity());
+        assertEquals(0, item.getReserved());
+        assertEquals(15, inventoryItemRepository.findAvailableById(itemId).orElseThrow());
+
+        // a hold the shelf can no longer cover is not committed into negative stock
+        item.setReserved(20);
+        inventoryItemRepository.save(item);
+        assertEquals(0, inTransaction(() -> inventoryItemRepository.commitReserved(itemId, 20)));
+        assertEquals(15, inventoryItemRepository.findById(itemId).orElseThrow().getQuantity());
+    }
+
+    private int decrement(Long itemId, int count) {
+        return inTransaction(() -> inventoryItemRepository.decrementIfAvailable(itemId, count, LOW_STOCK_BELOW));
+    }
+
+    private int inTransaction(Supplier<Integer> update) {
+        Integer updated = new TransactionTemplate(transactionManager).execute(status -> update.get());
+        return updated == null ? 0 : updated;
+    }
+
+    private InventoryItem createItem(int quantity) {
+        Pharmacy pharmacy = new Pharmacy();
+        pharmacy.setPharmacyName("Stress Pharmacy");
+        pharmacy.setLocation("Ward 1");
+        pharmacy.setEmail("stress-" + System.nanoTime() + "@ompt.test");
+        pharmacy.setPassword("x");
+        pharmacy = pharmacyRepository.save(pharmacy);
+
+        InventoryItem item = new InventoryItem();
+        item.setPharmacy(pharmacy);
+        item.setName("Metformin");
+        item.setDosage("500mg");
+        item.setQuantity(quantity);
+        return inventoryItemRepository.save(item);
+    }
+}
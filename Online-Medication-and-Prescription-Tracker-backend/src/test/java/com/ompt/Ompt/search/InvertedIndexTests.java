@@ -0,0 +1,57 @@
+package com.ompt.Ompt.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class InvertedIndexTests {
+
+    private static List<String> search(InvertedIndex<String> index, String query) {
+        List<String> found = new ArrayList<>();
+        index.forEachMatch(PatientSearchIndex.tokens(query), found::add);
+        return found;
+    }
+
+    @Test
+    void everyQueryTokenMustPrefixSomeTermOfTheDocument() {
+        InvertedIndex<String> index = new InvertedIndex<>();
+        index.put(1, PatientSearchIndex.tokens("Ananya Rao ananya.rao@ompt.test Asthma Salbutamol"), "ananya");
+        index.put(2, PatientSearchIndex.tokens("Arjun Rao arjun@ompt.test Diabetes Metformin"), "arjun");
+        index.put(3, PatientSearchIndex.tokens("Meera Iyer meera@example.org Hypertension Amlodipine"), "meera");
+
+        assertEquals(List.of("ananya", "arjun"), search(index, "rao"));
+        assertEquals(List.of("ananya", "arjun"), search(index, "A r"));
+        assertEquals(List.of("arjun"), search(index, "rao met"));
+        assertEquals(List.of("meera"), search(index, "EXAMPLE.O"));
+        assertEquals(List.of(), search(index, "rao hyper"));
+        assertEquals(List.of(), search(index, "zz"));
+    }
+
+    @Test
+    void putReplacesAndRemoveForgetsTheDocumentsTerms() {
+        InvertedIndex<String> index = new InvertedIndex<>();
+        index.put(1, PatientSearchIndex.tokens("Ananya Rao Metformin"), "v1");
+        index.put(2, PatientSearchIndex.tokens("Arjun Metformin"), "arjun");
+
+        index.put(1, PatientSearchIndex.tokens("Ananya Rao Insulin"), "v2");
+        assertEquals(List.of("arjun"), search(index, "metformin"));
+        assertEquals(List.of("v2"), search(index, "insulin"));
+        assertEquals("v2", index.get(1));
+
+        index.remove(1);
+        assertNull(index.get(1));
+        assertEquals(List.of(), search(index, "ananya"));
+        assertEquals(1, index.size());
+        assertEquals(2, index.termCount());
+
+        // the freed ordinal is reused without picking up the old terms
+        index.put(3, PatientSearchIndex.tokens("Meera"), "meera");
+        assertEquals(List.of("meera"), search(index, "mee"));
+        assertEquals(List.of("meera", "arjun"), search(index, "m"));
+        assertEquals(List.of(), search(index, " "));
+    }
+}
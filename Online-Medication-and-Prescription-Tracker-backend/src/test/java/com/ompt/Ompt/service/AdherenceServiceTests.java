@@ -0,0 +1,212 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.DTO.MedicineStatusUpdateDTO;
+import com.ompt.Ompt.model.AdherenceBucket;
+import com.ompt.Ompt.model.AdherenceCounter;
+import com.ompt.Ompt.model.AdherenceScope;
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.AdherenceCounterRepository;
+import com.ompt.Ompt.repository.InventoryItemRepository;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Counters carry no foreign keys, so each test works on its own made-up patient, doctor and hospital
+// ids, except the rebuild, which counts real dose slots.
+class AdherenceServiceTests extends ServiceTestSupport {
+
+    private static final LocalDate TOTAL_START = LocalDate.EPOCH;
+
+    @Autowired
+    private AdherenceService adherenceService;
+
+    @Autowired
+    private AdherenceCounterRepository counterRepository;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void statusChangeMovesTotalsAndRecordsTheOutcomeBucket() {
+        AdherenceService.Owner owner = new AdherenceService.Owner(1001L, 1101L, 1201L);
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            adherenceService.recordSlotsAdded(owner, List.of("pending", "pending"));
+            adherenceService.recordStatusChange(owner, "pending", null, "taken", now);
+        });
+
+        for (AdherenceScope scope : AdherenceScope.values()) {
+            long scopeId = scopeId(owner, scope);
+            assertCounts(scope, scopeId, AdherenceBucket.TOTAL, TOTAL_START, 1, 0, 0, 1);
+            assertCounts(scope, scopeId, AdherenceBucket.DAY, now.toLocalDate(), 1, 0, 0, 0);
+            assertCounts(scope, scopeId, AdherenceBucket.WEEK, weekOf(now.toLocalDate()), 1, 0, 0, 0);
+        }
+
+        // a correction takes the outcome out of the bucket it was first recorded in
+        LocalDateTime yesterday = now.minusDays(1);
+        transactionTemplate.executeWithoutResult(status ->
+                adherenceService.recordStatusChange(owner, "taken", now, "late", yesterday));
+        assertCounts(AdherenceScope.DOCTOR, 1101L, AdherenceBucket.TOTAL, TOTAL_START, 0, 1, 0, 1);
+        assertCounts(AdherenceScope.DOCTOR, 1101L, AdherenceBucket.DAY, now.toLocalDate(), 0, 0, 0, 0);
+        assertCounts(AdherenceScope.DOCTOR, 1101L, AdherenceBucket.DAY, yesterday.toLocalDate(), 0, 1, 0, 0);
+    }
+
+    @Test
+    void batchCreatesMissingCountersInTheCallersTransaction() {
+        LocalDateTime now = LocalDateTime.now();
+        List<AdherenceService.StatusChange> changes = new ArrayList<>();
+        for (long patientId = 2001; patientId <= 2010; patientId++) {
+            AdherenceService.Owner owner = new AdherenceService.Owner(patientId, 2101L, 2201L);
+            changes.add(new AdherenceService.StatusChange(owner, "pending", null, "missed", now));
+            changes.add(new AdherenceService.StatusChange(owner, "pending", null, "missed", now));
+        }
+        transactionTemplate.executeWithoutResult(status -> adherenceService.recordStatusChanges(changes));
+
+        for (long patientId = 2001; patientId <= 2010; patientId++) {
+            assertCounts(AdherenceScope.PATIENT, patientId, AdherenceBucket.TOTAL, TOTAL_START, 0, 0, 2, -2);
+            assertCounts(AdherenceScope.PATIENT, patientId, AdherenceBucket.DAY, now.toLocalDate(), 0, 0, 2, 0);
+        }
+        assertCounts(AdherenceScope.DOCTOR, 2101L, AdherenceBucket.TOTAL, TOTAL_START, 0, 0, 20, -20);
+        assertCounts(AdherenceScope.HOSPITAL, 2201L, AdherenceBucket.WEEK, weekOf(now.toLocalDate()), 0, 0, 20, 0);
+
+        // a rolled back batch leaves neither its increments nor its new rows behind
+        LocalDateTime tomorrow = now.plusDays(1);
+        List<AdherenceService.StatusChange> later = changes.stream()
+                .map(change -> new AdherenceService.StatusChange(change.owner(), "missed", now, "taken", tomorrow))
+                .toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            adherenceService.recordStatusChanges(later);
+            status.setRollbackOnly();
+        });
+        assertCounts(AdherenceScope.DOCTOR, 2101L, AdherenceBucket.TOTAL, TOTAL_START, 0, 0, 20, -20);
+        assertEquals(0, counterRepository.findByScopeAndScopeIdAndBucketAndBucketStartBetweenOrderByBucketStartAsc(
+                AdherenceScope.PATIENT, 2001L, AdherenceBucket.DAY, tomorrow.toLocalDate(), tomorrow.toLocalDate()).size());
+    }
+
+    @Test
+    void groupedChangeCountsEverySlot() {
+        AdherenceService.Owner owner = new AdherenceService.Owner(4001L, 4101L, 4201L);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDate yesterday = now.toLocalDate().minusDays(1);
+        transactionTemplate.executeWithoutResult(status -> adherenceService.recordStatusChanges(List.of(
+                new AdherenceService.StatusChange(owner, "pending", null, "missed", yesterday.atStartOfDay(), 3),
+                new AdherenceService.StatusChange(owner, null, null, "pending", now, 3))));
+
+        assertCounts(AdherenceScope.PATIENT, 4001L, AdherenceBucket.TOTAL, TOTAL_START, 0, 0, 3, 0);
+        assertCounts(AdherenceScope.HOSPITAL, 4201L, AdherenceBucket.DAY, yesterday, 0, 0, 3, 0);
+        assertCounts(AdherenceScope.DOCTOR, 4101L, AdherenceBucket.DAY, now.toLocalDate(), 0, 0, 0, 0);
+    }
+
+    @Test
+    void doctorChangeMovesTotalsAndTimeBuckets() {
+        AdherenceService.Owner before = new AdherenceService.Owner(3001L, 3101L, 3201L);
+        AdherenceService.Owner other = new AdherenceService.Owner(3002L, 3101L, 3201L);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime lastWeek = now.minusWeeks(1);
+        transactionTemplate.executeWithoutResult(status -> {
+            adherenceService.recordSlotsAdded(before, List.of("pending", "pending", "pending"));
+            adherenceService.recordStatusChange(before, "pending", null, "taken", lastWeek);
+            adherenceService.recordStatusChange(before, "pending", null, "missed", now);
+            adherenceService.recordSlotsAdded(other, List.of("pending"));
+            adherenceService.recordStatusChange(other, "pending", null, "late", now);
+        });
+
+        transactionTemplate.executeWithoutResult(status -> adherenceService.recordDoctorChange(3001L, 3101L, 3102L));
+
+        assertCounts(AdherenceScope.DOCTOR, 3101L, AdherenceBucket.TOTAL, TOTAL_START, 0, 1, 0, 0);
+        assertCounts(AdherenceScope.DOCTOR, 3101L, AdherenceBucket.DAY, now.toLocalDate(), 0, 1, 0, 0);
+        assertCounts(AdherenceScope.DOCTOR, 3101L, AdherenceBucket.DAY, lastWeek.toLocalDate(), 0, 0, 0, 0);
+        assertCounts(AdherenceScope.DOCTOR, 3102L, AdherenceBucket.TOTAL, TOTAL_START, 1, 0, 1, 1);
+        assertCounts(AdherenceScope.DOCTOR, 3102L, AdherenceBucket.DAY, now.toLocalDate(), 0, 0, 1, 0);
+        assertCounts(AdherenceScope.DOCTOR, 3102L, AdherenceBucket.DAY, lastWeek.toLocalDate(), 1, 0, 0, 0);
+        assertCounts(AdherenceScope.DOCTOR, 3102L, AdherenceBucket.WEEK, weekOf(lastWeek.toLocalDate()), 1, 0, 0, 0);
+        // the hospital rollup does not depend on the doctor
+        assertCounts(AdherenceScope.HOSPITAL, 3201L, AdherenceBucket.TOTAL, TOTAL_START, 1, 1, 1, 1);
+    }
+
+    @Test
+    void hospitalRebuildFoldsPendingStatusesIntoTheTotals() {
+        User doctor = createUser("rebuild.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("rebuild.patient@ompt.test", doctor);
+        InventoryItem item = inventoryItemRepository.findAll().get(0);
+        String medicineId = assign(doctor, patient, item, List.of("08:00", "20:00"));
+        // recorded as an event; the slot row only changes once it is compacted
+        patientRecordService.updateMedicineStatus(patient, new MedicineStatusUpdateDTO(medicineId, "08:00", "taken", null));
+
+        AdherenceCounter expected = total(AdherenceScope.PATIENT, patient.getId());
+        assertEquals(1, expected.getPending());
+        transactionTemplate.executeWithoutResult(status -> counterRepository.increment(AdherenceScope.PATIENT,
+                patient.getId(), AdherenceBucket.TOTAL, TOTAL_START, 5, 5, 5, 5));
+
+        adherenceService.rebuildHospitalTotals(patient.getHospital().getId());
+
+        for (AdherenceScope scope : List.of(AdherenceScope.PATIENT, AdherenceScope.DOCTOR)) {
+            long scopeId = scope == AdherenceScope.PATIENT ? patient.getId() : doctor.getId();
+            assertCounts(scope, scopeId, AdherenceBucket.TOTAL, TOTAL_START,
+                    expected.getOnTime(), expected.getLate(), expected.getMissed(), expected.getPending());
+        }
+
+        ResponseStatusException missing = assertThrows(ResponseStatusException.class, () ->
+                adherenceService.rebuildHospitalTotals(-1L));
+        assertEquals(HttpStatus.NOT_FOUND, missing.getStatusCode());
+    }
+
+    @Test
+    void statsRejectsBadRanges() {
+        ResponseStatusException bucket = assertThrows(ResponseStatusException.class, () ->
+                adherenceService.stats(AdherenceScope.PATIENT, 1L, "month", null, null));
+        assertEquals(HttpStatus.BAD_REQUEST, bucket.getStatusCode());
+
+        LocalDate today = LocalDate.now();
+        ResponseStatusException range = assertThrows(ResponseStatusException.class, () ->
+                adherenceService.stats(AdherenceScope.PATIENT, 1L, "day", today, today.minusDays(1)));
+        assertEquals(HttpStatus.BAD_REQUEST, range.getStatusCode());
+    }
+
+    private long scopeId(AdherenceService.Owner owner, AdherenceScope scope) {
+        return switch (scope) {
+            case PATIENT -> owner.patientId();
+            case DOCTOR -> owner.doctorId();
+            case HOSPITAL -> owner.hospitalId();
+        };
+    }
+
+    private AdherenceCounter total(AdherenceScope scope, Long scopeId) {
+        return counterRepository.findByScopeAndScopeIdAndBucketAndBucketStart(
+                scope, scopeId, AdherenceBucket.TOTAL, TOTAL_START).orElseGet(AdherenceCounter::new);
+    }
+
+    private LocalDate weekOf(LocalDate date) {
+        return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private void assertCounts(AdherenceScope scope, long scopeId, AdherenceBucket bucket, LocalDate start,
+                              long onTime, long late, long missed, long pending) {
+        AdherenceCounter counter = counterRepository
+                .findByScopeAndScopeIdAndBucketAndBucketStart(scope, scopeId, bucket, start)
+                .orElseGet(AdherenceCounter::new);
+        String where = scope + " " + scopeId + " " + bucket + " " + start;
+        assertEquals(onTime, counter.getOnTime(), "onTime of " + where);
+        assertEquals(late, counter.getLate(), "late of " + where);
+        assertEquals(missed, counter.getMissed(), "missed of " + where);
+        assertEquals(pending, counter.getPending(), "pending of " + where);
+    }
+}
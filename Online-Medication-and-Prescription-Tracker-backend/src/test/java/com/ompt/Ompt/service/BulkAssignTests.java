@@ -0,0 +1,112 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.DTO.AssignMedicineRequestDTO;
+import com.ompt.Ompt.DTO.BulkMedicineAssignmentResponseDTO;
+import com.ompt.Ompt.DTO.MedicineAssignmentResultDTO;
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Pharmacy;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.InventoryItemRepository;
+import com.ompt.Ompt.repository.PharmacyRepository;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BulkAssignTests extends ServiceTestSupport {
+
+    @Autowired
+    private PharmacyRepository pharmacyRepository;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Test
+    void reportsEachItemAndAssignsWhatTheStockCovers() {
+        User doctor = createUser("bulk.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("bulk.patient@ompt.test", doctor);
+        Pharmacy pharmacy = createPharmacy("bulk.pharmacy@ompt.test");
+        InventoryItem twoLeft = createItem(pharmacy, "Metformin", 2);
+        InventoryItem soldOut = createItem(pharmacy, "Aspirin", 0);
+
+        BulkMedicineAssignmentResponseDTO response = patientRecordService.assignMedicines(doctor, patient.getId(), List.of(
+                request("Metformin", twoLeft.getId()),
+                request("Aspirin", soldOut.getId()),
+                request("Metformin", twoLeft.getId()),
+                request("Ibuprofen", twoLeft.getId()),
+                request("Metformin", twoLeft.getId()),
+                request("Metformin", -1L)));
+
+        List<MedicineAssignmentResultDTO> results = response.getResults();
+        assertEquals(6, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+        }
+        assertAssigned(results.get(0));
+        assertRejected(results.get(1), "Selected pharmacy is out of stock");
+        assertAssigned(results.get(2));
+        assertRejected(results.get(3), "Selected pharmacy does not carry this medicine");
+        // repeats past what is left are turned down from the end of the request
+        assertRejected(results.get(4), "Selected pharmacy is out of stock");
+        assertRejected(results.get(5), "Selected pharmacy item not found");
+
+        assertEquals(2, response.getRecord().path("medicines").size());
+        assertEquals(2, inventoryItemRepository.findById(twoLeft.getId()).orElseThrow().getReserved());
+        assertEquals(0, inventoryItemRepository.findById(soldOut.getId()).orElseThrow().getReserved());
+    }
+
+    @Test
+    void nothingInStockLeavesTheRecordAsItWas() {
+        User doctor = createUser("bulk.none.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("bulk.none.patient@ompt.test", doctor);
+        InventoryItem soldOut = createItem(createPharmacy("bulk.none.pharmacy@ompt.test"), "Aspirin", 0);
+        String etag = patientRecordService.recordETag(patient);
+
+        BulkMedicineAssignmentResponseDTO response = patientRecordService.assignMedicines(doctor, patient.getId(),
+                List.of(request("Aspirin", soldOut.getId()), request("Aspirin", soldOut.getId())));
+
+        response.getResults().forEach(result -> assertRejected(result, "Selected pharmacy is out of stock"));
+        assertEquals(0, response.getRecord().path("medicines").size());
+        assertEquals(etag, patientRecordService.recordETag(patient));
+    }
+
+    private static void assertAssigned(MedicineAssignmentResultDTO result) {
+        assertEquals("assigned", result.getStatus());
+        assertNotNull(result.getMedicineId());
+        assertNull(result.getError());
+    }
+
+    private static void assertRejected(MedicineAssignmentResultDTO result, String error) {
+        assertEquals("rejected", result.getStatus());
+        assertNull(result.getMedicineId());
+        assertEquals(error, result.getError());
+    }
+
+    private static AssignMedicineRequestDTO request(String name, Long itemId) {
+        return new AssignMedicineRequestDTO(name, "1 tablet", "Tablet", null, itemId, List.of("09:00"), 5);
+    }
+
+    private Pharmacy createPharmacy(String email) {
+        Pharmacy pharmacy = new Pharmacy();
+        pharmacy.setPharmacyName(email);
+        pharmacy.setLocation("Ward 1");
+        pharmacy.setEmail(email);
+        pharmacy.setPassword("x");
+        return pharmacyRepository.save(pharmacy);
+    }
+
+    private InventoryItem createItem(Pharmacy pharmacy, String name, int quantity) {
+        InventoryItem item = new InventoryItem();
+        item.setPharmacy(pharmacy);
+        item.setName(name);
+        item.setDosage("500mg");
+        item.setQuantity(quantity);
+        return inventoryItemRepository.save(item);
+    }
+}
@@ -0,0 +1,142 @@
+package com.ompt.Ompt.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingWriteQueueTests {
+
+    private static final int THREADS = 32;
+    private static final int WRITES_PER_THREAD = 100;
+    private static final int KEYS = 4;
+
+    @Test
+    void concurrentWritersNeverLoseAnUpdateAndShareWrites() throws Exception {
+        Map<Integer, Integer> store = new ConcurrentHashMap<>();
+        Map<Integer, AtomicInteger> writersPerKey = new ConcurrentHashMap<>();
+        AtomicInteger overlaps = new AtomicInteger();
+
+        // a read-modify-write that would lose updates if two batches of one key ever overlapped
+        CoalescingWriteQueue<Integer, Integer, Integer> queue = new CoalescingWriteQueue<>(2, 64, (key, deltas) -> {
+            AtomicInteger writers = writersPerKey.computeIfAbsent(key, k -> new AtomicInteger());
+            if (writers.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            try {
+                int value = store.getOrDefault(key, 0);
+                sleep();
+                List<CoalescingWriteQueue.Outcome<Integer>> outcomes = new ArrayList<>();
+                for (int delta : deltas) {
+                    value += delta;
+                    outcomes.add(CoalescingWriteQueue.Outcome.of(value));
+                }
+                store.put(key, value);
+                return outcomes;
+            } finally {
+                writers.decrementAndGet();
+            }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int key = t % KEYS;
+            results.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < WRITES_PER_THREAD; i++) {
+                    queue.submit(key, 1);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(2, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        assertEquals(0, overlaps.get());
+        for (int key = 0; key < KEYS; key++) {
+            assertEquals(THREADS / KEYS * WRITES_PER_THREAD, store.get(key));
+        }
+        Map<String, Object> metrics = queue.metrics();
+        assertEquals(0, metrics.get("queued"));
+        assertEquals((long) THREADS * WRITES_PER_THREAD, metrics.get("mutations"));
+        assertTrue((long) metrics.get("writes") < (long) metrics.get("mutations"), metrics.toString());
+    }
+
+    @Test
+    void aFailedMutationFailsOnlyItsOwnCaller() {
+        CoalescingWriteQueue<String, String, String> queue = new CoalescingWriteQueue<>(1, 8, (key, values) -> values.stream()
+                .map(value -> value.isEmpty()
+                        ? CoalescingWriteQueue.Outcome.<String>failed(new IllegalArgumentException("empty"))
+                        : CoalescingWriteQueue.Outcome.of(key + ":" + value))
+                .toList());
+
+        assertEquals("a:1", queue.submit("a", "1"));
+        assertThrows(IllegalArgumentException.class, () -> queue.submit("a", ""));
+        assertEquals("b:2", queue.submit("b", "2"));
+
+        CoalescingWriteQueue<String, String, String> broken = new CoalescingWriteQueue<>(1, 8, (key, values) -> {
+            throw new IllegalStateException("store down");
+        });
+        assertThrows(IllegalStateException.class, () -> broken.submit("a", "1"));
+        assertEquals(0, broken.metrics().get("queued"));
+    }
+
+    @Test
+    void aSlowWriteHoldsUpOnlyItsOwnKey() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        // one stripe, so both keys share a lock
+        CoalescingWriteQueue<String, String, String> queue = new CoalescingWriteQueue<>(1, 8, (key, values) -> {
+            if (key.equals("slow")) {
+                slowStarted.countDown();
+                try {
+                    releaseSlow.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return values.stream().map(value -> CoalescingWriteQueue.Outcome.of(key + ":" + value)).toList();
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> slow = pool.submit(() -> queue.submit("slow", "1"));
+            assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+            Future<String> fast = pool.submit(() -> queue.submit("fast", "2"));
+            assertEquals("fast:2", fast.get(10, TimeUnit.SECONDS));
+            assertFalse(slow.isDone());
+
+            releaseSlow.countDown();
+            assertEquals("slow:1", slow.get(10, TimeUnit.SECONDS));
+        } finally {
+            releaseSlow.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
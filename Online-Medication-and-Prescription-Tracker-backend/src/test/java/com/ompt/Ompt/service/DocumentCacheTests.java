@@ -0,0 +1,90 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class DocumentCacheTests {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final LocalDateTime VERSION = LocalDateTime.of(2026, 1, 1, 9, 0);
+    private static final String JSON = "{\"name\":\"A\",\"contact\":{\"phone\":\"1\"}}";
+
+    private final AtomicInteger parses = new AtomicInteger();
+    private final Function<String, JsonNode> parser = json -> {
+        parses.incrementAndGet();
+        try {
+            return MAPPER.readTree(json);
+        } catch (Exception ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    };
+
+    @Test
+    void parsesOncePerVersionAndText() {
+        DocumentCache cache = new DocumentCache(10, 10_000);
+
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        assertEquals(1, parses.get());
+
+        // another kind, a newer version or different text is a miss
+        cache.get(DocumentCache.DOCTOR_PROFILE, 1L, VERSION, JSON, parser);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION.plusSeconds(1), JSON, parser);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION.plusSeconds(1), "{\"name\":\"B\"}", parser);
+        assertEquals(4, parses.get());
+        assertEquals(1L, cache.metrics().get("hits"));
+        assertEquals(4L, cache.metrics().get("misses"));
+    }
+
+    @Test
+    void invalidateDropsTheEntry() {
+        DocumentCache cache = new DocumentCache(10, 10_000);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+
+        cache.invalidate(DocumentCache.PATIENT_RECORD, 1L);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+
+        assertEquals(2, parses.get());
+        assertEquals(1, cache.metrics().get("entries"));
+        assertEquals((long) JSON.length(), cache.metrics().get("weightChars"));
+    }
+
+    @Test
+    void callersNeverShareOrChangeTheCachedTree() throws Exception {
+        DocumentCache cache = new DocumentCache(10, 10_000);
+
+        ObjectNode missed = (ObjectNode) cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        missed.put("name", "changed");
+        ObjectNode hit = (ObjectNode) cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        ((ObjectNode) hit.get("contact")).put("phone", "changed");
+        JsonNode again = cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+
+        assertEquals(1, parses.get());
+        assertNotSame(hit, again);
+        assertEquals(MAPPER.readTree(JSON), again);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        DocumentCache cache = new DocumentCache(2, 10_000);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        cache.get(DocumentCache.PATIENT_RECORD, 2L, VERSION, JSON, parser);
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        cache.get(DocumentCache.PATIENT_RECORD, 3L, VERSION, JSON, parser);
+
+        cache.get(DocumentCache.PATIENT_RECORD, 1L, VERSION, JSON, parser);
+        assertEquals(3, parses.get());
+        cache.get(DocumentCache.PATIENT_RECORD, 2L, VERSION, JSON, parser);
+        assertEquals(4, parses.get());
+        assertEquals(2L, cache.metrics().get("evictions"));
+    }
+}
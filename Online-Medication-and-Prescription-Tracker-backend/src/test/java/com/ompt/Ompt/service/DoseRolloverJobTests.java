@@ -0,0 +1,126 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ompt.Ompt.DTO.MedicineStatusUpdateDTO;
+import com.ompt.Ompt.model.AdherenceBucket;
+import com.ompt.Ompt.model.AdherenceCounter;
+import com.ompt.Ompt.model.AdherenceScope;
+import com.ompt.Ompt.model.DoseHistory;
+import com.ompt.Ompt.model.DoseSlot;
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.AdherenceCounterRepository;
+import com.ompt.Ompt.repository.DoseHistoryRepository;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import com.ompt.Ompt.repository.InventoryItemRepository;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DoseRolloverJobTests extends ServiceTestSupport {
+
+    @Autowired
+    private DoseRolloverJob doseRolloverJob;
+
+    @Autowired
+    private MedicationEventService medicationEventService;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private PatientRecordRepository patientRecordRepository;
+
+    @Autowired
+    private DoseSlotRepository doseSlotRepository;
+
+    @Autowired
+    private DoseHistoryRepository doseHistoryRepository;
+
+    @Autowired
+    private AdherenceCounterRepository counterRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void archivesYesterdaysSlotsAndStartsToday() {
+        User doctor = createUser("rollover.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("rollover.patient@ompt.test", doctor);
+        Long recordId = patientRecordRepository.findByUser(patient).orElseThrow().getId();
+        InventoryItem item = inventoryItemRepository.findAll().get(0);
+
+        String medicineId = assign(doctor, patient, item, List.of("08:00", "20:00"));
+        // recorded as an event only; the rollover has to fold it in before archiving the day
+        patientRecordService.updateMedicineStatus(patient, new MedicineStatusUpdateDTO(medicineId, "08:00", "taken", null));
+        long recordedEventId = medicationEventService.latestEventId();
+
+        LocalDate today = LocalDate.now();
+        LocalDate yesterday = today.minusDays(1);
+        jdbcTemplate.update("update dose_slots set slot_date = ? where prescription_id in " +
+                "(select id from prescriptions where record_id = ?)", yesterday, recordId);
+        long missedBefore = dayCounter(patient.getId(), yesterday).getMissed();
+
+        doseRolloverJob.run();
+
+        Map<String, DoseHistory> history = new HashMap<>();
+        for (DoseHistory row : doseHistoryRepository.findAll()) {
+            if (row.getRecordId().equals(recordId)) {
+                history.put(row.getTime(), row);
+            }
+        }
+        assertEquals(2, history.size());
+        assertEquals("taken", history.get("08:00").getStatus());
+        assertEquals(yesterday, history.get("08:00").getDoseDate());
+        assertEquals(medicineId, history.get("08:00").getMedicineId());
+        // a dose still pending when its day ended was missed
+        assertEquals("missed", history.get("20:00").getStatus());
+        assertNull(history.get("20:00").getTakenAt());
+
+        List<DoseSlot> slots = slotsOf(recordId);
+        assertEquals(2, slots.size());
+        for (DoseSlot slot : slots) {
+            assertEquals("pending", slot.getStatus());
+            assertEquals(today, slot.getSlotDate());
+            assertNull(slot.getTakenAt());
+            assertTrue(slot.getLastEventId() >= recordedEventId);
+        }
+        // yesterday's taken event is not overlaid on today's dose
+        JsonNode after = patientRecordService.getOrCreateRecord(patient);
+        for (JsonNode slot : after.path("medicines").get(0).path("schedule")) {
+            assertEquals("pending", slot.path("status").asText());
+        }
+        assertEquals(missedBefore + 1, dayCounter(patient.getId(), yesterday).getMissed());
+
+        // the day is rolled already, so a second run finds nothing to archive
+        doseRolloverJob.run();
+        assertEquals(2, doseHistoryRepository.findAll().stream().filter(row -> row.getRecordId().equals(recordId)).count());
+    }
+
+    private AdherenceCounter dayCounter(Long patientId, LocalDate day) {
+        return counterRepository.findByScopeAndScopeIdAndBucketAndBucketStart(
+                AdherenceScope.PATIENT, patientId, AdherenceBucket.DAY, day).orElseGet(AdherenceCounter::new);
+    }
+
+    private List<DoseSlot> slotsOf(Long recordId) {
+        return transactionTemplate.execute(status -> doseSlotRepository.findAll().stream()
+                .filter(slot -> slot.getPrescription().getRecord().getId().equals(recordId))
+                .toList());
+    }
+}
@@ -0,0 +1,116 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.model.EmailOutboxMessage;
+import com.ompt.Ompt.model.EmailStatus;
+import com.ompt.Ompt.repository.EmailOutboxRepository;
+import com.ompt.Ompt.support.FakeSmtpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:email-outbox;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "spring.mail.host=localhost",
+        "spring.mail.username=",
+        "spring.mail.password=",
+        "spring.mail.properties.mail.smtp.auth=false",
+        "spring.mail.properties.mail.smtp.starttls.enable=false",
+        "email.outbox.poll-ms=3600000",
+        "email.outbox.flush-ms=0",
+        "email.outbox.max-attempts=2",
+        "email.outbox.backoff-ms=0"
+})
+class EmailDispatcherTests {
+
+    private static final FakeSmtpServer SMTP = new FakeSmtpServer();
+
+    @DynamicPropertySource
+    static void smtpPort(DynamicPropertyRegistry registry) {
+        registry.add("spring.mail.port", SMTP::getPort);
+    }
+
+    @Autowired
+    private EmailService emailService;
+
+    @Autowired
+    private EmailDispatcher emailDispatcher;
+
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterAll
+    static void stopServer() {
+        SMTP.close();
+    }
+
+    @BeforeEach
+    void clearOutbox() {
+        outboxRepository.deleteAll();
+        SMTP.reset();
+    }
+
+    @Test
+    void queuedMailIsDeliveredByDispatcher() {
+        transactionTemplate.executeWithoutResult(status ->
+                emailService.sendDoctorWelcomeMail("doctor@ompt.test", "Outbox Hospital", "abc.def"));
+
+        assertEquals(EmailStatus.PENDING, single().getStatus());
+        assertTrue(SMTP.getMessages().isEmpty());
+
+        emailDispatcher.dispatchDue();
+
+        EmailOutboxMessage message = single();
+        assertEquals(EmailStatus.SENT, message.getStatus());
+        assertEquals(1, message.getAttempts());
+        assertEquals(1, SMTP.getMessages().size());
+        assertTrue(SMTP.getMessages().get(0).contains("set-password?token=abc.def"));
+    }
+
+    @Test
+    void rolledBackTransactionLeavesNoMail() {
+        transactionTemplate.executeWithoutResult(status -> {
+            emailService.sendResetPasswordEmail("patient@ompt.test", "123456");
+            status.setRollbackOnly();
+        });
+
+        assertTrue(outboxRepository.findAll().isEmpty());
+    }
+
+    @Test
+    void failingServerIsRetriedThenDeadLettered() {
+        SMTP.setFailing(true);
+        transactionTemplate.executeWithoutResult(status ->
+                emailService.sendResetPasswordEmail("patient@ompt.test", "123456"));
+
+        emailDispatcher.dispatchDue();
+        EmailOutboxMessage afterFirst = single();
+        assertEquals(EmailStatus.PENDING, afterFirst.getStatus());
+        assertEquals(1, afterFirst.getAttempts());
+
+        emailDispatcher.dispatchDue();
+        EmailOutboxMessage afterSecond = single();
+        assertEquals(EmailStatus.DEAD, afterSecond.getStatus());
+        assertEquals(2, afterSecond.getAttempts());
+        assertTrue(SMTP.getMessages().isEmpty());
+    }
+
+    private EmailOutboxMessage single() {
+        List<EmailOutboxMessage> messages = outboxRepository.findAll();
+        assertEquals(1, messages.size());
+        return messages.get(0);
+    }
+}
@@ -0,0 +1,113 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.DTO.MedicineStatusUpdateDTO;
+import com.ompt.Ompt.model.AdherenceBucket;
+import com.ompt.Ompt.model.AdherenceCounter;
+import com.ompt.Ompt.model.AdherenceScope;
+import com.ompt.Ompt.model.DoseSlot;
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.AdherenceCounterRepository;
+import com.ompt.Ompt.repository.DoseSlotRepository;
+import com.ompt.Ompt.repository.InventoryItemRepository;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class MissedDoseJobTests extends ServiceTestSupport {
+
+    private static final DateTimeFormatter SLOT_TIME = DateTimeFormatter.ofPattern("HH:mm");
+
+    @Autowired
+    private MissedDoseJob missedDoseJob;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private DoseSlotRepository doseSlotRepository;
+
+    @Autowired
+    private AdherenceCounterRepository counterRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void marksOnlyOverduePendingSlotsOfRunningCourses() {
+        LocalTime now = LocalTime.now();
+        // slot times are on today's clock; too close to midnight and the seeded times wrap around
+        assumeTrue(now.isAfter(LocalTime.of(0, 30)) && now.isBefore(LocalTime.of(23, 50)));
+        String overdue = now.minusMinutes(20).format(SLOT_TIME);
+        String inGrace = now.minusMinutes(5).format(SLOT_TIME);
+
+        User doctor = createUser("missed.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("missed.patient@ompt.test", doctor);
+        InventoryItem item = inventoryItemRepository.findAll().get(0);
+
+        String running = assign(doctor, patient, item, List.of(overdue, inGrace));
+        String recorded = assign(doctor, patient, item, List.of(overdue));
+        String completed = assign(doctor, patient, item, List.of(overdue));
+        patientRecordService.updateMedicineStatus(patient, new MedicineStatusUpdateDTO(recorded, overdue, "taken", null));
+        patientRecordService.completeMedicine(doctor, patient.getId(), completed);
+
+        AdherenceCounter patientBefore = total(AdherenceScope.PATIENT, patient.getId());
+        AdherenceCounter doctorBefore = total(AdherenceScope.DOCTOR, doctor.getId());
+        long markedBefore = (long) missedDoseJob.metrics().get("slotsMarkedMissed");
+
+        missedDoseJob.run();
+
+        Map<String, String> statuses = slotStatuses(patient.getId());
+        assertEquals("missed", statuses.get(running + "/" + overdue));
+        assertEquals("pending", statuses.get(running + "/" + inGrace));
+        // the patient's own status is still an uncompacted event, and the row is left for it
+        assertEquals("pending", statuses.get(recorded + "/" + overdue));
+        assertEquals("pending", statuses.get(completed + "/" + overdue));
+
+        AdherenceCounter patientAfter = total(AdherenceScope.PATIENT, patient.getId());
+        AdherenceCounter doctorAfter = total(AdherenceScope.DOCTOR, doctor.getId());
+        assertEquals(patientBefore.getMissed() + 1, patientAfter.getMissed());
+        assertEquals(patientBefore.getPending() - 1, patientAfter.getPending());
+        assertEquals(patientBefore.getOnTime(), patientAfter.getOnTime());
+        assertEquals(doctorBefore.getMissed() + 1, doctorAfter.getMissed());
+        assertEquals(doctorBefore.getPending() - 1, doctorAfter.getPending());
+        assertEquals(1, counterRepository.findByScopeAndScopeIdAndBucketAndBucketStart(
+                AdherenceScope.PATIENT, patient.getId(), AdherenceBucket.DAY, LocalDate.now()).orElseThrow().getMissed());
+        assertTrue((long) missedDoseJob.metrics().get("slotsMarkedMissed") > markedBefore);
+
+        // nothing further is due, so a second run leaves everything as it is
+        missedDoseJob.run();
+        assertEquals(statuses, slotStatuses(patient.getId()));
+        assertEquals(patientAfter.getMissed(), total(AdherenceScope.PATIENT, patient.getId()).getMissed());
+    }
+
+    private AdherenceCounter total(AdherenceScope scope, Long scopeId) {
+        return counterRepository.findByScopeAndScopeIdAndBucketAndBucketStart(
+                scope, scopeId, AdherenceBucket.TOTAL, LocalDate.EPOCH).orElseGet(AdherenceCounter::new);
+    }
+
+    private Map<String, String> slotStatuses(Long patientId) {
+        return transactionTemplate.execute(status -> {
+            Map<String, String> statuses = new HashMap<>();
+            for (DoseSlot slot : doseSlotRepository.findAll()) {
+                if (slot.getPrescription().getRecord().getUser().getId().equals(patientId)) {
+                    statuses.put(slot.getPrescription().getMedicineId() + "/" + slot.getTime(), slot.getStatus());
+                }
+            }
+            return statuses;
+        });
+    }
+}
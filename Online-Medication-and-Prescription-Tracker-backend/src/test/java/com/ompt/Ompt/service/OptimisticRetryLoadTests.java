@@ -0,0 +1,145 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.ompt.Ompt.DTO.DoctorRatingRequestDTO;
+import com.ompt.Ompt.model.DoctorProfile;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.DoctorProfileRepository;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Every patient of one doctor rates them at once, so all writers fight over a single profile row.
+class OptimisticRetryLoadTests extends ServiceTestSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticRetryLoadTests.class);
+    private static final int THREADS = 16;
+    private static final int RATINGS_PER_THREAD = 25;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private DoctorProfileRepository doctorProfileRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void concurrentRatingsAreNeverLost() throws Exception {
+        User doctor = demoUser(DEMO_DOCTOR);
+        List<User> patients = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            patients.add(createPatient("load.patient" + t + "@ompt.test", doctor));
+        }
+        int countBefore = ratingCount(doctor);
+        Map<String, Object> retryBefore = optimisticRetry.metrics();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (User patient : patients) {
+            results.add(pool.submit(() -> {
+                int rated = 0;
+                int gaveUp = 0;
+                start.await();
+                for (int i = 0; i < RATINGS_PER_THREAD; i++) {
+                    try {
+                        patientRecordService.rateDoctor(patient, new DoctorRatingRequestDTO(1 + i % 5, doctor.getId()));
+                        rated++;
+                    } catch (ConcurrencyFailureException ex) {
+                        gaveUp++;
+                    }
+                }
+                return new int[]{rated, gaveUp};
+            }));
+        }
+        long started = System.nanoTime();
+        start.countDown();
+
+        int rated = 0;
+        int gaveUp = 0;
+        for (Future<int[]> result : results) {
+            int[] counts = result.get(5, TimeUnit.MINUTES);
+            rated += counts[0];
+            gaveUp += counts[1];
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        pool.shutdown();
+
+        Map<String, Object> retryAfter = optimisticRetry.metrics();
+        long calls = (long) retryAfter.get("calls") - (long) retryBefore.get("calls");
+        long retries = (long) retryAfter.get("retries") - (long) retryBefore.get("retries");
+        // how often the writers collide depends on scheduling, so the rates are reported only
+        log.info("Contended ratings: {} ratings/s, {} retries over {} calls ({} per call), {} gave up",
+                String.format("%.1f", rated / seconds), retries, calls,
+                String.format("%.2f", calls == 0 ? 0 : (double) retries / calls), gaveUp);
+
+        // a rating that returned was counted exactly once, and only retry exhaustion may fail one
+        assertEquals(countBefore + rated, ratingCount(doctor));
+        assertEquals(THREADS * RATINGS_PER_THREAD, rated + gaveUp);
+        assertTrue(rated > 0);
+    }
+
+    @Test
+    void aWriteThatLostTheRaceIsRetried() throws Exception {
+        User doctor = demoUser(DEMO_DOCTOR);
+        User rater = createPatient("load.rater@ompt.test", doctor);
+        int countBefore = ratingCount(doctor);
+        long retriesBefore = (long) optimisticRetry.metrics().get("retries");
+        AtomicInteger attempts = new AtomicInteger();
+
+        optimisticRetry.execute(() -> {
+            DoctorProfile profile = doctorProfileRepository.findByUser(doctor).orElseThrow();
+            if (attempts.getAndIncrement() == 0) {
+                // another writer commits between this read and the write below
+                CompletableFuture.runAsync(() -> patientRecordService.rateDoctor(
+                        rater, new DoctorRatingRequestDTO(5, doctor.getId()))).join();
+            }
+            ObjectNode data = parse(profile.getProfileJson());
+            ObjectNode performance = data.withObject("/performance");
+            performance.put("ratingCount", performance.path("ratingCount").asInt(0) + 1);
+            profile.setProfileJson(data.toString());
+            return doctorProfileRepository.save(profile);
+        });
+
+        assertEquals(2, attempts.get());
+        assertEquals(retriesBefore + 1, (long) optimisticRetry.metrics().get("retries"));
+        assertEquals(countBefore + 2, ratingCount(doctor));
+    }
+
+    private ObjectNode parse(String json) {
+        try {
+            return (ObjectNode) objectMapper.readTree(json);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int ratingCount(User doctor) throws Exception {
+        String json = doctorProfileRepository.findByUser(doctor).orElseThrow().getProfileJson();
+        JsonNode profile = objectMapper.readTree(json);
+        return profile.path("performance").path("ratingCount").asInt(0);
+    }
+}
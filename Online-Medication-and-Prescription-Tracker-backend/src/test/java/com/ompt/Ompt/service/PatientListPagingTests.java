@@ -0,0 +1,107 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PatientListPagingTests extends ServiceTestSupport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void cursorWalkServesEveryRecordAndPicksUpEditsMadeMidWalk() throws Exception {
+        User doctor = createUser("paging.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        Set<Long> patientIds = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            patientIds.add(createPatient("paging.patient" + i + "@ompt.test", doctor).getId());
+        }
+
+        PatientRecordService.DocumentPage first = patientRecordService.pageByDoctor(doctor, null, 2);
+        List<Long> served = new ArrayList<>(ids(first.items()));
+        assertEquals(2, served.size());
+
+        // an edit moves the record behind the cursor, so the walk serves it again at the end
+        Long edited = served.get(0);
+        patientRecordService.patchPatientRecord(userRepository.findById(edited).orElseThrow(),
+                MAPPER.readTree("{\"bloodGroup\":\"B+\"}"), true, null);
+
+        String cursor = first.nextCursor();
+        List<Integer> pageSizes = new ArrayList<>();
+        while (cursor != null) {
+            PatientRecordService.DocumentPage page = patientRecordService.pageByDoctor(doctor, cursor, 2);
+            pageSizes.add(page.items().size());
+            served.addAll(ids(page.items()));
+            cursor = page.nextCursor();
+        }
+
+        // the last page came back full, so it still carried a cursor, which led to an empty page
+        assertEquals(List.of(2, 2, 0), pageSizes);
+        assertEquals(patientIds, new HashSet<>(served));
+        assertEquals(6, served.size());
+        assertEquals(edited, served.get(served.size() - 1));
+    }
+
+    @Test
+    void badCursorsAndLimitsAre400() {
+        User doctor = demoUser(DEMO_DOCTOR);
+        ResponseStatusException cursor = assertThrows(ResponseStatusException.class, () ->
+                patientRecordService.pageByDoctor(doctor, "not-a-cursor", 2));
+        assertEquals(HttpStatus.BAD_REQUEST, cursor.getStatusCode());
+        ResponseStatusException limit = assertThrows(ResponseStatusException.class, () ->
+                patientRecordService.pageByDoctor(doctor, null, 0));
+        assertEquals(HttpStatus.BAD_REQUEST, limit.getStatusCode());
+    }
+
+    @Test
+    void streamWritesOneDocumentPerLine() throws Exception {
+        User doctor = createUser("stream.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        Set<Long> patientIds = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            patientIds.add(createPatient("stream.patient" + i + "@ompt.test", doctor).getId());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        patientRecordService.streamByDoctor(doctor.getId(), out);
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"));
+        Set<Long> streamed = new HashSet<>();
+        for (String line : body.split("\n")) {
+            JsonNode document = MAPPER.readTree(line);
+            assertEquals(doctor.getId(), document.path("doctorAssignedId").asLong());
+            streamed.add(document.path("id").asLong());
+        }
+        assertEquals(patientIds, streamed);
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        patientRecordService.streamByDoctor(-1L, empty);
+        assertEquals(0, empty.size());
+        assertNull(patientRecordService.pageByDoctor(doctor, null, 10).nextCursor());
+    }
+
+    private static List<Long> ids(List<RawValue> items) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (RawValue item : items) {
+            ids.add(MAPPER.readTree(String.valueOf(item.rawValue())).path("id").asLong());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,42 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ompt.Ompt.exception.PatchFailedException;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PatientRecordPatchTests extends ServiceTestSupport {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void patchesThatBreakTheRecordAre422AndChangeNothing() throws Exception {
+        User patient = createPatient("patch.patient@ompt.test", demoUser(DEMO_DOCTOR));
+        String etag = patientRecordService.recordETag(patient);
+
+        assertStatus(HttpStatus.UNPROCESSABLE_ENTITY, patient, "[{\"op\": \"replace\", \"path\": \"\", \"value\": []}]");
+        assertStatus(HttpStatus.UNPROCESSABLE_ENTITY, patient, "[{\"op\": \"replace\", \"path\": \"/id\", \"value\": 1}]");
+        assertStatus(HttpStatus.UNPROCESSABLE_ENTITY, patient, "[{\"op\": \"remove\", \"path\": \"/medicines\"}]");
+        assertStatus(HttpStatus.CONFLICT, patient, "[{\"op\": \"remove\", \"path\": \"/missing\"}]");
+        assertStatus(HttpStatus.BAD_REQUEST, patient, "{}");
+        assertEquals(etag, patientRecordService.recordETag(patient));
+
+        PatientRecordService.DocumentWrite written = patientRecordService.patchPatientRecord(patient,
+                MAPPER.readTree("{\"bloodGroup\":\"O+\"}"), true, etag);
+        assertEquals("O+", written.document().path("bloodGroup").asText());
+        assertEquals(patientRecordService.recordETag(patient), written.etag());
+    }
+
+    private void assertStatus(HttpStatus expected, User patient, String patch) throws Exception {
+        JsonNode operations = MAPPER.readTree(patch);
+        PatchFailedException ex = assertThrows(PatchFailedException.class,
+                () -> patientRecordService.patchPatientRecord(patient, operations, false, null));
+        assertEquals(expected, ex.getStatus(), patch);
+    }
+}
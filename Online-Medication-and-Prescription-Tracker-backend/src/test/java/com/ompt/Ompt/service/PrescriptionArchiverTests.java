@@ -0,0 +1,101 @@
+package com.ompt.Ompt.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.ompt.Ompt.DTO.MedicineStatusUpdateDTO;
+import com.ompt.Ompt.model.ArchivedPrescription;
+import com.ompt.Ompt.model.DoseHistory;
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.reminder.DoseReminderScheduler;
+import com.ompt.Ompt.repository.ArchivedPrescriptionRepository;
+import com.ompt.Ompt.repository.DoseHistoryRepository;
+import com.ompt.Ompt.repository.InventoryItemRepository;
+import com.ompt.Ompt.repository.PatientRecordRepository;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Reminders are on, so the scheduler's timer count shows a completed course leaving the wheel.
+class PrescriptionArchiverTests extends ServiceTestSupport {
+
+    @Autowired
+    private PrescriptionArchiver prescriptionArchiver;
+
+    @Autowired
+    private DoseReminderScheduler doseReminderScheduler;
+
+    @Autowired
+    private InventoryItemRepository inventoryItemRepository;
+
+    @Autowired
+    private PatientRecordRepository patientRecordRepository;
+
+    @Autowired
+    private ArchivedPrescriptionRepository archivedPrescriptionRepository;
+
+    @Autowired
+    private DoseHistoryRepository doseHistoryRepository;
+
+    @Test
+    void completedCourseLeavesRemindersAndIsArchived() {
+        User doctor = createUser("archive.doctor@ompt.test", Role.DOCTOR, demoUser(DEMO_PATIENT));
+        User patient = createPatient("archive.patient@ompt.test", doctor);
+        Long recordId = patientRecordRepository.findByUser(patient).orElseThrow().getId();
+        InventoryItem item = inventoryItemRepository.findAll().get(0);
+
+        long scheduledBefore = scheduled();
+        String finished = assign(doctor, patient, item, List.of("08:00", "20:00"));
+        String running = assign(doctor, patient, item, List.of("09:00"));
+        assertEquals(scheduledBefore + 3, scheduled());
+        patientRecordService.updateMedicineStatus(patient, new MedicineStatusUpdateDTO(finished, "08:00", "taken", null));
+
+        JsonNode completed = patientRecordService.completeMedicine(doctor, patient.getId(), finished);
+        assertFalse(medicine(completed, finished).path("completedAt").isMissingNode());
+        assertEquals(scheduledBefore + 1, scheduled());
+
+        prescriptionArchiver.sweep();
+
+        assertEquals(List.of(running), medicineIds(patientRecordService.getOrCreateRecord(patient)));
+        List<ArchivedPrescription> archived = archivedPrescriptionRepository.findAll().stream()
+                .filter(entry -> entry.getRecordId().equals(recordId))
+                .toList();
+        assertEquals(1, archived.size());
+        assertEquals(finished, archived.get(0).getMedicineId());
+        // today's taken dose is kept; today's still pending one leaves with the course
+        List<DoseHistory> history = doseHistoryRepository.findAll().stream()
+                .filter(row -> row.getRecordId().equals(recordId))
+                .toList();
+        assertEquals(1, history.size());
+        assertEquals("08:00", history.get(0).getTime());
+        assertEquals("taken", history.get(0).getStatus());
+        assertEquals(1, patientRecordService.medicineHistory(doctor, patient.getId(), null, null).items().size());
+        assertEquals(scheduledBefore + 1, scheduled());
+    }
+
+    private long scheduled() {
+        return ((Number) doseReminderScheduler.metrics().get("scheduled")).longValue();
+    }
+
+    private JsonNode medicine(JsonNode record, String medicineId) {
+        for (JsonNode medicine : record.path("medicines")) {
+            if (medicineId.equals(medicine.path("id").asText())) {
+                return medicine;
+            }
+        }
+        return MissingNode.getInstance();
+    }
+
+    private List<String> medicineIds(JsonNode record) {
+        List<String> ids = new ArrayList<>();
+        record.path("medicines").forEach(medicine -> ids.add(medicine.path("id").asText()));
+        return ids;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.support.ServiceTestSupport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResetTokenServiceTests extends ServiceTestSupport {
+
+    @Autowired
+    private ResetTokenService resetTokenService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Test
+    void resolvesBySelectorAndChecksTheVerifier() {
+        User user = createUser("reset.link@ompt.test", Role.PATIENT, demoUser(DEMO_PATIENT));
+        String token = resetTokenService.issue(user, Duration.ofHours(1));
+        userRepository.save(user);
+
+        String selector = token.substring(0, token.indexOf('.'));
+        assertEquals(selector, user.getResetTokenSelector());
+        assertEquals(user.getId(), resetTokenService.resolve(token).getId());
+
+        assertInvalid(selector + ".wrong-verifier");
+        assertInvalid("unknown-selector" + token.substring(token.indexOf('.')));
+        assertInvalid("");
+        assertInvalid(null);
+
+        resetTokenService.clear(user);
+        userRepository.save(user);
+        assertNull(user.getResetTokenSelector());
+        assertInvalid(token);
+    }
+
+    @Test
+    void expiredTokensAreRefused() {
+        User user = createUser("reset.expired@ompt.test", Role.PATIENT, demoUser(DEMO_PATIENT));
+        String token = resetTokenService.issue(user, Duration.ofMinutes(-1));
+        userRepository.save(user);
+
+        assertInvalid(token);
+    }
+
+    @Test
+    void legacyUuidLinksStillResolveUntilTheyExpire() {
+        String uuid = UUID.randomUUID().toString();
+        User user = createUser("reset.legacy@ompt.test", Role.PATIENT, demoUser(DEMO_PATIENT));
+        user.setResetTokenHash(passwordEncoder.encode(uuid));
+        user.setResetTokenExpiry(LocalDateTime.now().plusHours(1));
+        userRepository.save(user);
+
+        assertEquals(user.getId(), resetTokenService.resolve(uuid).getId());
+        assertInvalid(UUID.randomUUID().toString());
+        // only bare UUIDs take the scan
+        assertInvalid("not-a-uuid");
+
+        user.setResetTokenExpiry(LocalDateTime.now().minusMinutes(1));
+        userRepository.save(user);
+        assertInvalid(uuid);
+    }
+
+    @Test
+    void codesCannotBeUsedAsLinks() {
+        User user = createUser("reset.code@ompt.test", Role.PATIENT, demoUser(DEMO_PATIENT));
+        String code = resetTokenService.issueCode(user, Duration.ofMinutes(15));
+        userRepository.save(user);
+
+        assertTrue(code.matches("\\d{6}"));
+        assertTrue(user.getResetTokenSelector().startsWith("code:"));
+        // the hash matches the code, but a code selector is never accepted on the link path
+        assertInvalid(user.getResetTokenSelector() + "." + code);
+        assertInvalid(code);
+    }
+
+    private void assertInvalid(String token) {
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> resetTokenService.resolve(token));
+        assertEquals("Invalid or Expired Token", ex.getMessage());
+    }
+}
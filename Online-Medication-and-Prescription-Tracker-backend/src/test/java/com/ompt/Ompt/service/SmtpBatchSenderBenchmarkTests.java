@@ -0,0 +1,85 @@
+package com.ompt.Ompt.service;
+
+import com.ompt.Ompt.support.FakeSmtpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmtpBatchSenderBenchmarkTests {
+
+    private static final Logger log = LoggerFactory.getLogger(SmtpBatchSenderBenchmarkTests.class);
+    private static final int MESSAGES = 100;
+
+    private FakeSmtpServer smtp;
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    void startServer() {
+        smtp = new FakeSmtpServer();
+        // Each reply costs a simulated round trip, as connection setup does against a real relay.
+        smtp.setResponseDelayMs(3);
+
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(smtp.getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        smtp.close();
+    }
+
+    @Test
+    void batchedSessionsNeedFewerRoundTrips() {
+        double perMessage = run(1);
+        int perMessageSessions = smtp.getSessionCount();
+        int perMessageReplies = smtp.getReplyCount();
+
+        smtp.reset();
+        smtp.setResponseDelayMs(3);
+
+        double batched = run(25);
+        int batchedSessions = smtp.getSessionCount();
+        int batchedReplies = smtp.getReplyCount();
+
+        // wall-clock rates are reported only; the assertions count connections and round trips
+        log.info("SMTP dispatch: {} msg/s and {} round trips with 1 message per session, {} msg/s and {} round trips with 25 per session",
+                String.format("%.1f", perMessage), perMessageReplies, String.format("%.1f", batched), batchedReplies);
+
+        assertEquals(MESSAGES, perMessageSessions);
+        assertEquals(MESSAGES / 25, batchedSessions);
+        assertTrue(batchedReplies < perMessageReplies,
+                batchedReplies + " round trips batched vs " + perMessageReplies + " one per session");
+    }
+
+    private double run(int batchSize) {
+        SmtpBatchSender sender = new SmtpBatchSender(mailSender, batchSize);
+        List<SimpleMailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo("doctor" + i + "@ompt.test");
+            message.setSubject("Doctor Account Created");
+            message.setText("Welcome " + i);
+            messages.add(message);
+        }
+
+        long started = System.nanoTime();
+        List<Exception> results = sender.send(messages);
+        long elapsed = System.nanoTime() - started;
+
+        assertTrue(results.stream().allMatch(Objects::isNull));
+        assertEquals(MESSAGES, smtp.getMessages().size());
+        return MESSAGES / (elapsed / 1_000_000_000.0);
+    }
+}
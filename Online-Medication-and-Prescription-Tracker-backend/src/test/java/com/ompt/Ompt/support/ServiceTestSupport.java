@@ -0,0 +1,73 @@
+package com.ompt.Ompt.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.ompt.Ompt.DTO.AssignMedicineRequestDTO;
+import com.ompt.Ompt.model.AccountStatus;
+import com.ompt.Ompt.model.InventoryItem;
+import com.ompt.Ompt.model.Role;
+import com.ompt.Ompt.model.User;
+import com.ompt.Ompt.repository.UserRepository;
+import com.ompt.Ompt.service.PatientRecordService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+// One in-memory database and one cached context for the service tests. Scheduled jobs are pushed
+// out of the way so tests run them by hand; every test creates its own accounts, so classes can
+// share the data and only assert on what they made.
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:service-tests;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "spring.mail.host=localhost",
+        "spring.mail.username=",
+        "spring.mail.password=",
+        "email.outbox.poll-ms=3600000",
+        "missed-doses.initial-delay-ms=3600000",
+        "missed-doses.grace-minutes=10",
+        "archive.initial-delay-ms=3600000",
+        "stock-holds.sweep-initial-delay-ms=3600000",
+        "reminders.channels=in-app",
+        "optimistic-retry.max-attempts=20",
+        "optimistic-retry.backoff-ms=2"
+})
+public abstract class ServiceTestSupport {
+
+    protected static final String DEMO_PATIENT = "demo.patient1@ompt.test";
+    protected static final String DEMO_DOCTOR = "demo.doctor1@ompt.test";
+
+    @Autowired
+    protected UserRepository userRepository;
+
+    @Autowired
+    protected PatientRecordService patientRecordService;
+
+    protected User createUser(String email, Role role, User sameHospitalAs) {
+        User user = new User();
+        user.setName(email);
+        user.setEmail(email);
+        user.setRole(role);
+        user.setStatus(AccountStatus.ACTIVE);
+        user.setHospital(sameHospitalAs.getHospital());
+        return userRepository.save(user);
+    }
+
+    // A patient in the doctor's hospital, with a record assigned to that doctor.
+    protected User createPatient(String email, User doctor) {
+        User patient = createUser(email, Role.PATIENT, doctor);
+        patientRecordService.createForNewPatient(patient, doctor);
+        return patient;
+    }
+
+    // Returns the id of the new medicine.
+    protected String assign(User doctor, User patient, InventoryItem item, List<String> times) {
+        JsonNode record = patientRecordService.assignMedicine(doctor, patient.getId(),
+                new AssignMedicineRequestDTO(item.getName(), "1 tablet", "Tablet", null, item.getId(), times, 5));
+        JsonNode medicines = record.path("medicines");
+        return medicines.get(medicines.size() - 1).path("id").asText();
+    }
+
+    protected User demoUser(String email) {
+        return userRepository.findByEmailIgnoreCase(email).orElseThrow();
+    }
+}